@@ -0,0 +1,70 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of drawing 1, 100 and 10,000 annotations into an already loaded document. A fresh
+ * document is loaded before every invocation, outside the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnnotationApplyBenchmark {
+
+    @Param({"1", "100", "10000"})
+    private int annotationCount;
+
+    @Param({"20"})
+    private int pages;
+
+    private byte[] pdf;
+    private List<AnnotationRequest> annotations;
+    private PdfAnnotationService service;
+    private PDDocument document;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        service = BenchmarkSupport.newPdfAnnotationService();
+        pdf = SamplePdfs.createPdf(pages);
+        annotations = SamplePdfs.createAnnotations(annotationCount, pages);
+    }
+
+    @Setup(Level.Invocation)
+    public void loadDocument() throws IOException {
+        document = service.loadDocument(new ByteArrayInputStream(pdf));
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeDocument() throws IOException {
+        document.close();
+    }
+
+    @Benchmark
+    public PDDocument applyAnnotations() throws IOException {
+        service.applyAnnotations(document, annotations);
+        return document;
+    }
+}
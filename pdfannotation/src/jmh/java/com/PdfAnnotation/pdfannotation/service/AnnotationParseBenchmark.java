@@ -0,0 +1,60 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing an annotations payload into a list of requests versus streaming it into per-page
+ * buckets. Run with {@code -prof gc} to compare allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnnotationParseBenchmark {
+
+    @Param({"1000", "50000"})
+    private int annotationCount;
+
+    @Param({"20"})
+    private int pages;
+
+    private byte[] json;
+    private AnnotationParser parser;
+
+    @Setup
+    public void setUp() throws IOException {
+        parser = BenchmarkSupport.newAnnotationParser();
+        json = new ObjectMapper().writeValueAsBytes(SamplePdfs.createAnnotations(annotationCount, pages));
+    }
+
+    @Benchmark
+    public List<AnnotationRequest> parseList() {
+        return parser.parse(new String(json, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public AnnotationBuckets streamBuckets() throws IOException {
+        return parser.stream(new ByteArrayInputStream(json), pages);
+    }
+}
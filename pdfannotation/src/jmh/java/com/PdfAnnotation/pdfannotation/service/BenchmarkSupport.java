@@ -0,0 +1,85 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Builds services outside a Spring context so benchmarks measure PDF work only.
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {}
+
+    static PdfAnnotationService newPdfAnnotationService() {
+        PdfAnnotationService service = new PdfAnnotationService();
+        ReflectionTestUtils.setField(service, "memoryUsageSetting", MemoryUsageSetting.setupMainMemoryOnly());
+        ReflectionTestUtils.setField(service, "annotationMetrics", newAnnotationMetrics());
+        ReflectionTestUtils.setField(service, "textLayoutEngine", newTextLayoutEngine(4096));
+        ReflectionTestUtils.setField(service, "fontRegistry", new FontRegistry());
+        ReflectionTestUtils.setField(service, "imageRegistry", new ImageRegistry());
+        ReflectionTestUtils.setField(service, "textRedactor", new TextRedactor());
+        ReflectionTestUtils.setField(service, "pageExtractor", newPageExtractor());
+        return service;
+    }
+
+    static PageExtractor newPageExtractor() {
+        PageExtractor extractor = new PageExtractor();
+        ReflectionTestUtils.setField(extractor, "memoryUsageSetting", MemoryUsageSetting.setupMainMemoryOnly());
+        return extractor;
+    }
+
+    /**
+     * A sharded annotator with its own pool of {@code workers} threads; shut it down after use.
+     */
+    static ShardedAnnotator newShardedAnnotator(PdfAnnotationService service, int workers,
+                                                int minAnnotationsPerShard) {
+        ShardedAnnotator annotator = new ShardedAnnotator();
+        ReflectionTestUtils.setField(annotator, "pdfAnnotationService", service);
+        ReflectionTestUtils.setField(annotator, "memoryUsageSetting", MemoryUsageSetting.setupMainMemoryOnly());
+        ReflectionTestUtils.setField(annotator, "annotationMetrics", newAnnotationMetrics());
+        ReflectionTestUtils.setField(annotator, "parallelism", workers);
+        ReflectionTestUtils.setField(annotator, "minAnnotationsPerShard", minAnnotationsPerShard);
+        annotator.init();
+        return annotator;
+    }
+
+    static AnnotationParser newAnnotationParser() {
+        AnnotationParser parser = new AnnotationParser();
+        ReflectionTestUtils.setField(parser, "annotationMetrics", newAnnotationMetrics());
+        ReflectionTestUtils.setField(parser, "objectMapper", new ObjectMapper());
+        return parser;
+    }
+
+    static AnnotationMetrics newAnnotationMetrics() {
+        AnnotationMetrics metrics = new AnnotationMetrics();
+        ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+        metrics.init();
+        return metrics;
+    }
+
+    /**
+     * A layout engine keeping at most {@code cacheSize} layouts; 0 disables the layout cache.
+     */
+    static TextLayoutEngine newTextLayoutEngine(int cacheSize) {
+        TextLayoutEngine engine = new TextLayoutEngine();
+        ReflectionTestUtils.setField(engine, "cacheSize", cacheSize);
+        return engine;
+    }
+
+    /**
+     * Saves to a counting sink and returns the number of bytes written.
+     */
+    static long save(PdfAnnotationService service, PDDocument document) throws IOException {
+        CountingOutputStream outputStream = new CountingOutputStream(OutputStream.nullOutputStream());
+        service.saveDocument(document, new AnnotationOptions(), outputStream);
+        return outputStream.getByteCount();
+    }
+}
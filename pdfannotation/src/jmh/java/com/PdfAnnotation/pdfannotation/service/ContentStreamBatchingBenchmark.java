@@ -0,0 +1,75 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares rendering all annotations of a page into one content stream against the previous
+ * approach of appending a separate stream per annotation. Each operation loads the document,
+ * applies the annotations and saves it; the saved sizes are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentStreamBatchingBenchmark {
+
+    @Param({"20", "200"})
+    private int annotationsPerPage;
+
+    @Param({"5"})
+    private int pages;
+
+    private byte[] pdf;
+    private List<AnnotationRequest> annotations;
+    private PdfAnnotationService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        service = BenchmarkSupport.newPdfAnnotationService();
+
+        pdf = SamplePdfs.createPdf(pages);
+        annotations = SamplePdfs.createAnnotations(annotationsPerPage * pages, pages);
+
+        System.out.printf("%nSaved size: one stream per page = %d bytes, one stream per annotation = %d bytes%n",
+                batchedPerPage(), streamPerAnnotation());
+    }
+
+    @Benchmark
+    public long batchedPerPage() throws IOException {
+        try (PDDocument document = service.loadDocument(new ByteArrayInputStream(pdf))) {
+            service.applyAnnotations(document, annotations);
+            return BenchmarkSupport.save(service, document);
+        }
+    }
+
+    @Benchmark
+    public long streamPerAnnotation() throws IOException {
+        try (PDDocument document = service.loadDocument(new ByteArrayInputStream(pdf))) {
+            for (AnnotationRequest annotation : annotations) {
+                service.applyAnnotations(document, List.of(annotation));
+            }
+            return BenchmarkSupport.save(service, document);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of parsing and of serializing documents of different page counts and sizes, without any
+ * annotation work. {@code imageBytesPerPage} adds incompressible image data to every page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentIoBenchmark {
+
+    @Param({"10", "200"})
+    private int pages;
+
+    @Param({"0", "65536"})
+    private int imageBytesPerPage;
+
+    private byte[] pdf;
+    private PdfAnnotationService service;
+    private PDDocument loaded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        service = BenchmarkSupport.newPdfAnnotationService();
+        pdf = SamplePdfs.createPdf(pages, imageBytesPerPage);
+        loaded = service.loadDocument(new ByteArrayInputStream(pdf));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        loaded.close();
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        try (PDDocument document = service.loadDocument(new ByteArrayInputStream(pdf))) {
+            return document.getNumberOfPages();
+        }
+    }
+
+    @Benchmark
+    public long save() throws IOException {
+        return BenchmarkSupport.save(service, loaded);
+    }
+}
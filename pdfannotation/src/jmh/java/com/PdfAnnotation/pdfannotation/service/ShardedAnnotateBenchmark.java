@@ -0,0 +1,73 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load, annotate and save of one large document by {@link ShardedAnnotator} with 1 to 8
+ * workers. One worker is the plain single-threaded path, so the scores show the speedup per
+ * added core, merge included; workers beyond the machine's cores add nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ShardedAnnotateBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    private int workers;
+
+    @Param({"400"})
+    private int pages;
+
+    @Param({"20000"})
+    private int annotationCount;
+
+    private File pdf;
+    private List<AnnotationRequest> annotations;
+    private ShardedAnnotator annotator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        pdf = File.createTempFile("sharded-benchmark", ".pdf");
+        Files.write(pdf.toPath(), SamplePdfs.createPdf(pages));
+        annotations = SamplePdfs.createAnnotations(annotationCount, pages);
+        annotator = BenchmarkSupport.newShardedAnnotator(BenchmarkSupport.newPdfAnnotationService(), workers, 500);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        annotator.shutdown();
+        Files.deleteIfExists(pdf.toPath());
+    }
+
+    @Benchmark
+    public long annotate() throws IOException {
+        CountingOutputStream outputStream = new CountingOutputStream(OutputStream.nullOutputStream());
+        annotator.annotatePdf(pdf, annotations, null, outputStream);
+        return outputStream.getByteCount();
+    }
+}
@@ -0,0 +1,89 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same bordered "APPROVED" stamp on every page, drawn inline per page versus placed from a
+ * template rendered once as a Form XObject. Each operation loads, stamps and saves the document;
+ * the saved sizes are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StampTemplateBenchmark {
+
+    @Param({"500"})
+    private int pages;
+
+    private byte[] pdf;
+    private List<AnnotationRequest> inline;
+    private List<AnnotationRequest> templated;
+    private PdfAnnotationService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        service = BenchmarkSupport.newPdfAnnotationService();
+        pdf = SamplePdfs.createPdf(pages);
+        inline = createStamps(null);
+        templated = createStamps("approved");
+
+        System.out.printf("%nSaved size: inline = %d bytes, template = %d bytes%n",
+                inlineStamps(), templatedStamps());
+    }
+
+    @Benchmark
+    public long inlineStamps() throws IOException {
+        return stamp(inline);
+    }
+
+    @Benchmark
+    public long templatedStamps() throws IOException {
+        return stamp(templated);
+    }
+
+    private long stamp(List<AnnotationRequest> stamps) throws IOException {
+        try (PDDocument document = service.loadDocument(new ByteArrayInputStream(pdf))) {
+            service.applyAnnotations(document, stamps);
+            return BenchmarkSupport.save(service, document);
+        }
+    }
+
+    private List<AnnotationRequest> createStamps(String template) {
+        List<AnnotationRequest> stamps = new ArrayList<>(pages);
+        for (int page = 1; page <= pages; page++) {
+            AnnotationRequest stamp = new AnnotationRequest(
+                    "APPROVED", page, 380.0, 40.0, 160.0, 48.0, "#15803d");
+            stamp.setFontStyle("bold");
+            stamp.setFontSize(28f);
+            stamp.setBackgroundColor("#dcfce7");
+            stamp.setBorderColor("#15803d");
+            stamp.setBorderWidth(3f);
+            stamp.setTemplate(template);
+            stamps.add(stamp);
+        }
+        return stamps;
+    }
+}
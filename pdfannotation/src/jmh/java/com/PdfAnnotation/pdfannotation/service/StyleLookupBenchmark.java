@@ -0,0 +1,56 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-annotation style lookups: {@code parseColor} for named, 6-digit and 3-digit colours and
+ * {@code getFont} for the default and a named style.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StyleLookupBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ColorState {
+
+        @Param({"red", "#3b82f6", "#fa0"})
+        String color;
+
+        final PdfAnnotationService service = BenchmarkSupport.newPdfAnnotationService();
+    }
+
+    @State(Scope.Benchmark)
+    public static class FontState {
+
+        @Param({"", "times-bold-italic"})
+        String fontStyle;
+
+        final PdfAnnotationService service = BenchmarkSupport.newPdfAnnotationService();
+    }
+
+    @Benchmark
+    public PDColor parseColor(ColorState state) {
+        return state.service.parseColor(state.color);
+    }
+
+    @Benchmark
+    public PDFont getFont(FontState state) {
+        return state.service.getFont(state.fontStyle);
+    }
+}
@@ -0,0 +1,86 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text drawing in {@link PdfAnnotationService#addStyledAnnotationText}, with and without the
+ * layout cache of {@link TextLayoutEngine}; the uncached case measures the word-wrap itself.
+ * Each invocation overwrites the same page's content stream, so the document does not grow
+ * between invocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextLayoutBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int words;
+
+    @Param({"200"})
+    private float boxWidth;
+
+    @Param({"false", "true"})
+    private boolean cached;
+
+    private PdfAnnotationService service;
+    private PDDocument document;
+    private PDPage page;
+    private AnnotationRequest annotation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = BenchmarkSupport.newPdfAnnotationService();
+        ReflectionTestUtils.setField(service, "textLayoutEngine",
+                BenchmarkSupport.newTextLayoutEngine(cached ? 16 : 0));
+        document = new PDDocument();
+        page = new PDPage();
+        document.addPage(page);
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append(i == 0 ? "" : " ").append(i % 7 == 0 ? "consideration" : "word").append(i);
+        }
+        // tall enough that no line is cut off, so every word is measured
+        double height = words * 3.0 + 20;
+        annotation = new AnnotationRequest(text.toString(), 1, 0.0, 0.0, (double) boxWidth, height, "#1f2937");
+        annotation.setFontSize(10f);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        document.close();
+    }
+
+    @Benchmark
+    public PDPage wrapText() throws IOException {
+        try (PDPageContentStream contentStream = new PDPageContentStream(
+                document, page, PDPageContentStream.AppendMode.OVERWRITE, false)) {
+            service.addStyledAnnotationText(contentStream, service.getFont(null), annotation, 20, 20, boxWidth,
+                    annotation.getHeight().floatValue());
+        }
+        return page;
+    }
+}
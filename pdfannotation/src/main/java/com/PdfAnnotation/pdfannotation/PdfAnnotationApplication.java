@@ -2,8 +2,10 @@ package com.PdfAnnotation.pdfannotation;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class PdfAnnotationApplication {
     public static void main(String[] args) {
         SpringApplication.run(PdfAnnotationApplication.class, args);
@@ -0,0 +1,76 @@
+package com.PdfAnnotation.pdfannotation;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.service.ManifestBatchRunner;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Headless entry point for offline bulk runs; starts the services without the web server.
+ * <pre>
+ * java -cp pdfannotation.jar -Dloader.main=com.PdfAnnotation.pdfannotation.PdfAnnotationCli \
+ *     org.springframework.boot.loader.launch.PropertiesLauncher manifest.jsonl --parallelism=8
+ * </pre>
+ * Exits with 0 when every document succeeded, 1 when some failed and 2 on usage errors.
+ */
+public class PdfAnnotationCli {
+
+    public static void main(String[] args) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(PdfAnnotationApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .run(args);
+
+        int exitCode = run(context);
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+
+    private static int run(ConfigurableApplicationContext context) throws Exception {
+        ApplicationArguments arguments = context.getBean(ApplicationArguments.class);
+        List<String> files = arguments.getNonOptionArgs();
+        if (files.size() != 1 || !Files.isRegularFile(Paths.get(files.get(0)))) {
+            System.err.println("Usage: PdfAnnotationCli <manifest.jsonl> [--parallelism=N] [--incremental] [--native] [--redact] [--pages=annotated|RANGES] [--sharded]");
+            return 2;
+        }
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if (arguments.containsOption("parallelism")) {
+            parallelism = Integer.parseInt(arguments.getOptionValues("parallelism").get(0));
+        }
+        AnnotationOptions options = new AnnotationOptions();
+        options.setIncremental(arguments.containsOption("incremental"));
+        options.setRedact(arguments.containsOption("redact"));
+        if (options.isIncremental() && options.isRedact()) {
+            System.err.println("--redact cannot be combined with --incremental");
+            return 2;
+        }
+        options.setSharded(arguments.containsOption("sharded"));
+        if (arguments.containsOption("pages")) {
+            options.setPages(arguments.getOptionValues("pages").get(0));
+        }
+        if (arguments.containsOption("native")) {
+            options.setMode(AnnotationOptions.Mode.NATIVE);
+        }
+
+        Path manifest = Paths.get(files.get(0));
+        ManifestBatchRunner.Summary summary = context.getBean(ManifestBatchRunner.class)
+                .run(manifest, parallelism, options);
+
+        System.out.printf("%d succeeded, %d failed in %.1f s%n",
+                summary.getSucceeded(), summary.getFailures().size(), summary.getSeconds());
+        System.out.printf("%.1f docs/s, %.1f MB/s in, %.1f MB written%n",
+                summary.getDocumentsPerSecond(), summary.getMegabytesPerSecond(),
+                summary.getBytesOut() / 1_048_576.0);
+        summary.getFailures().forEach(failure -> System.out.println("FAILED " + failure));
+        return summary.getFailures().isEmpty() ? 0 : 1;
+    }
+}
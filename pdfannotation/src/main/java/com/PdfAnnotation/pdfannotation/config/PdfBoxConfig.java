@@ -0,0 +1,71 @@
+package com.PdfAnnotation.pdfannotation.config;
+
+import jakarta.annotation.PostConstruct;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.io.File;
+
+@Configuration
+public class PdfBoxConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(PdfBoxConfig.class);
+
+    private static final String FONT_CACHE_PROPERTY = "pdfbox.fontcache";
+
+    @Value("${pdf.memory.max-main-memory:8MB}")
+    private DataSize maxMainMemory;
+
+    @Value("${pdf.memory.max-storage:-1B}")
+    private DataSize maxStorage;
+
+    @Value("${pdf.memory.temp-dir:}")
+    private String tempDir;
+
+    @Value("${pdf.fonts.cache-dir:}")
+    private String fontCacheDir;
+
+    /**
+     * Points PDFBox's system font cache at a persistent directory. Must run before the font
+     * mapper is first used, which happens when a standard font class is initialized.
+     */
+    @PostConstruct
+    public void configureFontCache() {
+        if (fontCacheDir == null || fontCacheDir.trim().isEmpty() || System.getProperty(FONT_CACHE_PROPERTY) != null) {
+            return;
+        }
+        File dir = new File(fontCacheDir.trim());
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create PDFBox font cache directory: " + dir);
+        }
+        System.setProperty(FONT_CACHE_PROPERTY, dir.getAbsolutePath());
+        logger.info("PDFBox font cache at {}", dir);
+    }
+
+    /**
+     * Scratch-file budget used for every document PDFBox loads. Each document keeps at most
+     * {@code maxMainMemory} in heap and spills the rest to temporary files, so peak heap per
+     * request no longer grows with the size of the upload.
+     */
+    @Bean
+    public MemoryUsageSetting memoryUsageSetting() {
+        MemoryUsageSetting setting = MemoryUsageSetting.setupMixed(
+                maxMainMemory.toBytes(), maxStorage.toBytes());
+
+        if (tempDir != null && !tempDir.trim().isEmpty()) {
+            File dir = new File(tempDir.trim());
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IllegalStateException("Cannot create PDF scratch directory: " + dir);
+            }
+            setting.setTempDir(dir);
+        }
+
+        logger.info("PDFBox memory usage: {}", setting);
+        return setting;
+    }
+}
@@ -0,0 +1,46 @@
+package com.PdfAnnotation.pdfannotation.config;
+
+import com.PdfAnnotation.pdfannotation.service.AnnotationMetrics;
+import com.PdfAnnotation.pdfannotation.service.StageTimings;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Binds {@link StageTimings} to the request thread before the multipart body is read, so the
+ * time until the controller runs can be reported as the multipart stage. Also reports the
+ * latency of the first request after startup.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class StageTimingFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private AnnotationMetrics annotationMetrics;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/pdf/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        StageTimings timings = StageTimings.begin();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            StageTimings.end();
+            // for streamed responses this is when streaming starts
+            annotationMetrics.recordFirstRequest(timings.getStartNanos());
+        }
+    }
+}
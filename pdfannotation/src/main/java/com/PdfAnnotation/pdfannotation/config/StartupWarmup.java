@@ -0,0 +1,148 @@
+package com.PdfAnnotation.pdfannotation.config;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.PdfAnnotation.pdfannotation.service.AnnotationMetrics;
+import com.PdfAnnotation.pdfannotation.service.AnnotationParser;
+import com.PdfAnnotation.pdfannotation.service.PdfAnnotationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.FontMappers;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Warms the process up before it reports ready. Spring Boot only switches readiness to
+ * {@code ACCEPTING_TRAFFIC} after all runners have finished, so load balancers that use the
+ * readiness probe never send the first real request to a cold instance. The warm-up initializes
+ * PDFBox's font mapping (building or reading its font cache) and runs synthetic annotate-and-save
+ * cycles, which loads the classes of the hot path and gives the JIT something to compile.
+ * <p>
+ * With {@code pdf.warmup.exit=true} the application exits after warming up, which makes it a
+ * training run for a class-data-sharing archive ({@code -XX:ArchiveClassesAtExit}).
+ */
+@Component
+public class StartupWarmup implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupWarmup.class);
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Autowired
+    private AnnotationParser annotationParser;
+
+    @Autowired
+    private AnnotationMetrics annotationMetrics;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Value("${pdf.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${pdf.warmup.iterations:20}")
+    private int iterations;
+
+    @Value("${pdf.warmup.exit:false}")
+    private boolean exitAfterWarmup;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+
+        long fontStart = System.nanoTime();
+        FontMappers.instance().getFontBoxFont(PDType1Font.HELVETICA.getName(), null);
+        logger.info("PDFBox font mapping ready in {} ms", (System.nanoTime() - fontStart) / 1_000_000);
+
+        byte[] pdf = createSamplePdf();
+        String annotationsJson = objectMapper.writeValueAsString(sampleAnnotations());
+        annotationMetrics.unrecorded(() -> {
+            for (int i = 0; i < iterations; i++) {
+                List<AnnotationRequest> annotations = annotationParser.parse(annotationsJson);
+                AnnotationOptions options = new AnnotationOptions();
+                options.setIncremental(i % 2 == 1);
+                pdfAnnotationService.annotatePdf(new ByteArrayInputStream(pdf), annotations, options,
+                        OutputStream.nullOutputStream());
+            }
+            return null;
+        });
+
+        annotationMetrics.recordWarmup(start);
+        logger.info("Warm-up finished: {} annotate cycles in {} ms",
+                iterations, (System.nanoTime() - start) / 1_000_000);
+
+        if (exitAfterWarmup) {
+            logger.info("Exiting after warm-up (pdf.warmup.exit=true)");
+            System.exit(SpringApplication.exit(context, () -> 0));
+        }
+    }
+
+    private static byte[] createSamplePdf() throws IOException {
+        try (PDDocument document = new PDDocument();
+             ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            for (int p = 0; p < 2; p++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                document.addPage(page);
+                try (PDPageContentStream contentStream = new PDPageContentStream(document, page)) {
+                    contentStream.beginText();
+                    contentStream.setFont(PDType1Font.TIMES_ROMAN, 11);
+                    contentStream.newLineAtOffset(50, 780);
+                    for (int line = 0; line < 30; line++) {
+                        contentStream.showText("Warm-up line " + line);
+                        contentStream.newLineAtOffset(0, -16);
+                    }
+                    contentStream.endText();
+                }
+            }
+            document.save(outputStream);
+            return outputStream.toByteArray();
+        }
+    }
+
+    /**
+     * Annotations that touch every drawing branch: background, border, link, styles and
+     * auto-fit.
+     */
+    private static List<AnnotationRequest> sampleAnnotations() {
+        String[] styles = {null, "bold", "italic", "times", "courier-bold"};
+        List<AnnotationRequest> annotations = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            AnnotationRequest annotation = new AnnotationRequest(
+                    "Warm-up replacement text number " + i, i % 2 + 1,
+                    40.0, 60.0 + i * 40, 240.0, 30.0, i % 3 == 0 ? "red" : "#1f2937");
+            annotation.setFontStyle(styles[i % styles.length]);
+            annotation.setFontSize(i % 4 == 0 ? null : 10f);
+            annotation.setAutoFit(i % 4 == 0);
+            annotation.setBackgroundColor(i % 2 == 0 ? "#fef3c7" : null);
+            annotation.setBorderColor(i % 3 == 0 ? "blue" : null);
+            annotation.setLink(i % 5 == 0 ? "https://example.com/" + i : null);
+            annotations.add(annotation);
+        }
+        return annotations;
+    }
+}
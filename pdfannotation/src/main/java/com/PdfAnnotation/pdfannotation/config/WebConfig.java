@@ -1,10 +1,14 @@
 package com.PdfAnnotation.pdfannotation.config;
 
-
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.RenderOptions;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.format.FormatterRegistry;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.Locale;
+
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
@@ -14,7 +18,17 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedOrigins("*") 
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
+                .exposedHeaders("Server-Timing", "ETag")
                 .allowCredentials(false)
                 .maxAge(3600);
     }
+
+    @Override
+    public void addFormatters(FormatterRegistry registry) {
+        // accept mode=native as well as mode=NATIVE
+        registry.addConverter(String.class, AnnotationOptions.Mode.class,
+                value -> AnnotationOptions.Mode.valueOf(value.trim().toUpperCase(Locale.ROOT)));
+        registry.addConverter(String.class, RenderOptions.Format.class,
+                value -> RenderOptions.Format.valueOf(value.trim().toUpperCase(Locale.ROOT)));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.PdfAnnotation.pdfannotation.controller;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.PdfAnnotation.pdfannotation.service.AnnotationJob;
+import com.PdfAnnotation.pdfannotation.service.AnnotationJobService;
+import com.PdfAnnotation.pdfannotation.service.AnnotationParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Asynchronous annotate: submit returns a job ID immediately, the work runs on the job pool.
+ */
+@RestController
+@RequestMapping("/api/pdf/jobs")
+@CrossOrigin(origins = "*") // Configure this properly in production
+public class AnnotationJobController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnnotationJobController.class);
+
+    @Autowired
+    private AnnotationJobService annotationJobService;
+
+    @Autowired
+    private AnnotationParser annotationParser;
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> submitJob(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam("annotations") String annotationsJson,
+            AnnotationOptions options) throws IOException {
+        
+        PdfUploads.validate(file);
+        
+        List<AnnotationRequest> annotations = annotationParser.parse(annotationsJson);
+        annotationParser.requireCoordinates(annotations);
+        
+        AnnotationJob job = annotationJobService.submit(file.getInputStream(), file.getSize(),
+                file.getOriginalFilename(), annotations, options);
+        
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/pdf/jobs/" + job.getJobId()))
+                .body(describe(job));
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable String jobId) {
+        return ResponseEntity.ok(describe(annotationJobService.getJob(jobId)));
+    }
+
+    @GetMapping("/{jobId}/result")
+    public ResponseEntity<?> downloadResult(@PathVariable String jobId) {
+        AnnotationJob job = annotationJobService.getJob(jobId);
+        
+        if (job.getStatus() != AnnotationJob.Status.SUCCEEDED) {
+            logger.info("Result of job {} requested while {}", jobId, job.getStatus());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", "Job is " + job.getStatus(), "status", job.getStatus()));
+        }
+        
+        return ResponseEntity.ok()
+                .headers(PdfUploads.attachmentHeaders(job.getFilename()))
+                .body(new FileSystemResource(job.getResultFile()));
+    }
+
+    private Map<String, Object> describe(AnnotationJob job) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("jobId", job.getJobId());
+        response.put("status", job.getStatus());
+        response.put("submittedAt", job.getSubmittedAt());
+        if (job.getStartedAt() != null) {
+            response.put("startedAt", job.getStartedAt());
+        }
+        if (job.getFinishedAt() != null) {
+            response.put("finishedAt", job.getFinishedAt());
+        }
+        if (job.getError() != null) {
+            response.put("error", job.getError());
+        }
+        return response;
+    }
+}
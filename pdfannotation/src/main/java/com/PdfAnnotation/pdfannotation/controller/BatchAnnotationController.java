@@ -0,0 +1,104 @@
+package com.PdfAnnotation.pdfannotation.controller;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.PdfAnnotation.pdfannotation.service.AnnotationParser;
+import com.PdfAnnotation.pdfannotation.service.BatchAnnotationService;
+import com.PdfAnnotation.pdfannotation.service.BatchAnnotationService.BatchItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Annotates many PDFs in one request, sent either as repeated {@code files} parts or as one ZIP
+ * {@code archive}. Annotations are given once for all files ({@code annotations}) or per file
+ * name ({@code annotationsByFile}); a per-file entry wins over the shared list.
+ */
+@RestController
+@RequestMapping("/api/pdf/batch")
+@CrossOrigin(origins = "*") // Configure this properly in production
+public class BatchAnnotationController {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchAnnotationController.class);
+
+    @Autowired
+    private BatchAnnotationService batchAnnotationService;
+
+    @Autowired
+    private AnnotationParser annotationParser;
+
+    @PostMapping
+    public ResponseEntity<StreamingResponseBody> annotateBatch(
+            @RequestParam(value = "files", required = false) List<MultipartFile> files,
+            @RequestParam(value = "archive", required = false) MultipartFile archive,
+            @RequestParam(value = "annotations", required = false) String annotationsJson,
+            @RequestParam(value = "annotationsByFile", required = false) String annotationsByFileJson,
+            AnnotationOptions options) throws IOException {
+
+        boolean hasFiles = files != null && !files.isEmpty();
+        boolean hasArchive = archive != null && !archive.isEmpty();
+        if (hasFiles == hasArchive) {
+            throw new IllegalArgumentException("Send either 'files' or an 'archive', not both");
+        }
+        if (annotationsJson == null && annotationsByFileJson == null) {
+            throw new IllegalArgumentException("Either 'annotations' or 'annotationsByFile' is required");
+        }
+
+        // Parsed once for the whole batch
+        List<AnnotationRequest> shared = annotationsJson != null ? annotationParser.parse(annotationsJson) : null;
+        Map<String, List<AnnotationRequest>> byFile = annotationsByFileJson != null
+                ? annotationParser.parseByFile(annotationsByFileJson) : Map.of();
+        if (shared != null) {
+            annotationParser.requireCoordinates(shared);
+        }
+        annotationParser.requireCoordinates(byFile);
+        Function<String, List<AnnotationRequest>> annotationsFor = name -> byFile.getOrDefault(name, shared);
+
+        Path workDirectory = batchAnnotationService.createWorkDirectory();
+        List<BatchItem> items;
+        try {
+            items = hasArchive
+                    ? batchAnnotationService.extractArchive(archive.getInputStream(), workDirectory, annotationsFor)
+                    : toItems(files, annotationsFor);
+        } catch (IOException | RuntimeException e) {
+            FileSystemUtils.deleteRecursively(workDirectory);
+            throw e;
+        }
+
+        logger.info("Processing batch of {} documents", items.size());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/zip"));
+        headers.setContentDispositionFormData("attachment", "annotated.zip");
+
+        StreamingResponseBody body = outputStream ->
+                batchAnnotationService.process(items, options, workDirectory, outputStream);
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+
+    private List<BatchItem> toItems(List<MultipartFile> files,
+                                    Function<String, List<AnnotationRequest>> annotationsFor) {
+        batchAnnotationService.checkFileCount(files.size());
+        List<BatchItem> items = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            PdfUploads.validate(file);
+            String name = BatchAnnotationService.fileName(file.getOriginalFilename());
+            items.add(new BatchItem(name, file, annotationsFor.apply(name)));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,85 @@
+package com.PdfAnnotation.pdfannotation.controller;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.PdfAnnotation.pdfannotation.dto.RenderOptions;
+import com.PdfAnnotation.pdfannotation.service.AnnotationParser;
+import com.PdfAnnotation.pdfannotation.service.CollisionDetector;
+import com.PdfAnnotation.pdfannotation.service.DocumentStore;
+import com.PdfAnnotation.pdfannotation.service.PageRenderer;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Server-side page images of stored documents, so clients can show huge documents without
+ * rendering them locally. Stored documents never change, so their images may be cached forever.
+ * Annotations can also be checked for collisions against a stored document before annotating.
+ */
+@RestController
+@RequestMapping("/api/pdf/documents")
+@CrossOrigin(origins = "*") // Configure this properly in production
+public class DocumentController {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentController.class);
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+
+    @Autowired
+    private DocumentStore documentStore;
+
+    @Autowired
+    private PageRenderer pageRenderer;
+
+    @Autowired
+    private AnnotationParser annotationParser;
+
+    @Autowired
+    private CollisionDetector collisionDetector;
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> uploadDocument(@RequestParam("file") MultipartFile file)
+            throws IOException {
+        PdfUploads.validate(file);
+
+        String documentId = documentStore.store(file.getInputStream());
+        logger.info("Stored document {} from {}", documentId, file.getOriginalFilename());
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("documentId", documentId));
+    }
+
+    @GetMapping("/{documentId}/pages/{pageNumber}")
+    public ResponseEntity<byte[]> renderPage(@PathVariable String documentId, @PathVariable int pageNumber,
+                                             RenderOptions options) throws IOException {
+        if (!DocumentStore.isValidId(documentId)) {
+            throw new IllegalArgumentException("Invalid document id: " + documentId);
+        }
+        byte[] image = pageRenderer.render(documentId, pageNumber, options);
+        return PdfUploads.pageImage(image, options, IMMUTABLE);
+    }
+
+    @PostMapping("/{documentId}/collisions")
+    public ResponseEntity<Map<String, Object>> findCollisions(@PathVariable String documentId,
+                                                              @RequestBody @Valid List<AnnotationRequest> annotations)
+            throws IOException {
+        if (!DocumentStore.isValidId(documentId)) {
+            throw new IllegalArgumentException("Invalid document id: " + documentId);
+        }
+        annotationParser.validate(annotations);
+
+        List<CollisionDetector.Collision> collisions = collisionDetector.find(documentId, annotations);
+        logger.info("Found {} collisions among {} annotations on {}", collisions.size(), annotations.size(), documentId);
+
+        return ResponseEntity.ok(Map.of("collisions", collisions));
+    }
+}
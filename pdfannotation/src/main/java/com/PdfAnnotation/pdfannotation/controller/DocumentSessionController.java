@@ -0,0 +1,157 @@
+package com.PdfAnnotation.pdfannotation.controller;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.PdfAnnotation.pdfannotation.dto.RenderOptions;
+import com.PdfAnnotation.pdfannotation.service.AnnotationParser;
+import com.PdfAnnotation.pdfannotation.service.DocumentSession;
+import com.PdfAnnotation.pdfannotation.service.DocumentSessionService;
+import com.PdfAnnotation.pdfannotation.service.DocumentStore;
+import com.PdfAnnotation.pdfannotation.service.XfdfCodec;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Upload a PDF once, then send annotation deltas against the returned session ID.
+ */
+@RestController
+@RequestMapping("/api/pdf/sessions")
+@CrossOrigin(origins = "*") // Configure this properly in production
+public class DocumentSessionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentSessionController.class);
+
+    @Autowired
+    private DocumentSessionService documentSessionService;
+
+    @Autowired
+    private AnnotationParser annotationParser;
+
+    /**
+     * Opens a session on an uploaded {@code file}, or on a {@code documentId} already in the
+     * store, such as a completed chunked upload.
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> createSession(
+            @RequestParam(value = "file", required = false) MultipartFile file,
+            @RequestParam(value = "documentId", required = false) String documentId) throws IOException {
+        DocumentSession session;
+        if (file != null) {
+            PdfUploads.validate(file);
+            session = documentSessionService.createSession(file.getInputStream(), file.getOriginalFilename());
+        } else if (documentId != null) {
+            if (!DocumentStore.isValidId(documentId)) {
+                throw new IllegalArgumentException("Invalid document id: " + documentId);
+            }
+            session = documentSessionService.createSession(documentId, documentId + ".pdf");
+        } else {
+            throw new IllegalArgumentException("Either file or documentId is required");
+        }
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(describe(session, 0));
+    }
+
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<Map<String, Object>> getSession(@PathVariable String sessionId) {
+        DocumentSession session = documentSessionService.getSession(sessionId);
+        int annotationCount = documentSessionService.getAnnotations(sessionId).size();
+        return ResponseEntity.ok(describe(session, annotationCount));
+    }
+
+    @PostMapping("/{sessionId}/annotations")
+    public ResponseEntity<Map<String, Object>> addAnnotations(
+            @PathVariable String sessionId,
+            @RequestBody @Valid List<AnnotationRequest> annotations) throws IOException {
+        
+        logger.info("Adding {} annotations to session {}", annotations.size(), sessionId);
+        annotationParser.validate(annotations);
+        
+        int annotationCount = documentSessionService.addAnnotations(sessionId, annotations);
+        return ResponseEntity.ok(describe(documentSessionService.getSession(sessionId), annotationCount));
+    }
+
+    /**
+     * Imports an XFDF document sent as the raw request body.
+     */
+    @PostMapping("/{sessionId}/xfdf")
+    public ResponseEntity<Map<String, Object>> importXfdf(@PathVariable String sessionId,
+                                                          InputStream xfdf) throws IOException {
+        int annotationCount = documentSessionService.importXfdf(sessionId, xfdf);
+        return ResponseEntity.ok(describe(documentSessionService.getSession(sessionId), annotationCount));
+    }
+
+    @GetMapping("/{sessionId}/xfdf")
+    public ResponseEntity<StreamingResponseBody> exportXfdf(@PathVariable String sessionId) {
+        documentSessionService.getSession(sessionId);
+
+        StreamingResponseBody body = outputStream -> documentSessionService.exportXfdf(sessionId, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(XfdfCodec.MEDIA_TYPE))
+                .body(body);
+    }
+
+    @GetMapping("/{sessionId}/pdf")
+    public ResponseEntity<StreamingResponseBody> downloadPdf(@PathVariable String sessionId,
+                                                             AnnotationOptions options) throws IOException {
+        DocumentSession session = documentSessionService.getSession(sessionId);
+        documentSessionService.validateOutput(sessionId, options);
+
+        StreamingResponseBody body = outputStream ->
+                documentSessionService.writeDocument(sessionId, options, outputStream);
+        return new ResponseEntity<>(body, PdfUploads.attachmentHeaders(session.getFilename()), HttpStatus.OK);
+    }
+
+    /**
+     * Lists the pages that carry annotations, the only ones whose preview differs from the
+     * uploaded document.
+     */
+    @GetMapping("/{sessionId}/pages")
+    public ResponseEntity<Map<String, Object>> getPages(@PathVariable String sessionId) {
+        DocumentSession session = documentSessionService.getSession(sessionId);
+        return ResponseEntity.ok(Map.of(
+            "pages", session.getPageCount(),
+            "annotatedPages", documentSessionService.getAnnotatedPages(sessionId)
+        ));
+    }
+
+    /**
+     * Renders a page of the annotated document. The image changes with the session, so clients
+     * must revalidate it.
+     */
+    @GetMapping("/{sessionId}/pages/{pageNumber}")
+    public ResponseEntity<byte[]> renderPage(@PathVariable String sessionId, @PathVariable int pageNumber,
+                                             RenderOptions options) throws IOException {
+        byte[] image = documentSessionService.renderPage(sessionId, pageNumber, options);
+        return PdfUploads.pageImage(image, options, CacheControl.noCache());
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> closeSession(@PathVariable String sessionId) {
+        documentSessionService.closeSession(sessionId);
+        return ResponseEntity.noContent().build();
+    }
+
+    private Map<String, Object> describe(DocumentSession session, int annotationCount) {
+        return Map.of(
+            "sessionId", session.getSessionId(),
+            "documentId", session.getDocumentId(),
+            "pages", session.getPageCount(),
+            "sizeBytes", session.getSizeBytes(),
+            "annotationCount", annotationCount
+        );
+    }
+}
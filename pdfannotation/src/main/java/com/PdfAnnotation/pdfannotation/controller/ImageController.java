@@ -0,0 +1,49 @@
+package com.PdfAnnotation.pdfannotation.controller;
+
+import com.PdfAnnotation.pdfannotation.service.ImageRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Upload logos and signatures once, then place them with image annotations by the returned ID.
+ */
+@RestController
+@RequestMapping("/api/pdf/images")
+@CrossOrigin(origins = "*") // Configure this properly in production
+public class ImageController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageController.class);
+
+    @Autowired
+    private ImageRegistry imageRegistry;
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> uploadImage(@RequestParam("file") MultipartFile file)
+            throws IOException {
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException("File is empty");
+        }
+        if (file.getContentType() == null || !file.getContentType().startsWith("image/")) {
+            throw new IllegalArgumentException("File must be an image");
+        }
+
+        ImageRegistry.CompiledImage image = imageRegistry.register(file.getInputStream());
+        logger.info("Registered image {} ({}x{}) from {}", image.getImageId(), image.getWidth(),
+                image.getHeight(), file.getOriginalFilename());
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(Map.of(
+            "imageId", image.getImageId(),
+            "width", image.getWidth(),
+            "height", image.getHeight(),
+            "alpha", image.hasAlpha()
+        ));
+    }
+}
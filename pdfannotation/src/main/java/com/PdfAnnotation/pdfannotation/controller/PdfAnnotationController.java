@@ -1,19 +1,38 @@
 package com.PdfAnnotation.pdfannotation.controller;
 
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
 import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.PdfAnnotation.pdfannotation.exception.DocumentNotFoundException;
+import com.PdfAnnotation.pdfannotation.service.AnnotationBuckets;
+import com.PdfAnnotation.pdfannotation.service.AnnotationMetrics;
+import com.PdfAnnotation.pdfannotation.service.AnnotationParser;
+import com.PdfAnnotation.pdfannotation.service.DocumentStore;
 import com.PdfAnnotation.pdfannotation.service.PdfAnnotationService;
+import com.PdfAnnotation.pdfannotation.service.ResultCache;
+import com.PdfAnnotation.pdfannotation.service.ShardedAnnotator;
+import com.PdfAnnotation.pdfannotation.service.StageTimings;
+import com.PdfAnnotation.pdfannotation.service.TextLocator;
+import com.PdfAnnotation.pdfannotation.service.XfdfCodec;
 import jakarta.validation.Valid;
+import org.apache.commons.io.function.IOSupplier;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 
@@ -24,116 +43,178 @@ public class PdfAnnotationController {
     
     private static final Logger logger = LoggerFactory.getLogger(PdfAnnotationController.class);
     
+    private static final String SERVER_TIMING = "Server-Timing";
+    
     @Autowired
     private PdfAnnotationService pdfAnnotationService;
+    
+    @Autowired
+    private ResultCache resultCache;
+    
+    @Autowired
+    private AnnotationParser annotationParser;
+    
+    @Autowired
+    private AnnotationMetrics annotationMetrics;
+    
+    @Autowired
+    private XfdfCodec xfdfCodec;
+    
+    @Autowired
+    private TextLocator textLocator;
+    
+    @Autowired
+    private ShardedAnnotator shardedAnnotator;
+    
+    @Autowired
+    private DocumentStore documentStore;
+    
+    @Autowired
+    private MemoryUsageSetting memoryUsageSetting;
 
     @PostMapping("/annotate")
-    public ResponseEntity<?> annotatePdf(
+    public ResponseEntity<StreamingResponseBody> annotatePdf(
             @RequestParam("file") MultipartFile file,
-            @RequestParam("annotations") String annotationsJson) {
+            @RequestParam("annotations") String annotationsJson,
+            AnnotationOptions options,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws IOException {
         
-        try {
-            logger.info("Received PDF annotation request. File: {}, Annotations: {}", 
-                       file.getOriginalFilename(), annotationsJson);
-            
-            if (file.isEmpty()) {
-                return ResponseEntity.badRequest()
-                    .body(Map.of("error", "File is empty"));
-            }
-            
-            if (!file.getContentType().equals("application/pdf")) {
-                return ResponseEntity.badRequest()
-                    .body(Map.of("error", "File must be a PDF"));
-            }
-            
-            List<AnnotationRequest> annotations;
-            try {
-                annotations = parseAnnotations(annotationsJson);
-            } catch (Exception e) {
-                logger.error("Failed to parse annotations JSON", e);
-                return ResponseEntity.badRequest()
-                    .body(Map.of("error", "Invalid annotations format: " + e.getMessage()));
-            }
-            
-            // Validate annotations
-            for (int i = 0; i < annotations.size(); i++) {
-                AnnotationRequest annotation = annotations.get(i);
-                if (annotation.getSelectedText() == null || annotation.getSelectedText().trim().isEmpty()) {
-                    return ResponseEntity.badRequest()
-                        .body(Map.of("error", "Annotation " + i + ": Selected text is required"));
-                }
-                if (annotation.getPageNumber() == null || annotation.getPageNumber() < 1) {
-                    return ResponseEntity.badRequest()
-                        .body(Map.of("error", "Annotation " + i + ": Valid page number is required"));
-                }
-                if (annotation.getColor() == null || annotation.getColor().trim().isEmpty()) {
-                    return ResponseEntity.badRequest()
-                        .body(Map.of("error", "Annotation " + i + ": Color is required"));
-                }
-            }
-            
-            byte[] annotatedPdf = pdfAnnotationService.annotatePdf(file.getInputStream(), annotations);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_PDF);
-            headers.setContentDispositionFormData("attachment", "annotated_" + file.getOriginalFilename());
-            headers.setContentLength(annotatedPdf.length);
-            
-            logger.info("Successfully processed PDF with {} annotations", annotations.size());
-            
-            return new ResponseEntity<>(annotatedPdf, headers, HttpStatus.OK);
-            
-        } catch (IOException e) {
-            logger.error("Error processing PDF", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body(Map.of("error", "Failed to process PDF: " + e.getMessage()));
-        } catch (Exception e) {
-            logger.error("Unexpected error", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body(Map.of("error", "Internal server error: " + e.getMessage()));
-        }
+        recordRequestReceived();
+        
+        logger.info("Received PDF annotation request. File: {}, Annotations: {}, Options: {}", 
+                   file.getOriginalFilename(), annotationsJson, options);
+        
+        PdfUploads.validate(file);
+        
+        List<AnnotationRequest> annotations = annotationParser.parse(annotationsJson);
+        
+        ResponseEntity<StreamingResponseBody> response = annotate(file, annotations, options, ifNoneMatch);
+        
+        logger.info("Successfully processed PDF with {} annotations", annotations.size());
+        
+        return response;
     }
 
     @PostMapping("/annotate-json")
-    public ResponseEntity<?> annotatePdfWithJson(
+    public ResponseEntity<StreamingResponseBody> annotatePdfWithJson(
+            @RequestParam("file") MultipartFile file,
+            @RequestBody @Valid List<AnnotationRequest> annotations,
+            AnnotationOptions options,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws IOException {
+        
+        recordRequestReceived();
+        
+        logger.info("Received PDF annotation request via JSON. File: {}, Annotations count: {}", 
+                   file.getOriginalFilename(), annotations.size());
+        
+        PdfUploads.validate(file);
+        annotationParser.validate(annotations);
+        
+        ResponseEntity<StreamingResponseBody> response = annotate(file, annotations, options, ifNoneMatch);
+        
+        logger.info("Successfully processed PDF with {} annotations", annotations.size());
+        
+        // Return annotated PDF
+        return response;
+    }
+
+    /**
+     * Annotates a document from the document store, such as a completed chunked upload. The
+     * document is read from its stored file through PDFBox's random-access file source instead
+     * of being streamed in, and its ID is already the content hash the result cache needs.
+     */
+    @PostMapping("/documents/{documentId}/annotate")
+    public ResponseEntity<StreamingResponseBody> annotateStoredDocument(
+            @PathVariable String documentId,
+            @RequestBody @Valid List<AnnotationRequest> annotations,
+            AnnotationOptions options,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws IOException {
+
+        recordRequestReceived();
+
+        logger.info("Received annotation request for stored document {}. Annotations count: {}",
+                   documentId, annotations.size());
+
+        if (!documentStore.contains(documentId)) {
+            throw new DocumentNotFoundException("Document not found: " + documentId);
+        }
+        annotationParser.validate(annotations);
+
+        ResponseEntity<StreamingResponseBody> response = annotate(documentId + ".pdf", () -> documentId,
+                annotations, options, ifNoneMatch, () -> loadAndAnnotate(documentId, annotations, options));
+
+        logger.info("Successfully processed stored document with {} annotations", annotations.size());
+
+        return response;
+    }
+
+    /**
+     * Applies the annotations of an uploaded XFDF document. XFDF coordinates depend on the page
+     * sizes, so the PDF is loaded before the annotations are read and the result cache is not
+     * used.
+     */
+    @PostMapping("/annotate-xfdf")
+    public ResponseEntity<StreamingResponseBody> annotatePdfWithXfdf(
             @RequestParam("file") MultipartFile file,
-            @RequestBody @Valid List<AnnotationRequest> annotations) {
+            @RequestParam("xfdf") MultipartFile xfdf,
+            AnnotationOptions options) throws IOException {
+        
+        recordRequestReceived();
         
+        logger.info("Received PDF annotation request via XFDF. File: {}, XFDF: {} bytes",
+                   file.getOriginalFilename(), xfdf.getSize());
+        
+        PdfUploads.validate(file);
+        
+        PDDocument document = pdfAnnotationService.loadDocument(file.getInputStream());
         try {
-            logger.info("Received PDF annotation request via JSON. File: {}, Annotations count: {}", 
-                       file.getOriginalFilename(), annotations.size());
-            
-            if (file.isEmpty()) {
-                return ResponseEntity.badRequest()
-                    .body(Map.of("error", "File is empty"));
-            }
-            
-            if (!file.getContentType().equals("application/pdf")) {
-                return ResponseEntity.badRequest()
-                    .body(Map.of("error", "File must be a PDF"));
-            }
-            
-            byte[] annotatedPdf = pdfAnnotationService.annotatePdf(file.getInputStream(), annotations);
-            
-            // Return annotated PDF
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_PDF);
-            headers.setContentDispositionFormData("attachment", "annotated_" + file.getOriginalFilename());
-            headers.setContentLength(annotatedPdf.length);
-            
-            logger.info("Successfully processed PDF with {} annotations", annotations.size());
-            
-            return new ResponseEntity<>(annotatedPdf, headers, HttpStatus.OK);
-            
-        } catch (IOException e) {
-            logger.error("Error processing PDF", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body(Map.of("error", "Failed to process PDF: " + e.getMessage()));
-        } catch (Exception e) {
-            logger.error("Unexpected error", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body(Map.of("error", "Internal server error: " + e.getMessage()));
+            List<AnnotationRequest> annotations = xfdfCodec.read(xfdf.getInputStream(), document);
+            annotationParser.validate(annotations);
+            pdfAnnotationService.applyAnnotations(document, annotations, options);
+            logger.info("Applied {} XFDF annotations", annotations.size());
+        } catch (IOException | RuntimeException e) {
+            document.close();
+            throw e;
         }
+        
+        HttpHeaders headers = PdfUploads.attachmentHeaders(file.getOriginalFilename());
+        addServerTiming(headers);
+        return new ResponseEntity<>(saveTo(document, options, null), headers, HttpStatus.OK);
+    }
+
+    /**
+     * Applies a very large annotation set sent as a JSON file part. The annotations are parsed
+     * straight from the upload into per-page buckets and drawn page by page, so the payload is
+     * never held as a string or a list. Page numbers are checked while parsing, which needs the
+     * document loaded first, and the result cache is not used.
+     */
+    @PostMapping("/annotate-stream")
+    public ResponseEntity<StreamingResponseBody> annotatePdfWithStream(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam("annotations") MultipartFile annotationsFile,
+            AnnotationOptions options) throws IOException {
+
+        recordRequestReceived();
+
+        logger.info("Received streaming PDF annotation request. File: {}, Annotations: {} bytes, Options: {}",
+                   file.getOriginalFilename(), annotationsFile.getSize(), options);
+
+        PdfUploads.validate(file);
+
+        PDDocument document = pdfAnnotationService.loadDocument(file.getInputStream());
+        try {
+            AnnotationBuckets buckets = annotationParser.stream(annotationsFile.getInputStream(),
+                    document.getNumberOfPages());
+            pdfAnnotationService.applyAnnotations(document, buckets, options);
+            logger.info("Applied {} streamed annotations", buckets.size());
+        } catch (IOException | RuntimeException e) {
+            document.close();
+            throw e;
+        }
+
+        HttpHeaders headers = PdfUploads.attachmentHeaders(file.getOriginalFilename());
+        addServerTiming(headers);
+        return new ResponseEntity<>(saveTo(document, options, null), headers, HttpStatus.OK);
     }
 
     @GetMapping("/health")
@@ -145,9 +226,214 @@ public class PdfAnnotationController {
         ));
     }
 
-    private List<AnnotationRequest> parseAnnotations(String annotationsJson) throws Exception {
-        com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-        return mapper.readValue(annotationsJson, 
-            mapper.getTypeFactory().constructCollectionType(List.class, AnnotationRequest.class));
+    private void recordRequestReceived() {
+        StageTimings timings = StageTimings.current();
+        if (timings != null) {
+            annotationMetrics.recordStage(AnnotationMetrics.Stage.MULTIPART, timings.getStartNanos());
+        }
+    }
+
+    private AnnotatedDocument loadAndAnnotate(String documentId, List<AnnotationRequest> annotations,
+                                              AnnotationOptions options) throws IOException {
+        if (TextLocator.needsLocating(annotations)) {
+            annotations = textLocator.locate(annotations, documentId);
+        }
+        File file = documentStore.resolve(documentId).toFile();
+        if (options != null && options.isSharded()) {
+            return new AnnotatedDocument(shardedAnnotator.annotate(file, annotations, options), null);
+        }
+        return new AnnotatedDocument(apply(pdfAnnotationService.loadDocument(file), annotations, options), null);
+    }
+
+    private AnnotatedDocument loadAndAnnotate(MultipartFile file, List<AnnotationRequest> annotations,
+                                              AnnotationOptions options) throws IOException {
+        boolean sharded = options != null && options.isSharded();
+        if (!sharded && !TextLocator.needsLocating(annotations)) {
+            return new AnnotatedDocument(
+                    apply(pdfAnnotationService.loadDocument(file.getInputStream()), annotations, options), null);
+        }
+        // a one-shot upload is not stored: its text is indexed from a scratch copy, cached under
+        // the content hash, and every shard loads its own copy of the document from it
+        Path spooled = PdfUploads.spool(file, memoryUsageSetting.getTempDir());
+        boolean inUse = false;
+        try {
+            annotations = textLocator.locate(annotations, spooled.toFile());
+            if (sharded) {
+                // the merged document reads from the file until it is saved and closed
+                PDDocument document = shardedAnnotator.annotate(spooled.toFile(), annotations, options);
+                inUse = true;
+                return new AnnotatedDocument(document, spooled);
+            }
+            try (InputStream input = Files.newInputStream(spooled)) {
+                return new AnnotatedDocument(apply(pdfAnnotationService.loadDocument(input), annotations, options),
+                        null);
+            }
+        } finally {
+            if (!inUse) {
+                deleteQuietly(spooled);
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete scratch copy {}", file, e);
+        }
+    }
+
+    private PDDocument apply(PDDocument document, List<AnnotationRequest> annotations,
+                             AnnotationOptions options) throws IOException {
+        try {
+            pdfAnnotationService.applyAnnotations(document, annotations, options);
+            return document;
+        } catch (IOException | RuntimeException e) {
+            document.close();
+            throw e;
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> annotate(MultipartFile file, List<AnnotationRequest> annotations,
+                                                           AnnotationOptions options, String ifNoneMatch)
+            throws IOException {
+        return annotate(file.getOriginalFilename(), () -> ResultCache.hash(file.getInputStream()), annotations,
+                options, ifNoneMatch, () -> loadAndAnnotate(file, annotations, options));
+    }
+
+    /**
+     * Serves the result from the result cache when the same document and annotations were
+     * processed before, or answers 412 when the client already holds it. Otherwise the document
+     * is annotated and saved straight to the servlet output stream, with a copy written into the
+     * cache on the way. The response carries a {@code Server-Timing} header with the stages
+     * that ran before it was sent; saving happens while streaming and is only in the metrics.
+     */
+    private ResponseEntity<StreamingResponseBody> annotate(String filename, IOSupplier<String> documentHash,
+                                                           List<AnnotationRequest> annotations,
+                                                           AnnotationOptions options, String ifNoneMatch,
+                                                           IOSupplier<AnnotatedDocument> annotator)
+            throws IOException {
+        HttpHeaders headers = PdfUploads.attachmentHeaders(filename);
+
+        if (!resultCache.isEnabled()) {
+            AnnotatedDocument annotated = annotator.get();
+            addServerTiming(headers);
+            return new ResponseEntity<>(saveTo(annotated.document, options, null, annotated.scratchFile),
+                    headers, HttpStatus.OK);
+        }
+
+        long hashStart = System.nanoTime();
+        String key = resultCache.key(documentHash.get(), annotations, options);
+        annotationMetrics.recordStage(AnnotationMetrics.Stage.HASH, hashStart);
+        String etag = "\"" + key + "\"";
+        headers.setETag(etag);
+
+        if (matchesETag(ifNoneMatch, etag)) {
+            // every annotate endpoint is a POST, and RFC 9110 only allows 304 for GET and HEAD;
+            // any other method answers a matching If-None-Match with 412
+            logger.info("Result {} already held by the client", key);
+            HttpHeaders preconditionFailed = new HttpHeaders();
+            preconditionFailed.setETag(etag);
+            addServerTiming(preconditionFailed);
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).headers(preconditionFailed).build();
+        }
+
+        ResultCache.CachedResult cached = resultCache.get(key);
+        if (cached != null) {
+            logger.info("Serving cached result {}", key);
+            headers.setContentLength(cached.getSize());
+            addServerTiming(headers);
+            return new ResponseEntity<>(cached::writeTo, headers, HttpStatus.OK);
+        }
+
+        AnnotatedDocument annotated = annotator.get();
+        addServerTiming(headers);
+        return new ResponseEntity<>(saveTo(annotated.document, options, key, annotated.scratchFile),
+                headers, HttpStatus.OK);
+    }
+
+    private static void addServerTiming(HttpHeaders headers) {
+        StageTimings timings = StageTimings.current();
+        String value = timings != null ? timings.toHeaderValue() : null;
+        if (value != null) {
+            headers.add(SERVER_TIMING, value);
+        }
+    }
+
+    private StreamingResponseBody saveTo(PDDocument document, AnnotationOptions options, String cacheKey)
+            throws IOException {
+        return saveTo(document, options, cacheKey, null);
+    }
+
+    /**
+     * Writes the saved document straight to the servlet output stream instead of buffering the
+     * whole result in a byte array, teeing it into the result cache when a key is given. The
+     * document is closed once the response has been written, and the scratch file it reads
+     * from, if any, is deleted after that.
+     */
+    private StreamingResponseBody saveTo(PDDocument document, AnnotationOptions options, String cacheKey,
+                                         Path scratchFile) throws IOException {
+        try {
+            pdfAnnotationService.validateOutput(document, options);
+        } catch (IllegalArgumentException e) {
+            try {
+                document.close();
+            } finally {
+                deleteQuietly(scratchFile);
+            }
+            throw e;
+        }
+        return outputStream -> {
+            try {
+                try (PDDocument toSave = document) {
+                    if (cacheKey == null) {
+                        pdfAnnotationService.saveDocument(toSave, options, outputStream);
+                        return;
+                    }
+                    try (ResultCache.PendingResult pending = resultCache.begin(cacheKey)) {
+                        pdfAnnotationService.saveDocument(toSave, options,
+                                new TeeOutputStream(outputStream, pending.getOutputStream()));
+                        pending.commit();
+                    }
+                }
+            } finally {
+                deleteQuietly(scratchFile);
+            }
+        };
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            // "*" would match any result of any request, so only the exact result counts
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An annotated document, and the scratch file it still reads from, if any, to delete once
+     * the document is closed.
+     */
+    private static final class AnnotatedDocument {
+
+        private final PDDocument document;
+        private final Path scratchFile;
+
+        private AnnotatedDocument(PDDocument document, Path scratchFile) {
+            this.document = document;
+            this.scratchFile = scratchFile;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package com.PdfAnnotation.pdfannotation.controller;
+
+import com.PdfAnnotation.pdfannotation.dto.RenderOptions;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Request checks and response headers shared by the PDF endpoints.
+ */
+final class PdfUploads {
+
+    private PdfUploads() {}
+
+    static void validate(MultipartFile file) {
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException("File is empty");
+        }
+        
+        if (!"application/pdf".equals(file.getContentType())) {
+            throw new IllegalArgumentException("File must be a PDF");
+        }
+    }
+
+    /**
+     * Copies an upload to a scratch file in {@code directory}, or the system temp directory if
+     * it is {@code null}, for readers that need a file. The caller deletes it.
+     */
+    static Path spool(MultipartFile file, File directory) throws IOException {
+        Path spooled = directory != null
+                ? Files.createTempFile(directory.toPath(), "upload-", ".pdf")
+                : Files.createTempFile("upload-", ".pdf");
+        try (InputStream input = file.getInputStream()) {
+            Files.copy(input, spooled, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spooled);
+            throw e;
+        }
+        return spooled;
+    }
+
+    static HttpHeaders attachmentHeaders(String originalFilename) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_PDF);
+        headers.setContentDispositionFormData("attachment", "annotated_" + originalFilename);
+        return headers;
+    }
+
+    static ResponseEntity<byte[]> pageImage(byte[] image, RenderOptions options, CacheControl cacheControl) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(options.getFormat().getMediaType()))
+                .contentLength(image.length)
+                .cacheControl(cacheControl)
+                .body(image);
+    }
+}
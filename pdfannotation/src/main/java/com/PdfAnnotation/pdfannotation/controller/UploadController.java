@@ -0,0 +1,92 @@
+package com.PdfAnnotation.pdfannotation.controller;
+
+import com.PdfAnnotation.pdfannotation.service.ChunkedUpload;
+import com.PdfAnnotation.pdfannotation.service.ChunkedUploadService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resumable chunked uploads into the document store, for documents over the multipart limit or
+ * links that drop large uploads. Create an upload, {@code PUT} raw chunks at their offsets, ask
+ * for the missing ranges after a failure, then complete it to get the document ID.
+ */
+@RestController
+@RequestMapping("/api/pdf/uploads")
+@CrossOrigin(origins = "*") // Configure this properly in production
+public class UploadController {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadController.class);
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> createUpload(@RequestParam("size") long size,
+                                                            @RequestParam(value = "filename", required = false) String filename)
+            throws IOException {
+        ChunkedUpload upload = chunkedUploadService.create(size, filename);
+        return ResponseEntity.status(HttpStatus.CREATED).body(describe(upload));
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<Map<String, Object>> getUpload(@PathVariable String uploadId) {
+        return ResponseEntity.ok(describe(chunkedUploadService.getUpload(uploadId)));
+    }
+
+    /**
+     * Writes the raw request body at {@code offset}. Chunks may arrive in any order and in
+     * parallel, and a chunk may be resent.
+     */
+    @PutMapping("/{uploadId}")
+    public ResponseEntity<Map<String, Object>> putChunk(@PathVariable String uploadId,
+                                                        @RequestParam("offset") long offset,
+                                                        InputStream body) throws IOException {
+        return ResponseEntity.ok(describe(chunkedUploadService.writeChunk(uploadId, offset, body)));
+    }
+
+    /**
+     * Moves the finished upload into the document store. With {@code sha256}, the upload is
+     * rejected unless its hash matches.
+     */
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<Map<String, Object>> completeUpload(@PathVariable String uploadId,
+                                                              @RequestParam(value = "sha256", required = false) String sha256)
+            throws IOException {
+        ChunkedUpload upload = chunkedUploadService.getUpload(uploadId);
+        String documentId = chunkedUploadService.complete(uploadId, sha256);
+        logger.info("Stored document {} from chunked upload of {}", documentId, upload.getFilename());
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(Map.of(
+            "documentId", documentId,
+            "sizeBytes", upload.getSize()
+        ));
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> abortUpload(@PathVariable String uploadId) throws IOException {
+        chunkedUploadService.abort(uploadId);
+        return ResponseEntity.noContent().build();
+    }
+
+    private Map<String, Object> describe(ChunkedUpload upload) {
+        List<Map<String, Long>> missing = upload.getMissingRanges().stream()
+                .map(range -> Map.of("offset", range[0], "length", range[1]))
+                .toList();
+        return Map.of(
+            "uploadId", upload.getUploadId(),
+            "size", upload.getSize(),
+            "receivedBytes", upload.getReceivedBytes(),
+            "chunkSize", chunkedUploadService.getChunkSize(),
+            "missing", missing
+        );
+    }
+}
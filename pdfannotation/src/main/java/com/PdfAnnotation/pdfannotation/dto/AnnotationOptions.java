@@ -0,0 +1,86 @@
+package com.PdfAnnotation.pdfannotation.dto;
+
+/**
+ * Output options for an annotate request, bound from request parameters.
+ */
+public class AnnotationOptions {
+    
+    /**
+     * How annotations end up in the document.
+     */
+    public enum Mode {
+        // Drawn into the page content; permanent and shown by every viewer
+        FLATTEN,
+        // Added as FreeText and Stamp annotation objects with appearance streams; they only touch
+        // the page's /Annots array and stay editable in PDF viewers
+        NATIVE
+    }
+    
+    // Append only the changed objects to the original bytes instead of rewriting the file
+    private boolean incremental;
+    
+    private Mode mode = Mode.FLATTEN;
+    
+    // Remove the page text under each annotation from the content stream before drawing
+    private boolean redact;
+    
+    // Return only these pages as a new document: "annotated" for the pages that received
+    // annotations, or page ranges such as "1-3,7"; empty returns the whole document
+    private String pages;
+    
+    // Split a large document into page-range shards annotated on separate threads
+    private boolean sharded;
+    
+    public AnnotationOptions() {}
+    
+    public boolean isIncremental() {
+        return incremental;
+    }
+    
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+    
+    public Mode getMode() {
+        return mode;
+    }
+    
+    public void setMode(Mode mode) {
+        this.mode = mode != null ? mode : Mode.FLATTEN;
+    }
+    
+    public boolean isRedact() {
+        return redact;
+    }
+    
+    public void setRedact(boolean redact) {
+        this.redact = redact;
+    }
+    
+    public String getPages() {
+        return pages;
+    }
+    
+    public void setPages(String pages) {
+        this.pages = pages;
+    }
+    
+    public boolean isSharded() {
+        return sharded;
+    }
+    
+    public void setSharded(boolean sharded) {
+        this.sharded = sharded;
+    }
+    
+    @Override
+    public String toString() {
+        return "AnnotationOptions{" +
+                "incremental=" + incremental +
+                ", mode=" + mode +
+                ", redact=" + redact +
+                ", pages='" + pages + '\'' +
+                ", sharded=" + sharded +
+                '}';
+    }
+}
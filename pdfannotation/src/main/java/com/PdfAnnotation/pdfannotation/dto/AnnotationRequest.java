@@ -1,39 +1,55 @@
 package com.PdfAnnotation.pdfannotation.dto;
 
-import jakarta.validation.constraints.NotBlank;
-import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
 
 public class AnnotationRequest {
     
-    @NotBlank(message = "Selected text is required")
+    public static final String TYPE_TEXT = "text";
+    public static final String TYPE_IMAGE = "image";
+    
+    // "text" (default) or "image"; text and image fields are checked by AnnotationParser
+    private String type;
+    
     private String selectedText;
     
-    @NotNull(message = "Page number is required")
+    // Position: required, except on text annotations without coordinates, which are placed
+    // on every occurrence of selectedText (see TextLocator); pageNumber then limits the search
     @Positive(message = "Page number must be positive")
     private Integer pageNumber;
     
-    @NotNull(message = "X coordinate is required")
+    // Page range searched for a text annotation without coordinates; defaults to all pages
+    @Positive(message = "First page must be positive")
+    private Integer firstPage;
+    
+    @Positive(message = "Last page must be positive")
+    private Integer lastPage;
+    
     private Double x;
     
-    @NotNull(message = "Y coordinate is required")
     private Double y;
     
-    @NotNull(message = "Width is required")
     private Double width;
     
-    @NotNull(message = "Height is required")
     private Double height;
     
-    @NotBlank(message = "Color is required")
     private String color;
     
+    // SHA-256 ID of an image uploaded to /api/pdf/images, for image annotations
+    private String imageId;
+    
     private String link;
     
     private String fontStyle;
     
     private Float fontSize;
     
+    // Shrink the font until the text fits the box; fontSize is then the largest size tried
+    private Boolean autoFit;
+    
+    // Stamp name: the first annotation with a name defines the stamp for the document,
+    // later ones with the same name reuse it scaled to their own box
+    private String template;
+    
     private Double viewportWidth;
     private Double viewportHeight;
     
@@ -76,6 +92,14 @@ public void setPdfHeight(Float pdfHeight) { this.pdfHeight = pdfHeight; }
 public Float getScale() { return scale; }
 public void setScale(Float scale) { this.scale = scale; }
     // Getters and Setters
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
     public String getSelectedText() {
         return selectedText;
     }
@@ -92,6 +116,22 @@ public void setScale(Float scale) { this.scale = scale; }
         this.pageNumber = pageNumber;
     }
     
+    public Integer getFirstPage() {
+        return firstPage;
+    }
+    
+    public void setFirstPage(Integer firstPage) {
+        this.firstPage = firstPage;
+    }
+    
+    public Integer getLastPage() {
+        return lastPage;
+    }
+    
+    public void setLastPage(Integer lastPage) {
+        this.lastPage = lastPage;
+    }
+    
     public Double getX() {
         return x;
     }
@@ -132,6 +172,14 @@ public void setScale(Float scale) { this.scale = scale; }
         this.color = color;
     }
     
+    public String getImageId() {
+        return imageId;
+    }
+    
+    public void setImageId(String imageId) {
+        this.imageId = imageId;
+    }
+    
     public String getLink() {
         return link;
     }
@@ -156,6 +204,22 @@ public void setScale(Float scale) { this.scale = scale; }
         this.fontSize = fontSize;
     }
     
+    public Boolean getAutoFit() {
+        return autoFit;
+    }
+    
+    public void setAutoFit(Boolean autoFit) {
+        this.autoFit = autoFit;
+    }
+    
+    public String getTemplate() {
+        return template;
+    }
+    
+    public void setTemplate(String template) {
+        this.template = template;
+    }
+    
     public Double getViewportWidth() {
         return viewportWidth;
     }
@@ -199,16 +263,22 @@ public void setScale(Float scale) { this.scale = scale; }
     @Override
     public String toString() {
         return "AnnotationRequest{" +
-                "selectedText='" + selectedText + '\'' +
+                "type='" + type + '\'' +
+                ", selectedText='" + selectedText + '\'' +
                 ", pageNumber=" + pageNumber +
+                ", firstPage=" + firstPage +
+                ", lastPage=" + lastPage +
                 ", x=" + x +
                 ", y=" + y +
                 ", width=" + width +
                 ", height=" + height +
                 ", color='" + color + '\'' +
+                ", imageId='" + imageId + '\'' +
                 ", link='" + link + '\'' +
                 ", fontStyle='" + fontStyle + '\'' +
                 ", fontSize=" + fontSize +
+                ", autoFit=" + autoFit +
+                ", template='" + template + '\'' +
                 ", viewportWidth=" + viewportWidth +
                 ", viewportHeight=" + viewportHeight +
                 ", backgroundColor='" + backgroundColor + '\'' +
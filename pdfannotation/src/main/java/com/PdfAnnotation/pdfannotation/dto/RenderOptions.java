@@ -0,0 +1,96 @@
+package com.PdfAnnotation.pdfannotation.dto;
+
+/**
+ * What to render of a page, bound from request parameters: the whole page, or with a
+ * {@code tileSize} one square tile of it, counted in tiles from the top-left corner.
+ */
+public class RenderOptions {
+
+    /**
+     * Image encoding of the rendered page.
+     */
+    public enum Format {
+        PNG("image/png", "png"),
+        JPEG("image/jpeg", "jpg");
+
+        private final String mediaType;
+        private final String extension;
+
+        Format(String mediaType, String extension) {
+            this.mediaType = mediaType;
+            this.extension = extension;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private float dpi = 96;
+
+    private Format format = Format.PNG;
+
+    // Tile edge in pixels; 0 renders the whole page
+    private int tileSize;
+
+    private int tileX;
+
+    private int tileY;
+
+    public RenderOptions() {}
+
+    public float getDpi() {
+        return dpi;
+    }
+
+    public void setDpi(float dpi) {
+        this.dpi = dpi;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public void setFormat(Format format) {
+        this.format = format != null ? format : Format.PNG;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    public int getTileX() {
+        return tileX;
+    }
+
+    public void setTileX(int tileX) {
+        this.tileX = tileX;
+    }
+
+    public int getTileY() {
+        return tileY;
+    }
+
+    public void setTileY(int tileY) {
+        this.tileY = tileY;
+    }
+
+    @Override
+    public String toString() {
+        return "RenderOptions{" +
+                "dpi=" + dpi +
+                ", format=" + format +
+                ", tileSize=" + tileSize +
+                ", tileX=" + tileX +
+                ", tileY=" + tileY +
+                '}';
+    }
+}
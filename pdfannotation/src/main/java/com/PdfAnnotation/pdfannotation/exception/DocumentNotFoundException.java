@@ -0,0 +1,8 @@
+package com.PdfAnnotation.pdfannotation.exception;
+
+public class DocumentNotFoundException extends RuntimeException {
+
+    public DocumentNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,171 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Annotations grouped by page as compact records, for payloads too large to hold as a list of
+ * {@link AnnotationRequest}s. Coordinates are kept as primitive floats and repeated style
+ * strings (colours, font styles, template names) are shared. A page is turned back into request
+ * objects only when it is taken for drawing, and its records are released at the same time.
+ * Not thread-safe.
+ */
+public final class AnnotationBuckets {
+
+    private final int numberOfPages;
+    private final Map<Integer, List<PackedAnnotation>> pages = new TreeMap<>();
+    private final Map<String, String> shared = new HashMap<>();
+    private final TemplateSources templateSources = new TemplateSources();
+    private int size;
+
+    public AnnotationBuckets(int numberOfPages) {
+        this.numberOfPages = numberOfPages;
+    }
+
+    /**
+     * Packs the annotation into its page's bucket. The request object is not retained, unless
+     * it is the first to use its stamp template.
+     */
+    public void add(AnnotationRequest annotation) {
+        if (TextLocator.needsLocating(annotation)) {
+            throw new IllegalArgumentException("Annotations without coordinates are not supported here");
+        }
+        Integer pageNumber = annotation.getPageNumber();
+        if (pageNumber == null || pageNumber < 1 || pageNumber > numberOfPages) {
+            throw new IllegalArgumentException("Invalid page number: " + pageNumber);
+        }
+        pages.computeIfAbsent(pageNumber, key -> new ArrayList<>()).add(new PackedAnnotation(annotation, this));
+        templateSources.add(annotation);
+        size++;
+    }
+
+    /**
+     * Number of annotations added, including pages already taken.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Pages that still have annotations, in ascending order.
+     */
+    public List<Integer> pageNumbers() {
+        return new ArrayList<>(pages.keySet());
+    }
+
+    /**
+     * Removes a page's bucket and returns its annotations as request objects, in the order they
+     * were added.
+     */
+    public List<AnnotationRequest> take(int pageNumber) {
+        List<PackedAnnotation> packed = pages.remove(pageNumber);
+        if (packed == null) {
+            return List.of();
+        }
+        List<AnnotationRequest> annotations = new ArrayList<>(packed.size());
+        for (PackedAnnotation annotation : packed) {
+            annotations.add(annotation.unpack(pageNumber));
+        }
+        return annotations;
+    }
+
+    /**
+     * The annotations that define the stamp templates, in the order they were added.
+     */
+    TemplateSources templateSources() {
+        return templateSources;
+    }
+
+    private String share(String value) {
+        return value != null ? shared.computeIfAbsent(value, key -> key) : null;
+    }
+
+    /**
+     * The fields drawing uses, without boxing. Missing numbers are stored as NaN. The viewport,
+     * pdfWidth/pdfHeight and scale hints are not used for drawing and are dropped.
+     */
+    private static final class PackedAnnotation {
+
+        private static final byte AUTO_FIT_UNSET = 0;
+        private static final byte AUTO_FIT_ON = 1;
+        private static final byte AUTO_FIT_OFF = 2;
+
+        private final String type;
+        private final String selectedText;
+        private final float x;
+        private final float y;
+        private final float width;
+        private final float height;
+        private final float canvasWidth;
+        private final float canvasHeight;
+        private final float fontSize;
+        private final float borderWidth;
+        private final byte autoFit;
+        private final String color;
+        private final String backgroundColor;
+        private final String borderColor;
+        private final String fontStyle;
+        private final String template;
+        private final String imageId;
+        private final String link;
+
+        PackedAnnotation(AnnotationRequest annotation, AnnotationBuckets buckets) {
+            type = buckets.share(annotation.getType());
+            selectedText = annotation.getSelectedText();
+            x = pack(annotation.getX());
+            y = pack(annotation.getY());
+            width = pack(annotation.getWidth());
+            height = pack(annotation.getHeight());
+            canvasWidth = pack(annotation.getCanvasWidth());
+            canvasHeight = pack(annotation.getCanvasHeight());
+            fontSize = pack(annotation.getFontSize());
+            borderWidth = pack(annotation.getBorderWidth());
+            autoFit = annotation.getAutoFit() == null ? AUTO_FIT_UNSET
+                    : annotation.getAutoFit() ? AUTO_FIT_ON : AUTO_FIT_OFF;
+            color = buckets.share(annotation.getColor());
+            backgroundColor = buckets.share(annotation.getBackgroundColor());
+            borderColor = buckets.share(annotation.getBorderColor());
+            fontStyle = buckets.share(annotation.getFontStyle());
+            template = buckets.share(annotation.getTemplate());
+            imageId = buckets.share(annotation.getImageId());
+            link = annotation.getLink();
+        }
+
+        AnnotationRequest unpack(int pageNumber) {
+            AnnotationRequest annotation = new AnnotationRequest();
+            annotation.setType(type);
+            annotation.setSelectedText(selectedText);
+            annotation.setPageNumber(pageNumber);
+            annotation.setX(Float.isNaN(x) ? null : (double) x);
+            annotation.setY(Float.isNaN(y) ? null : (double) y);
+            annotation.setWidth(Float.isNaN(width) ? null : (double) width);
+            annotation.setHeight(Float.isNaN(height) ? null : (double) height);
+            annotation.setCanvasWidth(unpack(canvasWidth));
+            annotation.setCanvasHeight(unpack(canvasHeight));
+            annotation.setFontSize(unpack(fontSize));
+            annotation.setBorderWidth(unpack(borderWidth));
+            annotation.setAutoFit(autoFit == AUTO_FIT_UNSET ? null : autoFit == AUTO_FIT_ON);
+            annotation.setColor(color);
+            annotation.setBackgroundColor(backgroundColor);
+            annotation.setBorderColor(borderColor);
+            annotation.setFontStyle(fontStyle);
+            annotation.setTemplate(template);
+            annotation.setImageId(imageId);
+            annotation.setLink(link);
+            return annotation;
+        }
+
+        private static float pack(Number value) {
+            return value != null ? value.floatValue() : Float.NaN;
+        }
+
+        private static Float unpack(float value) {
+            return Float.isNaN(value) ? null : value;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A queued annotate request. The upload and the result live in files under the job directory
+ * so a queued job holds no document bytes in heap.
+ */
+public class AnnotationJob {
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    private final String jobId;
+    private final String filename;
+    private final long sizeBytes;
+    private final List<AnnotationRequest> annotations;
+    private final AnnotationOptions options;
+    private final Instant submittedAt = Instant.now();
+
+    final Path inputFile;
+    final Path resultFile;
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    AnnotationJob(String jobId, String filename, long sizeBytes, List<AnnotationRequest> annotations,
+                  AnnotationOptions options, Path inputFile, Path resultFile) {
+        this.jobId = jobId;
+        this.filename = filename;
+        this.sizeBytes = sizeBytes;
+        this.annotations = annotations;
+        this.options = options;
+        this.inputFile = inputFile;
+        this.resultFile = resultFile;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Path getResultFile() {
+        return resultFile;
+    }
+
+    List<AnnotationRequest> getAnnotations() {
+        return annotations;
+    }
+
+    AnnotationOptions getOptions() {
+        return options;
+    }
+
+    void started() {
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+    }
+
+    void succeeded() {
+        finishedAt = Instant.now();
+        status = Status.SUCCEEDED;
+    }
+
+    void failed(String message) {
+        finishedAt = Instant.now();
+        error = message;
+        status = Status.FAILED;
+    }
+
+    boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+}
@@ -0,0 +1,206 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.PdfAnnotation.pdfannotation.exception.DocumentNotFoundException;
+import com.PdfAnnotation.pdfannotation.exception.ServiceOverloadedException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs annotate requests on a dedicated bounded worker pool instead of servlet threads.
+ * Admission is weighted by upload size: a job is rejected when the queue is full or when the
+ * bytes of queued and running jobs would exceed the configured budget, so a burst of large PDFs
+ * is turned away with 503 instead of exhausting memory or request threads.
+ */
+@Service
+public class AnnotationJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnnotationJobService.class);
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Value("${pdf.jobs.workers:0}")
+    private int workers;
+
+    @Value("${pdf.jobs.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${pdf.jobs.max-pending-bytes:512MB}")
+    private DataSize maxPendingBytes;
+
+    @Value("${pdf.jobs.retention:1h}")
+    private Duration retention;
+
+    @Value("${pdf.jobs.retry-after:10s}")
+    private Duration retryAfter;
+
+    @Value("${pdf.jobs.dir:${java.io.tmpdir}/pdf-annotation/jobs}")
+    private String directory;
+
+    private final Map<String, AnnotationJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    private Path root;
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Files.createDirectories(Paths.get(directory));
+
+        int poolSize = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "pdf-job-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        logger.info("Annotation job pool: {} workers, queue capacity {}, pending budget {}",
+                poolSize, queueCapacity, maxPendingBytes);
+    }
+
+    /**
+     * Admits a job, spools its upload to disk and queues it.
+     *
+     * @throws ServiceOverloadedException if the queue or the pending-bytes budget is exhausted
+     */
+    public AnnotationJob submit(InputStream pdfInputStream, long sizeBytes, String filename,
+                                List<AnnotationRequest> annotations, AnnotationOptions options) throws IOException {
+        reserve(sizeBytes);
+
+        String jobId = UUID.randomUUID().toString();
+        AnnotationJob job = new AnnotationJob(jobId, filename, sizeBytes, annotations, options,
+                root.resolve(jobId + ".in.pdf"), root.resolve(jobId + ".pdf"));
+        try {
+            Files.copy(pdfInputStream, job.inputFile, StandardCopyOption.REPLACE_EXISTING);
+            jobs.put(jobId, job);
+            executor.execute(() -> run(job));
+        } catch (IOException | RuntimeException e) {
+            jobs.remove(jobId);
+            pendingBytes.addAndGet(-sizeBytes);
+            Files.deleteIfExists(job.inputFile);
+            if (e instanceof RejectedExecutionException) {
+                throw overloaded("Annotation queue is full");
+            }
+            throw e;
+        }
+
+        logger.info("Queued job {} for {} ({} bytes, {} annotations)", jobId, filename, sizeBytes, annotations.size());
+        return job;
+    }
+
+    public AnnotationJob getJob(String jobId) {
+        AnnotationJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new DocumentNotFoundException("Job not found: " + jobId);
+        }
+        return job;
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * Removes finished jobs and their files once the retention period has passed.
+     */
+    @Scheduled(fixedDelayString = "${pdf.jobs.sweep-interval:PT1M}")
+    public void removeExpiredJobs() {
+        Instant cutoff = Instant.now().minus(retention);
+        for (AnnotationJob job : jobs.values()) {
+            if (job.isFinished() && job.getFinishedAt().isBefore(cutoff)) {
+                jobs.remove(job.getJobId());
+                deleteQuietly(job.resultFile);
+                logger.debug("Removed expired job {}", job.getJobId());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reserves {@code sizeBytes} of the pending budget. A job larger than the whole budget is
+     * still admitted when nothing else is pending, so it can never be starved.
+     */
+    private void reserve(long sizeBytes) {
+        long budget = maxPendingBytes.toBytes();
+        while (true) {
+            long current = pendingBytes.get();
+            if (current > 0 && current + sizeBytes > budget) {
+                throw overloaded("Too much work pending, try again later");
+            }
+            if (pendingBytes.compareAndSet(current, current + sizeBytes)) {
+                return;
+            }
+        }
+    }
+
+    private ServiceOverloadedException overloaded(String message) {
+        return new ServiceOverloadedException(message, Math.max(1, retryAfter.toSeconds()));
+    }
+
+    private void run(AnnotationJob job) {
+        job.started();
+        long start = System.nanoTime();
+        try (PDDocument document = pdfAnnotationService.loadDocument(job.inputFile.toFile())) {
+            pdfAnnotationService.applyAnnotations(document, job.getAnnotations(), job.getOptions());
+            try (OutputStream outputStream = Files.newOutputStream(job.resultFile)) {
+                pdfAnnotationService.saveDocument(document, job.getOptions(), outputStream);
+            }
+            job.succeeded();
+            logger.info("Job {} finished in {} ms", job.getJobId(), (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            logger.warn("Job {} failed", job.getJobId(), e);
+            deleteQuietly(job.resultFile);
+            job.failed(e.getMessage());
+        } finally {
+            deleteQuietly(job.inputFile);
+            pendingBytes.addAndGet(-job.getSizeBytes());
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete {}", file, e);
+        }
+    }
+}
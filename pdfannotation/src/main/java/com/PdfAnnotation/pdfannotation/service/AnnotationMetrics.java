@@ -0,0 +1,153 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micrometer meters for the annotation pipeline: one {@code pdf.stage} timer with a percentile
+ * histogram per stage, counters for pages, annotations and bytes, and gauges for the startup
+ * warm-up and the first request. Stage durations are also added to the thread's
+ * {@link StageTimings}, if a request bound one.
+ */
+@Component
+public class AnnotationMetrics {
+
+    public enum Stage {
+        // Request body upload and multipart parsing, everything before the controller runs
+        MULTIPART,
+        PARSE,
+        // Finding where text-only annotations go, including building the document's text index
+        LOCATE,
+        HASH,
+        LOAD,
+        APPLY,
+        SAVE,
+        // Rasterizing and encoding a page image; page image requests only
+        RENDER;
+
+        final String tag = name().toLowerCase();
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<Stage, Timer> timers = new EnumMap<>(Stage.class);
+
+    // Set while the startup warm-up runs, so synthetic work is not counted
+    private static final ThreadLocal<Boolean> SUPPRESSED = ThreadLocal.withInitial(() -> false);
+
+    private final AtomicBoolean firstRequestSeen = new AtomicBoolean();
+    private final AtomicLong warmupNanos = new AtomicLong(-1);
+    private final AtomicLong firstRequestNanos = new AtomicLong(-1);
+
+    private Counter pages;
+    private Counter annotations;
+    private Counter bytesIn;
+    private Counter bytesOut;
+
+    @PostConstruct
+    public void init() {
+        for (Stage stage : Stage.values()) {
+            timers.put(stage, Timer.builder("pdf.stage")
+                    .description("Time spent in one stage of the annotation pipeline")
+                    .tag("stage", stage.tag)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofMinutes(2))
+                    .register(meterRegistry));
+        }
+        pages = Counter.builder("pdf.pages").description("Pages of loaded documents").register(meterRegistry);
+        annotations = Counter.builder("pdf.annotations").description("Annotations applied").register(meterRegistry);
+        bytesIn = Counter.builder("pdf.bytes.in").baseUnit("bytes")
+                .description("PDF bytes loaded").register(meterRegistry);
+        bytesOut = Counter.builder("pdf.bytes.out").baseUnit("bytes")
+                .description("PDF bytes saved").register(meterRegistry);
+
+        TimeGauge.builder("pdf.startup.warmup", warmupNanos, TimeUnit.NANOSECONDS, AnnotationMetrics::valueOrNaN)
+                .description("Duration of the startup warm-up, NaN if it did not run")
+                .register(meterRegistry);
+        TimeGauge.builder("pdf.startup.first-request", firstRequestNanos, TimeUnit.NANOSECONDS, AnnotationMetrics::valueOrNaN)
+                .description("Latency of the first PDF request after startup, NaN until it arrives")
+                .register(meterRegistry);
+    }
+
+    private static double valueOrNaN(AtomicLong nanos) {
+        long value = nanos.get();
+        return value < 0 ? Double.NaN : value;
+    }
+
+    /**
+     * Runs {@code work} on the current thread without recording stages or counters.
+     */
+    public <T> T unrecorded(Callable<T> work) throws Exception {
+        SUPPRESSED.set(true);
+        try {
+            return work.call();
+        } finally {
+            SUPPRESSED.remove();
+        }
+    }
+
+    public void recordWarmup(long startNanos) {
+        warmupNanos.set(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records the latency of the first request only; later calls are ignored.
+     */
+    public void recordFirstRequest(long startNanos) {
+        if (firstRequestSeen.compareAndSet(false, true)) {
+            firstRequestNanos.set(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Records the time since {@code startNanos} (from {@link System#nanoTime()}) for a stage.
+     */
+    public void recordStage(Stage stage, long startNanos) {
+        if (SUPPRESSED.get()) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos;
+        timers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+        StageTimings timings = StageTimings.current();
+        if (timings != null) {
+            timings.add(stage.tag, nanos);
+        }
+    }
+
+    public void countDocumentLoaded(int pageCount, long sizeBytes) {
+        if (SUPPRESSED.get()) {
+            return;
+        }
+        pages.increment(pageCount);
+        bytesIn.increment(sizeBytes);
+    }
+
+    public void countAnnotations(int count) {
+        if (SUPPRESSED.get()) {
+            return;
+        }
+        annotations.increment(count);
+    }
+
+    public void countBytesOut(long sizeBytes) {
+        if (SUPPRESSED.get()) {
+            return;
+        }
+        bytesOut.increment(sizeBytes);
+    }
+}
@@ -0,0 +1,177 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses and validates the {@code annotations} JSON sent as a multipart form field. Uses the
+ * application's shared {@link ObjectMapper}, so parsing follows the same Jackson settings as
+ * JSON request bodies.
+ */
+@Component
+public class AnnotationParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnnotationParser.class);
+
+    @Autowired
+    private AnnotationMetrics annotationMetrics;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    public List<AnnotationRequest> parse(String annotationsJson) {
+        long start = System.nanoTime();
+        List<AnnotationRequest> annotations;
+        try {
+            annotations = parseAnnotations(annotationsJson);
+        } catch (Exception e) {
+            logger.error("Failed to parse annotations JSON", e);
+            throw new IllegalArgumentException("Invalid annotations format: " + e.getMessage(), e);
+        }
+        validate(annotations, "");
+        annotationMetrics.recordStage(AnnotationMetrics.Stage.PARSE, start);
+        return annotations;
+    }
+
+    /**
+     * Streams a JSON array of annotations into per-page buckets, validating each annotation as
+     * it is read. Only one annotation is bound to a request object at a time, so neither the
+     * JSON text nor a full list of requests is ever held in memory. Malformed or truncated JSON
+     * is rejected like in {@link #parse(String)}; only a failure to read the input is an
+     * {@link IOException}.
+     */
+    public AnnotationBuckets stream(InputStream annotationsJson, int numberOfPages) throws IOException {
+        long start = System.nanoTime();
+        AnnotationBuckets buckets = new AnnotationBuckets(numberOfPages);
+        try (JsonParser parser = objectMapper.getFactory().createParser(annotationsJson)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Invalid annotations format: expected a JSON array");
+            }
+            ObjectReader reader = objectMapper.readerFor(AnnotationRequest.class);
+            int index = 0;
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("Invalid annotations format: annotation " + index
+                            + " is not an object");
+                }
+                AnnotationRequest annotation = reader.readValue(parser);
+                validate(annotation, index, "");
+                buckets.add(annotation);
+                index++;
+            }
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to parse annotations JSON", e);
+            throw new IllegalArgumentException("Invalid annotations format: " + e.getMessage(), e);
+        }
+        annotationMetrics.recordStage(AnnotationMetrics.Stage.PARSE, start);
+        return buckets;
+    }
+
+    /**
+     * Parses a JSON object mapping file names to annotation lists, as used by batch requests.
+     */
+    public Map<String, List<AnnotationRequest>> parseByFile(String annotationsByFileJson) {
+        Map<String, List<AnnotationRequest>> annotationsByFile;
+        try {
+            TypeFactory types = objectMapper.getTypeFactory();
+            annotationsByFile = objectMapper.readValue(annotationsByFileJson, types.constructMapType(Map.class,
+                    types.constructType(String.class),
+                    types.constructCollectionType(List.class, AnnotationRequest.class)));
+        } catch (Exception e) {
+            logger.error("Failed to parse per-file annotations JSON", e);
+            throw new IllegalArgumentException("Invalid annotationsByFile format: " + e.getMessage(), e);
+        }
+        annotationsByFile.forEach((file, annotations) -> validate(annotations, file + ": "));
+        return annotationsByFile;
+    }
+
+    /**
+     * Validates annotations that were bound elsewhere, e.g. a JSON request body or a batch
+     * manifest.
+     */
+    public void validate(List<AnnotationRequest> annotations) {
+        validate(annotations, "");
+    }
+
+    /**
+     * Rejects annotations without coordinates, for callers that annotate without locating text
+     * first, so the request fails before any work is queued.
+     */
+    public void requireCoordinates(List<AnnotationRequest> annotations) {
+        requireCoordinates(annotations, "");
+    }
+
+    public void requireCoordinates(Map<String, List<AnnotationRequest>> annotationsByFile) {
+        annotationsByFile.forEach((file, annotations) -> requireCoordinates(annotations, file + ": "));
+    }
+
+    private void requireCoordinates(List<AnnotationRequest> annotations, String prefix) {
+        for (int i = 0; i < annotations.size(); i++) {
+            if (TextLocator.needsLocating(annotations.get(i))) {
+                throw new IllegalArgumentException(prefix + "Annotation " + i
+                        + ": Coordinates are required, text search is not supported here");
+            }
+        }
+    }
+
+    private void validate(List<AnnotationRequest> annotations, String prefix) {
+        for (int i = 0; i < annotations.size(); i++) {
+            validate(annotations.get(i), i, prefix);
+        }
+    }
+
+    private void validate(AnnotationRequest annotation, int i, String prefix) {
+        String type = annotation.getType();
+        if (AnnotationRequest.TYPE_IMAGE.equalsIgnoreCase(type)) {
+            if (!DocumentStore.isValidId(annotation.getImageId())) {
+                throw new IllegalArgumentException(prefix + "Annotation " + i + ": Valid image id is required");
+            }
+        } else if (type == null || AnnotationRequest.TYPE_TEXT.equalsIgnoreCase(type)) {
+            if (annotation.getSelectedText() == null || annotation.getSelectedText().trim().isEmpty()) {
+                throw new IllegalArgumentException(prefix + "Annotation " + i + ": Selected text is required");
+            }
+            if (annotation.getColor() == null || annotation.getColor().trim().isEmpty()) {
+                throw new IllegalArgumentException(prefix + "Annotation " + i + ": Color is required");
+            }
+        } else {
+            throw new IllegalArgumentException(prefix + "Annotation " + i + ": Unknown type: " + type);
+        }
+        if (TextLocator.needsLocating(annotation)) {
+            // placed wherever its text is found, optionally limited to a page or page range
+            Integer firstPage = annotation.getFirstPage();
+            Integer lastPage = annotation.getLastPage();
+            if ((annotation.getPageNumber() != null && annotation.getPageNumber() < 1)
+                    || (firstPage != null && firstPage < 1) || (lastPage != null && lastPage < 1)
+                    || (firstPage != null && lastPage != null && firstPage > lastPage)) {
+                throw new IllegalArgumentException(prefix + "Annotation " + i + ": Valid page range is required");
+            }
+            return;
+        }
+        if (annotation.getPageNumber() == null || annotation.getPageNumber() < 1) {
+            throw new IllegalArgumentException(prefix + "Annotation " + i + ": Valid page number is required");
+        }
+        if (annotation.getX() == null || annotation.getY() == null
+                || annotation.getWidth() == null || annotation.getHeight() == null) {
+            throw new IllegalArgumentException(prefix + "Annotation " + i + ": Coordinates are required");
+        }
+    }
+
+    private List<AnnotationRequest> parseAnnotations(String annotationsJson) throws Exception {
+        return objectMapper.readValue(annotationsJson,
+            objectMapper.getTypeFactory().constructCollectionType(List.class, AnnotationRequest.class));
+    }
+}
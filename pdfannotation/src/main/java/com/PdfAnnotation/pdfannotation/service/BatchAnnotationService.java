@@ -0,0 +1,284 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Annotates many documents in one request. Each document is loaded into its own
+ * {@link PDDocument} on a shared worker pool and saved to a temporary file; results are copied
+ * into the response ZIP as they finish and deleted right after, so the batch is never held in
+ * memory.
+ */
+@Service
+public class BatchAnnotationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchAnnotationService.class);
+
+    static final String MANIFEST_ENTRY = "manifest.json";
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${pdf.batch.parallelism:0}")
+    private int parallelism;
+
+    @Value("${pdf.batch.max-files:500}")
+    private int maxFiles;
+
+    @Value("${pdf.batch.dir:${java.io.tmpdir}/pdf-annotation/batch}")
+    private String directory;
+
+    private Path root;
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Files.createDirectories(Paths.get(directory));
+
+        int poolSize = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "pdf-batch-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Batch annotation pool: {} workers", poolSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Creates a scratch directory for one batch; {@link #process} deletes it when done.
+     */
+    public Path createWorkDirectory() throws IOException {
+        return Files.createTempDirectory(root, "batch-");
+    }
+
+    /**
+     * Extracts the PDFs of a ZIP archive into {@code workDirectory}. Directories, hidden files and
+     * entries without a {@code .pdf} extension are skipped.
+     *
+     * @param annotationsFor looks up the annotations for an entry name; may return {@code null}
+     */
+    public List<BatchItem> extractArchive(InputStream archive, Path workDirectory,
+                                          Function<String, List<AnnotationRequest>> annotationsFor) throws IOException {
+        List<BatchItem> items = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(archive)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = fileName(entry.getName());
+                if (entry.isDirectory() || name.startsWith(".") || entry.getName().startsWith("__MACOSX/")
+                        || !name.toLowerCase().endsWith(".pdf")) {
+                    continue;
+                }
+                checkFileCount(items.size() + 1);
+                Path file = workDirectory.resolve("in-" + items.size() + ".pdf");
+                Files.copy(zip, file);
+                items.add(new BatchItem(name, new FileSystemResource(file), annotationsFor.apply(name)));
+            }
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid ZIP archive: " + e.getMessage(), e);
+        }
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("Archive contains no PDF files");
+        }
+        return items;
+    }
+
+    public void checkFileCount(int count) {
+        if (count > maxFiles) {
+            throw new IllegalArgumentException("Batch exceeds the limit of " + maxFiles + " files");
+        }
+    }
+
+    /**
+     * Annotates all items in parallel and writes a ZIP of the results to {@code outputStream},
+     * one {@code annotated_<name>} entry per successful document in completion order, followed
+     * by a {@value #MANIFEST_ENTRY} entry with the outcome of every document. A failing document
+     * does not fail the batch. Deletes {@code workDirectory} before returning.
+     */
+    public void process(List<BatchItem> items, AnnotationOptions options, Path workDirectory,
+                        OutputStream outputStream) throws IOException {
+        long start = System.nanoTime();
+        CompletionService<BatchResult> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<BatchResult>> futures = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            BatchItem item = items.get(i);
+            Path resultFile = workDirectory.resolve("out-" + i + ".pdf");
+            futures.add(completionService.submit(() -> annotate(item, options, resultFile)));
+        }
+
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        List<Map<String, Object>> entries = new ArrayList<>(items.size());
+        Set<String> entryNames = new HashSet<>();
+        int failed = 0;
+
+        try (ZipOutputStream zip = new ZipOutputStream(CloseShieldOutputStream.wrap(outputStream))) {
+            for (int i = 0; i < items.size(); i++) {
+                BatchResult result = take(completionService);
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("file", result.name());
+                if (result.error() == null) {
+                    String entryName = uniqueName("annotated_" + fileName(result.name()), entryNames);
+                    writeStoredEntry(zip, entryName, result);
+                    Files.deleteIfExists(result.file());
+                    entry.put("status", "SUCCEEDED");
+                    entry.put("output", entryName);
+                } else {
+                    failed++;
+                    entry.put("status", "FAILED");
+                    entry.put("error", result.error());
+                }
+                entry.put("millis", result.millis());
+                entries.add(entry);
+            }
+
+            manifest.put("total", items.size());
+            manifest.put("succeeded", items.size() - failed);
+            manifest.put("failed", failed);
+            manifest.put("files", entries);
+            zip.putNextEntry(new ZipEntry(MANIFEST_ENTRY));
+            zip.write(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest));
+            zip.closeEntry();
+        } finally {
+            // client went away or the batch is done: stop pending work and drop scratch files
+            futures.forEach(future -> future.cancel(true));
+            FileSystemUtils.deleteRecursively(workDirectory);
+        }
+
+        logger.info("Batch of {} documents ({} failed) finished in {} ms",
+                items.size(), failed, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private BatchResult annotate(BatchItem item, AnnotationOptions options, Path resultFile) {
+        long start = System.nanoTime();
+        if (item.annotations() == null) {
+            return BatchResult.failure(item.name(), "No annotations given for " + item.name(), start);
+        }
+        try (InputStream inputStream = item.source().getInputStream();
+             PDDocument document = pdfAnnotationService.loadDocument(inputStream)) {
+            pdfAnnotationService.applyAnnotations(document, item.annotations(), options);
+            // checksum while saving so the entry can be STORED: PDF streams are already compressed
+            CRC32 crc = new CRC32();
+            try (CheckedOutputStream out = new CheckedOutputStream(Files.newOutputStream(resultFile), crc)) {
+                pdfAnnotationService.saveDocument(document, options, out);
+            }
+            return new BatchResult(item.name(), resultFile, Files.size(resultFile), crc.getValue(),
+                    null, (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            logger.warn("Batch document {} failed: {}", item.name(), e.getMessage());
+            return BatchResult.failure(item.name(), e.getMessage(), start);
+        }
+    }
+
+    private static BatchResult take(CompletionService<BatchResult> completionService) throws IOException {
+        try {
+            return completionService.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for batch results", e);
+        } catch (ExecutionException e) {
+            // annotate() catches everything it can; anything else is a bug
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void writeStoredEntry(ZipOutputStream zip, String entryName, BatchResult result)
+            throws IOException {
+        ZipEntry zipEntry = new ZipEntry(entryName);
+        zipEntry.setMethod(ZipEntry.STORED);
+        zipEntry.setSize(result.size());
+        zipEntry.setCompressedSize(result.size());
+        zipEntry.setCrc(result.crc());
+        zip.putNextEntry(zipEntry);
+        Files.copy(result.file(), zip);
+        zip.closeEntry();
+    }
+
+    /**
+     * The last segment of a client-supplied path, without {@code ..}, so a name written into
+     * the result archive cannot point outside the directory it is extracted to. Both {@code /}
+     * and {@code \} count as separators, whatever the server's platform.
+     */
+    public static String fileName(String path) {
+        if (path == null) {
+            return "document.pdf";
+        }
+        String name = path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1)
+                .replace("..", "")
+                .replace(':', '_');
+        return name.isEmpty() ? "document.pdf" : name;
+    }
+
+    private static String uniqueName(String name, Set<String> used) {
+        String candidate = name;
+        int suffix = 1;
+        while (!used.add(candidate)) {
+            int dot = name.lastIndexOf('.');
+            candidate = dot > 0
+                    ? name.substring(0, dot) + "_" + suffix++ + name.substring(dot)
+                    : name + "_" + suffix++;
+        }
+        return candidate;
+    }
+
+    /**
+     * One document of a batch. {@code annotations} is {@code null} when the request gave none
+     * for this file; the document is then reported as failed.
+     */
+    public record BatchItem(String name, InputStreamSource source, List<AnnotationRequest> annotations) {}
+
+    private record BatchResult(String name, Path file, long size, long crc, String error, long millis) {
+
+        static BatchResult failure(String name, String error, long startNanos) {
+            return new BatchResult(name, null, 0, 0, error, (System.nanoTime() - startNanos) / 1_000_000);
+        }
+    }
+}
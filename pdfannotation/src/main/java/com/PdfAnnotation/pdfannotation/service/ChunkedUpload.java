@@ -0,0 +1,207 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A document uploaded in chunks. Chunks are written at their offset into a file preallocated to
+ * the full size, in any order and from several requests at once. The upload keeps the byte
+ * ranges that have arrived, so a client that lost a chunk half-way can ask for the missing
+ * ranges and send only those.
+ *
+ * <p>The SHA-256 digest follows the contiguous prefix of received bytes: data arriving at the
+ * end of the prefix is hashed from the chunk buffer as it is written, and data that closes a gap
+ * is read back from the file. A chunk that rewrites already hashed bytes resets the digest. When
+ * a sequential upload completes, only the last bytes are left to hash.
+ */
+public class ChunkedUpload {
+
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    private final String uploadId;
+    private final String filename;
+    private final long size;
+    private final Instant createdAt = Instant.now();
+
+    final Path file;
+    final FileChannel channel;
+
+    // received byte ranges, start to end (exclusive), merged so none overlap or touch
+    private final TreeMap<Long, Long> received = new TreeMap<>();
+    private long receivedBytes;
+
+    // digest of bytes [0, hashed)
+    private final MessageDigest digest = DocumentStore.sha256();
+    private long hashed;
+
+    private int activeWrites;
+    private boolean closed;
+    private volatile Instant lastActivity = createdAt;
+
+    ChunkedUpload(String uploadId, String filename, long size, Path file, FileChannel channel) {
+        this.uploadId = uploadId;
+        this.filename = filename;
+        this.size = size;
+        this.file = file;
+        this.channel = channel;
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getLastActivity() {
+        return lastActivity;
+    }
+
+    public synchronized long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    /**
+     * The byte ranges not received yet, as {@code {offset, length}} pairs in file order.
+     */
+    public synchronized List<long[]> getMissingRanges() {
+        List<long[]> missing = new ArrayList<>();
+        long position = 0;
+        for (Map.Entry<Long, Long> range : received.entrySet()) {
+            if (range.getKey() > position) {
+                missing.add(new long[]{position, range.getKey() - position});
+            }
+            position = range.getValue();
+        }
+        if (position < size) {
+            missing.add(new long[]{position, size - position});
+        }
+        return missing;
+    }
+
+    /**
+     * Registers a chunk request, so the upload is not completed while its bytes are in flight.
+     * Returns {@code false} if the upload was already completed or aborted.
+     */
+    synchronized boolean beginWrite() {
+        if (closed) {
+            return false;
+        }
+        activeWrites++;
+        lastActivity = Instant.now();
+        return true;
+    }
+
+    synchronized void endWrite() {
+        activeWrites--;
+        lastActivity = Instant.now();
+    }
+
+    /**
+     * Records bytes that were just written at {@code position}. {@code buffer} holds them from
+     * its position to its limit and is consumed.
+     */
+    synchronized void written(long position, ByteBuffer buffer) throws IOException {
+        long end = position + buffer.remaining();
+        lastActivity = Instant.now();
+        if (position < hashed) {
+            // the prefix changed under the digest
+            digest.reset();
+            hashed = 0;
+        }
+        add(position, end);
+        if (position == hashed) {
+            digest.update(buffer);
+            hashed = end;
+        }
+        advance();
+    }
+
+    /**
+     * Closes the upload for further chunks once all bytes have arrived and none are in flight,
+     * and returns the hex SHA-256 digest of the file.
+     */
+    synchronized String finish() throws IOException {
+        if (closed) {
+            return null;
+        }
+        if (activeWrites > 0) {
+            throw new IllegalArgumentException("Upload " + uploadId + " still has chunks in progress");
+        }
+        if (receivedBytes < size) {
+            throw new IllegalArgumentException("Upload " + uploadId + " is missing "
+                    + (size - receivedBytes) + " of " + size + " bytes");
+        }
+        advance();
+        closed = true;
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Closes the upload for further chunks. Returns {@code false} if it was already closed.
+     */
+    synchronized boolean close() {
+        if (closed) {
+            return false;
+        }
+        closed = true;
+        return true;
+    }
+
+    private void add(long start, long end) {
+        Map.Entry<Long, Long> before = received.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+        }
+        Map.Entry<Long, Long> next = received.ceilingEntry(start);
+        while (next != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            receivedBytes -= next.getValue() - next.getKey();
+            received.remove(next.getKey());
+            next = received.ceilingEntry(start);
+        }
+        received.put(start, end);
+        receivedBytes += end - start;
+    }
+
+    /**
+     * Hashes received bytes past the end of the digest, reading them back from the file.
+     */
+    private void advance() throws IOException {
+        Map.Entry<Long, Long> range = received.floorEntry(hashed);
+        if (range == null || range.getValue() <= hashed) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+        long end = range.getValue();
+        while (hashed < end) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - hashed));
+            int read = channel.read(buffer, hashed);
+            if (read < 0) {
+                throw new IOException("Upload " + uploadId + " ended before byte " + end);
+            }
+            buffer.flip();
+            digest.update(buffer);
+            hashed += read;
+        }
+    }
+}
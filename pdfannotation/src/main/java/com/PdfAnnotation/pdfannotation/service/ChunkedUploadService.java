@@ -0,0 +1,287 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.exception.DocumentNotFoundException;
+import com.PdfAnnotation.pdfannotation.exception.ServiceOverloadedException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resumable uploads of documents too large or links too flaky for a single multipart request.
+ * A client creates an upload with the total size, sends chunks as raw request bodies at their
+ * offsets and completes it, which moves the file into the {@link DocumentStore} under its
+ * SHA-256 hash. Chunk bodies go straight from the request stream to the upload's file with
+ * positional writes; they are never buffered by the servlet container or held in heap.
+ *
+ * <p>Partial files live in the document store's directory, so completing is a rename. Uploads
+ * idle for longer than the timeout are aborted. Upload state is kept in memory only, so uploads
+ * do not survive a restart and leftover partial files are removed at startup.
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    // a PDF header may follow up to 1KB of junk, as PDFBox accepts
+    private static final int HEADER_SEARCH_BYTES = 1024;
+
+    @Autowired
+    private DocumentStore documentStore;
+
+    @Value("${pdf.uploads.max-size:2GB}")
+    private DataSize maxSize;
+
+    @Value("${pdf.uploads.max-pending-bytes:8GB}")
+    private DataSize maxPendingBytes;
+
+    @Value("${pdf.uploads.chunk-size:8MB}")
+    private DataSize chunkSize;
+
+    @Value("${pdf.uploads.idle-timeout:1h}")
+    private Duration idleTimeout;
+
+    @Value("${pdf.uploads.retry-after:30s}")
+    private Duration retryAfter;
+
+    private final Map<String, ChunkedUpload> uploads = new ConcurrentHashMap<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    private Path root;
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Files.createDirectories(documentStore.getRoot().resolve("uploads"));
+        int removed = 0;
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(root, "*.part")) {
+            for (Path leftover : leftovers) {
+                Files.deleteIfExists(leftover);
+                removed++;
+            }
+        }
+        logger.info("Chunked uploads at {} (max size {}, chunk size {}); removed {} partial files",
+                root, maxSize, chunkSize, removed);
+    }
+
+    /**
+     * Starts an upload of {@code size} bytes and preallocates its file.
+     *
+     * @throws ServiceOverloadedException if the bytes of unfinished uploads would exceed the budget
+     */
+    public ChunkedUpload create(long size, String filename) throws IOException {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Upload size must be positive");
+        }
+        if (size > maxSize.toBytes()) {
+            throw new IllegalArgumentException("Upload size exceeds maximum allowed size of " + maxSize);
+        }
+        reserve(size);
+
+        String uploadId = UUID.randomUUID().toString();
+        Path file = root.resolve(uploadId + ".part");
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            // extend to the full size up front; file systems that support it leave the gaps sparse
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        } catch (IOException | RuntimeException e) {
+            pendingBytes.addAndGet(-size);
+            if (channel != null) {
+                channel.close();
+            }
+            Files.deleteIfExists(file);
+            throw e;
+        }
+
+        ChunkedUpload upload = new ChunkedUpload(uploadId, filename, size, file, channel);
+        uploads.put(uploadId, upload);
+        logger.info("Started upload {} for {} ({} bytes)", uploadId, filename, size);
+        return upload;
+    }
+
+    public ChunkedUpload getUpload(String uploadId) {
+        ChunkedUpload upload = uploads.get(uploadId);
+        if (upload == null) {
+            throw new DocumentNotFoundException("Upload not found: " + uploadId);
+        }
+        return upload;
+    }
+
+    /**
+     * Writes a chunk read from {@code body} at {@code offset}. Bytes are recorded as received as
+     * soon as they are written, so when the request breaks off, everything that arrived before
+     * counts and the client only resends the rest.
+     */
+    public ChunkedUpload writeChunk(String uploadId, long offset, InputStream body) throws IOException {
+        ChunkedUpload upload = getUpload(uploadId);
+        if (offset < 0 || offset >= upload.getSize()) {
+            throw new IllegalArgumentException("Offset " + offset + " is outside the upload of "
+                    + upload.getSize() + " bytes");
+        }
+        if (!upload.beginWrite()) {
+            throw new DocumentNotFoundException("Upload not found: " + uploadId);
+        }
+        try {
+            byte[] bytes = new byte[WRITE_BUFFER_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long position = offset;
+            int read;
+            while (position < upload.getSize()
+                    && (read = body.read(bytes, 0, (int) Math.min(bytes.length, upload.getSize() - position))) != -1) {
+                buffer.clear().limit(read);
+                while (buffer.hasRemaining()) {
+                    upload.channel.write(buffer, position + buffer.position());
+                }
+                buffer.flip();
+                upload.written(position, buffer);
+                position += read;
+            }
+            if (position == upload.getSize() && body.read() != -1) {
+                throw new IllegalArgumentException("Chunk at offset " + offset + " extends past the end of the upload");
+            }
+            logger.debug("Wrote {} bytes at {} to upload {}", position - offset, offset, uploadId);
+            return upload;
+        } catch (ClosedChannelException e) {
+            // aborted or expired while the chunk was arriving
+            throw new DocumentNotFoundException("Upload not found: " + uploadId);
+        } finally {
+            upload.endWrite();
+        }
+    }
+
+    /**
+     * Checks that every byte has arrived, that the file is a PDF and, if given, that its
+     * SHA-256 matches {@code expectedSha256}, then moves it into the document store and returns
+     * its document ID. A file that fails the checks is discarded.
+     */
+    public String complete(String uploadId, String expectedSha256) throws IOException {
+        ChunkedUpload upload = getUpload(uploadId);
+        String documentId = upload.finish();
+        if (documentId == null) {
+            throw new DocumentNotFoundException("Upload not found: " + uploadId);
+        }
+        try {
+            if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(documentId)) {
+                throw new IllegalArgumentException("Upload " + uploadId + " has SHA-256 " + documentId
+                        + ", expected " + expectedSha256);
+            }
+            if (!hasPdfHeader(upload)) {
+                throw new IllegalArgumentException("File must be a PDF");
+            }
+            upload.channel.close();
+            documentStore.commit(upload.file, documentId);
+        } finally {
+            release(upload);
+        }
+        logger.info("Completed upload {} as document {} ({} bytes)", uploadId, documentId, upload.getSize());
+        return documentId;
+    }
+
+    public void abort(String uploadId) throws IOException {
+        ChunkedUpload upload = getUpload(uploadId);
+        if (upload.close()) {
+            release(upload);
+            logger.info("Aborted upload {}", uploadId);
+        }
+    }
+
+    public long getChunkSize() {
+        return chunkSize.toBytes();
+    }
+
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * Aborts uploads that received nothing for longer than the idle timeout.
+     */
+    @Scheduled(fixedDelayString = "${pdf.uploads.sweep-interval:PT1M}")
+    public void abortIdleUploads() {
+        Instant cutoff = Instant.now().minus(idleTimeout);
+        for (ChunkedUpload upload : uploads.values()) {
+            if (upload.getLastActivity().isBefore(cutoff) && upload.close()) {
+                try {
+                    release(upload);
+                    logger.info("Aborted idle upload {}", upload.getUploadId());
+                } catch (IOException e) {
+                    logger.warn("Could not remove idle upload {}", upload.getUploadId(), e);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ChunkedUpload upload : uploads.values()) {
+            try {
+                upload.channel.close();
+            } catch (IOException e) {
+                logger.debug("Could not close upload {}", upload.getUploadId(), e);
+            }
+        }
+    }
+
+    private boolean hasPdfHeader(ChunkedUpload upload) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(HEADER_SEARCH_BYTES, upload.getSize()));
+        while (head.hasRemaining() && upload.channel.read(head, head.position()) > 0) {
+            // read until the buffer is full
+        }
+        return new String(head.array(), 0, head.position(), StandardCharsets.ISO_8859_1).contains("%PDF-");
+    }
+
+    /**
+     * Forgets a closed upload, deletes its partial file if it is still there and returns its
+     * bytes to the budget.
+     */
+    private void release(ChunkedUpload upload) throws IOException {
+        if (uploads.remove(upload.getUploadId(), upload)) {
+            pendingBytes.addAndGet(-upload.getSize());
+        }
+        upload.channel.close();
+        Files.deleteIfExists(upload.file);
+    }
+
+    /**
+     * Reserves {@code size} of the pending budget. An upload larger than the whole budget is
+     * still admitted when nothing else is pending.
+     */
+    private void reserve(long size) {
+        long budget = maxPendingBytes.toBytes();
+        while (true) {
+            long current = pendingBytes.get();
+            if (current > 0 && current + size > budget) {
+                throw new ServiceOverloadedException("Too many unfinished uploads, try again later",
+                        Math.max(1, retryAfter.toSeconds()));
+            }
+            if (pendingBytes.compareAndSet(current, current + size)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.PdfAnnotation.pdfannotation.exception.DocumentNotFoundException;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the annotations of a request that overlap each other on a stored document, so clients
+ * can resolve conflicts before annotating. Boxes are compared where they end up on the page,
+ * after canvas scaling and clamping, using one {@link RectIndex} per page. Only the page
+ * tree of the document is read.
+ */
+@Component
+public class CollisionDetector {
+
+    @Autowired
+    private DocumentStore documentStore;
+
+    @Autowired
+    private MemoryUsageSetting memoryUsageSetting;
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    /**
+     * Every pair of annotations whose boxes share area, ordered by the later annotation and then
+     * the earlier one. Boxes that only touch do not collide.
+     */
+    public List<Collision> find(String documentId, List<AnnotationRequest> annotations) throws IOException {
+        if (!documentStore.contains(documentId)) {
+            throw new DocumentNotFoundException("Document not found: " + documentId);
+        }
+        try (PDDocument document = PDDocument.load(documentStore.resolve(documentId).toFile(), memoryUsageSetting)) {
+            int numberOfPages = document.getNumberOfPages();
+            Map<Integer, RectIndex<Integer>> pages = new HashMap<>();
+            List<PDRectangle> boxes = new ArrayList<>(annotations.size());
+            List<Collision> collisions = new ArrayList<>();
+
+            for (int i = 0; i < annotations.size(); i++) {
+                AnnotationRequest annotation = annotations.get(i);
+                if (TextLocator.needsLocating(annotation)) {
+                    throw new IllegalArgumentException("Annotation without coordinates: " + annotation.getSelectedText());
+                }
+                Integer pageNumber = annotation.getPageNumber();
+                if (pageNumber == null || pageNumber < 1 || pageNumber > numberOfPages) {
+                    throw new IllegalArgumentException("Invalid page number: " + pageNumber);
+                }
+                PDPage page = document.getPage(pageNumber - 1);
+                PDRectangle box = pdfAnnotationService.toPdfRectangle(page, annotation);
+                boxes.add(box);
+
+                RectIndex<Integer> index = pages.computeIfAbsent(pageNumber, key -> new RectIndex<>());
+                for (int earlier : index.overlapping(box.getLowerLeftX(), box.getLowerLeftY(),
+                        box.getWidth(), box.getHeight())) {
+                    collisions.add(new Collision(earlier, i, pageNumber,
+                            intersection(boxes.get(earlier), box), page.getMediaBox().getHeight()));
+                }
+                index.add(box.getLowerLeftX(), box.getLowerLeftY(), box.getWidth(), box.getHeight(), i);
+            }
+            return collisions;
+        }
+    }
+
+    private static PDRectangle intersection(PDRectangle a, PDRectangle b) {
+        float left = Math.max(a.getLowerLeftX(), b.getLowerLeftX());
+        float bottom = Math.max(a.getLowerLeftY(), b.getLowerLeftY());
+        float right = Math.min(a.getUpperRightX(), b.getUpperRightX());
+        float top = Math.min(a.getUpperRightY(), b.getUpperRightY());
+        return new PDRectangle(left, bottom, right - left, top - bottom);
+    }
+
+    /**
+     * Two colliding annotations, as indexes into the request, and their shared area in PDF
+     * points with the origin at the top left of the page, like annotation coordinates without a
+     * canvas size.
+     */
+    public static final class Collision {
+
+        private final int first;
+        private final int second;
+        private final int pageNumber;
+        private final float x;
+        private final float y;
+        private final float width;
+        private final float height;
+
+        Collision(int first, int second, int pageNumber, PDRectangle overlap, float pageHeight) {
+            this.first = first;
+            this.second = second;
+            this.pageNumber = pageNumber;
+            this.x = overlap.getLowerLeftX();
+            this.y = pageHeight - overlap.getUpperRightY();
+            this.width = overlap.getWidth();
+            this.height = overlap.getHeight();
+        }
+
+        public int getFirst() {
+            return first;
+        }
+
+        public int getSecond() {
+            return second;
+        }
+
+        public int getPageNumber() {
+            return pageNumber;
+        }
+
+        public float getX() {
+            return x;
+        }
+
+        public float getY() {
+            return y;
+        }
+
+        public float getWidth() {
+            return width;
+        }
+
+        public float getHeight() {
+            return height;
+        }
+    }
+}
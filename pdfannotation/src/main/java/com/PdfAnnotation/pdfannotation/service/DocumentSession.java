@@ -0,0 +1,68 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An uploaded document plus the annotations applied to it so far. The parsed document is kept
+ * warm while the session is cached; after eviction it is rebuilt from the stored file by
+ * replaying the recorded annotations.
+ */
+public class DocumentSession {
+
+    private final String sessionId;
+    private final String documentId;
+    private final String filename;
+    private final long sizeBytes;
+    private final List<AnnotationRequest> annotations = new ArrayList<>();
+
+    // Guards the document and the annotation list; PDDocument is not thread-safe
+    final ReentrantLock lock = new ReentrantLock();
+
+    // the annotation defining each stamp template, so deltas and replays draw the same stamps
+    TemplateSources templateSources = new TemplateSources();
+
+    PDDocument document;
+    volatile int pageCount;
+    volatile long lastAccess;
+
+    DocumentSession(String sessionId, String documentId, String filename, long sizeBytes) {
+        this.sessionId = sessionId;
+        this.documentId = documentId;
+        this.filename = filename;
+        this.sizeBytes = sizeBytes;
+        this.lastAccess = System.currentTimeMillis();
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    List<AnnotationRequest> annotations() {
+        return annotations;
+    }
+
+    boolean isWarm() {
+        return document != null;
+    }
+}
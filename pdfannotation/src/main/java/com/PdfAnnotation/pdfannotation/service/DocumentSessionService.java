@@ -0,0 +1,451 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.PdfAnnotation.pdfannotation.dto.RenderOptions;
+import com.PdfAnnotation.pdfannotation.exception.DocumentNotFoundException;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server-side annotation sessions: a PDF is uploaded once into the {@link DocumentStore} and
+ * later requests only send annotation deltas. Parsed documents stay warm in a bounded LRU cache
+ * (by count and by stored size) and are closed after an idle timeout; an evicted session is
+ * rebuilt transparently from the stored file on its next use.
+ */
+@Service
+public class DocumentSessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentSessionService.class);
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Autowired
+    private DocumentStore documentStore;
+
+    @Autowired
+    private AnnotationParser annotationParser;
+
+    @Autowired
+    private XfdfCodec xfdfCodec;
+
+    @Autowired
+    private TextLocator textLocator;
+
+    @Autowired
+    private PageRenderer pageRenderer;
+
+    @Autowired
+    private ResultCache resultCache;
+
+    @Value("${pdf.sessions.max-cached-documents:32}")
+    private int maxCachedDocuments;
+
+    @Value("${pdf.sessions.max-cached-bytes:512MB}")
+    private DataSize maxCachedBytes;
+
+    @Value("${pdf.sessions.idle-timeout:10m}")
+    private Duration idleTimeout;
+
+    @Value("${pdf.sessions.ttl:24h}")
+    private Duration sessionTtl;
+
+    private final Map<String, DocumentSession> sessions = new ConcurrentHashMap<>();
+
+    // Sessions holding a parsed document, least recently used first; guarded by itself
+    private final LinkedHashMap<String, DocumentSession> warmSessions = new LinkedHashMap<>(16, 0.75f, true);
+    private long warmBytes;
+
+    /**
+     * Stores the upload and opens a session on it. An upload that cannot be opened is removed
+     * from the store again.
+     */
+    public DocumentSession createSession(InputStream pdfInputStream, String filename) throws IOException {
+        return documentStore.store(pdfInputStream, documentId -> createSession(documentId, filename));
+    }
+
+    /**
+     * Opens a session on a document that is already in the store.
+     */
+    public DocumentSession createSession(String documentId, String filename) throws IOException {
+        if (!documentStore.contains(documentId)) {
+            throw new DocumentNotFoundException("Document not found: " + documentId);
+        }
+        Path file = documentStore.resolve(documentId);
+        DocumentSession session = new DocumentSession(
+                UUID.randomUUID().toString(), documentId, filename, Files.size(file));
+
+        documentStore.pin(documentId);
+        session.lock.lock();
+        try {
+            warmUp(session);
+        } catch (IOException | RuntimeException e) {
+            documentStore.unpin(documentId);
+            throw e;
+        } finally {
+            session.lock.unlock();
+        }
+        sessions.put(session.getSessionId(), session);
+        enforceCacheLimits();
+
+        logger.info("Created session {} for document {} ({} pages)",
+                session.getSessionId(), documentId, session.getPageCount());
+        return session;
+    }
+
+    /**
+     * Returns the session and counts the lookup as activity, so a session in use is neither
+     * evicted as idle nor expired.
+     */
+    public DocumentSession getSession(String sessionId) {
+        DocumentSession session = sessions.get(sessionId);
+        if (session == null) {
+            throw new DocumentNotFoundException("Session not found: " + sessionId);
+        }
+        session.lastAccess = System.currentTimeMillis();
+        return session;
+    }
+
+    /**
+     * Applies a delta of annotations to the session's warm document and records it. Text
+     * annotations without coordinates are located first and recorded with the found positions.
+     *
+     * @return the total number of annotations in the session
+     */
+    public int addAnnotations(String sessionId, List<AnnotationRequest> annotations) throws IOException {
+        DocumentSession session = getSession(sessionId);
+        session.lock.lock();
+        try {
+            return apply(session, warmUp(session), annotations);
+        } finally {
+            session.lock.unlock();
+            enforceCacheLimits();
+        }
+    }
+
+    /**
+     * Applies the annotations of an XFDF document to the session, like
+     * {@link #addAnnotations(String, List)}.
+     *
+     * @return the total number of annotations in the session
+     */
+    public int importXfdf(String sessionId, InputStream xfdf) throws IOException {
+        DocumentSession session = getSession(sessionId);
+        session.lock.lock();
+        try {
+            PDDocument document = warmUp(session);
+            List<AnnotationRequest> annotations = xfdfCodec.read(xfdf, document);
+            annotationParser.validate(annotations);
+            logger.info("Importing {} XFDF annotations into session {}", annotations.size(), sessionId);
+            return apply(session, document, annotations);
+        } finally {
+            session.lock.unlock();
+            enforceCacheLimits();
+        }
+    }
+
+    /**
+     * Writes the session's annotations as XFDF.
+     */
+    public void exportXfdf(String sessionId, OutputStream outputStream) throws IOException {
+        DocumentSession session = getSession(sessionId);
+        session.lock.lock();
+        try {
+            xfdfCodec.write(session.annotations(), warmUp(session), session.getFilename(), outputStream);
+        } finally {
+            session.lock.unlock();
+            enforceCacheLimits();
+        }
+    }
+
+    /**
+     * Applies a delta to the warm document and records it. A stamp template keeps the look its
+     * first placement in the session gave it, whichever delta uses it. Caller must hold the
+     * session lock.
+     */
+    private int apply(DocumentSession session, PDDocument document, List<AnnotationRequest> annotations)
+            throws IOException {
+        annotations = textLocator.locate(annotations, session.getDocumentId());
+        TemplateSources templateSources = session.templateSources.copy();
+        templateSources.addAll(annotations);
+        try {
+            pdfAnnotationService.applyAnnotations(document, annotations, null, templateSources);
+        } catch (IOException | RuntimeException e) {
+            // earlier pages may already be drawn, even for a rejected request such as an unknown
+            // image on a later page; rebuild the document from the recorded annotations on next use
+            discard(session);
+            throw e;
+        }
+        session.annotations().addAll(annotations);
+        session.templateSources = templateSources;
+        return session.annotations().size();
+    }
+
+    public List<AnnotationRequest> getAnnotations(String sessionId) {
+        DocumentSession session = getSession(sessionId);
+        session.lock.lock();
+        try {
+            return new ArrayList<>(session.annotations());
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Checks the output options against the session's document before a download starts
+     * streaming, see {@link PdfAnnotationService#validateOutput}.
+     */
+    public void validateOutput(String sessionId, AnnotationOptions options) throws IOException {
+        DocumentSession session = getSession(sessionId);
+        session.lock.lock();
+        try {
+            pdfAnnotationService.validateOutput(warmUp(session), options);
+        } finally {
+            session.lock.unlock();
+            enforceCacheLimits();
+        }
+    }
+
+    /**
+     * Saves the session's document. Selected pages are written from a fresh replay instead of
+     * the warm document: the warm document's fonts are subset when it is saved whole, and
+     * subsetting them early for the extracted pages would break its later saves.
+     */
+    public void writeDocument(String sessionId, AnnotationOptions options, OutputStream outputStream)
+            throws IOException {
+        DocumentSession session = getSession(sessionId);
+        session.lock.lock();
+        try {
+            if (!PageExtractor.selectsPages(options)) {
+                pdfAnnotationService.saveDocument(warmUp(session), options, outputStream);
+                return;
+            }
+            AnnotationOptions replay = new AnnotationOptions();
+            replay.setPages(options.getPages());
+            try (PDDocument document = pdfAnnotationService.loadDocument(
+                    documentStore.resolve(session.getDocumentId()).toFile())) {
+                pdfAnnotationService.applyAnnotations(document, session.annotations(), replay,
+                        session.templateSources);
+                pdfAnnotationService.saveDocument(document, options, outputStream);
+            }
+        } finally {
+            session.lock.unlock();
+            enforceCacheLimits();
+        }
+    }
+
+    /**
+     * Pages that carry at least one of the session's annotations, in ascending order. The other
+     * pages look exactly like the uploaded document.
+     */
+    public List<Integer> getAnnotatedPages(String sessionId) {
+        DocumentSession session = getSession(sessionId);
+        session.lock.lock();
+        try {
+            return session.annotations().stream().map(AnnotationRequest::getPageNumber)
+                    .distinct().sorted().toList();
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Renders a page of the session's annotated document. A page without annotations is
+     * rendered from the stored file, sharing its cached images with every other session on the
+     * same document. An annotated page is rendered from the warm document and cached under the
+     * annotations recorded up to the last one on that page, so later deltas to other pages keep
+     * its cached images valid.
+     */
+    public byte[] renderPage(String sessionId, int pageNumber, RenderOptions options) throws IOException {
+        DocumentSession session = getSession(sessionId);
+        session.lock.lock();
+        try {
+            List<AnnotationRequest> annotations = session.annotations();
+            int last = annotations.size() - 1;
+            while (last >= 0 && annotations.get(last).getPageNumber() != pageNumber) {
+                last--;
+            }
+            if (last >= 0) {
+                String version = resultCache.key(session.getDocumentId(), annotations.subList(0, last + 1), null);
+                return pageRenderer.render(warmUp(session), session.getDocumentId(), version, pageNumber, options);
+            }
+        } finally {
+            session.lock.unlock();
+            enforceCacheLimits();
+        }
+        return pageRenderer.render(session.getDocumentId(), pageNumber, options);
+    }
+
+    public void closeSession(String sessionId) {
+        DocumentSession session = sessions.remove(sessionId);
+        if (session == null) {
+            throw new DocumentNotFoundException("Session not found: " + sessionId);
+        }
+        session.lock.lock();
+        try {
+            discard(session);
+        } finally {
+            session.lock.unlock();
+        }
+        documentStore.unpin(session.getDocumentId());
+        logger.info("Closed session {}", sessionId);
+    }
+
+    /**
+     * Closes parsed documents that have been idle longer than the idle timeout and forgets
+     * sessions that have not been used within the session TTL.
+     */
+    @Scheduled(fixedDelayString = "${pdf.sessions.sweep-interval:PT1M}")
+    public void evictIdleSessions() {
+        long now = System.currentTimeMillis();
+        for (DocumentSession session : sessions.values()) {
+            long idle = now - session.lastAccess;
+            if (idle > sessionTtl.toMillis()) {
+                if (!sessions.remove(session.getSessionId(), session)) {
+                    continue;
+                }
+                session.lock.lock();
+                try {
+                    discard(session);
+                } finally {
+                    session.lock.unlock();
+                }
+                documentStore.unpin(session.getDocumentId());
+                logger.info("Expired session {}", session.getSessionId());
+            } else if (idle > idleTimeout.toMillis() && session.isWarm() && session.lock.tryLock()) {
+                try {
+                    discard(session);
+                    logger.debug("Evicted idle session {}", session.getSessionId());
+                } finally {
+                    session.lock.unlock();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (DocumentSession session : sessions.values()) {
+            session.lock.lock();
+            try {
+                discard(session);
+            } finally {
+                session.lock.unlock();
+            }
+        }
+        sessions.clear();
+    }
+
+    /**
+     * Returns the session's parsed document, loading the stored file and replaying the recorded
+     * annotations if it was evicted. Caller must hold the session lock.
+     */
+    private PDDocument warmUp(DocumentSession session) throws IOException {
+        session.lastAccess = System.currentTimeMillis();
+        if (session.document != null) {
+            synchronized (warmSessions) {
+                warmSessions.get(session.getSessionId());
+            }
+            return session.document;
+        }
+
+        long start = System.nanoTime();
+        PDDocument document = pdfAnnotationService.loadDocument(
+                documentStore.resolve(session.getDocumentId()).toFile());
+        try {
+            if (!session.annotations().isEmpty()) {
+                pdfAnnotationService.applyAnnotations(document, session.annotations(), null,
+                        session.templateSources);
+            }
+        } catch (IOException | RuntimeException e) {
+            document.close();
+            throw e;
+        }
+
+        session.document = document;
+        session.pageCount = document.getNumberOfPages();
+        synchronized (warmSessions) {
+            warmSessions.put(session.getSessionId(), session);
+            warmBytes += session.getSizeBytes();
+        }
+
+        logger.debug("Loaded session {} with {} replayed annotations in {} ms", session.getSessionId(),
+                session.annotations().size(), (System.nanoTime() - start) / 1_000_000);
+        return document;
+    }
+
+    /**
+     * Closes the session's parsed document, if any. Caller must hold the session lock.
+     */
+    private void discard(DocumentSession session) {
+        if (session.document == null) {
+            return;
+        }
+        try {
+            session.document.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close document of session {}", session.getSessionId(), e);
+        }
+        session.document = null;
+        synchronized (warmSessions) {
+            if (warmSessions.remove(session.getSessionId()) != null) {
+                warmBytes -= session.getSizeBytes();
+            }
+        }
+    }
+
+    /**
+     * Evicts least recently used documents until the cache is back within its count and size
+     * bounds. Sessions that are busy in another request are skipped.
+     */
+    private void enforceCacheLimits() {
+        List<DocumentSession> candidates;
+        synchronized (warmSessions) {
+            if (withinCacheLimits()) {
+                return;
+            }
+            candidates = new ArrayList<>(warmSessions.values());
+        }
+
+        for (DocumentSession candidate : candidates) {
+            synchronized (warmSessions) {
+                if (withinCacheLimits()) {
+                    return;
+                }
+            }
+            if (candidate.lock.tryLock()) {
+                try {
+                    discard(candidate);
+                    logger.debug("Evicted session {} from document cache", candidate.getSessionId());
+                } finally {
+                    candidate.lock.unlock();
+                }
+            }
+        }
+    }
+
+    private boolean withinCacheLimits() {
+        return warmSessions.size() <= maxCachedDocuments && warmBytes <= maxCachedBytes.toBytes();
+    }
+}
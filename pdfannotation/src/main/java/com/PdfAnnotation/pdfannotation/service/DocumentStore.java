@@ -0,0 +1,243 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Local content-addressed file store. Each blob is stored once under its SHA-256 hex digest,
+ * sharded by the first two characters: {@code <dir>/ab/abcdef....bin}. Blobs that are not
+ * pinned by a live session are removed once unused for the retention period, and least
+ * recently used first while the store is over its size limit.
+ */
+@Component
+public class DocumentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentStore.class);
+
+    private static final Pattern DOCUMENT_ID = Pattern.compile("[0-9a-f]{64}");
+
+    private static final Pattern BLOB_NAME = Pattern.compile("[0-9a-f]{64}\\.bin");
+
+    @Value("${pdf.store.dir:${java.io.tmpdir}/pdf-annotation/store}")
+    private String directory;
+
+    @Value("${pdf.store.retention:7d}")
+    private Duration retention;
+
+    @Value("${pdf.store.max-size:20GB}")
+    private DataSize maxSize;
+
+    private Path root;
+
+    // last use of each blob since startup; older blobs fall back to their modification time
+    private final Map<String, Long> lastUse = new ConcurrentHashMap<>();
+
+    // number of live sessions on each blob; pinned blobs are never removed
+    private final Map<String, Integer> pins = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Files.createDirectories(Paths.get(directory));
+        logger.info("Document store at {}", root);
+    }
+
+    /**
+     * Streams the input into the store while hashing it and returns its document ID. Content
+     * that is already stored is not written twice.
+     */
+    public String store(InputStream inputStream) throws IOException {
+        return store(inputStream, documentId -> documentId);
+    }
+
+    /**
+     * Stores the input like {@link #store(InputStream)} and passes its document ID to
+     * {@code use}. If {@code use} fails and the content was not stored before, the blob is
+     * removed again, so rejected uploads do not stay on disk.
+     */
+    public <T> T store(InputStream inputStream, DocumentUse<T> use) throws IOException {
+        MessageDigest digest = sha256();
+        Path temp = Files.createTempFile(root, "upload-", ".tmp");
+        try {
+            try (OutputStream outputStream = new DigestOutputStream(Files.newOutputStream(temp), digest)) {
+                inputStream.transferTo(outputStream);
+            }
+            String documentId = HexFormat.of().formatHex(digest.digest());
+            boolean added = commit(temp, documentId);
+            try {
+                return use.apply(documentId);
+            } catch (IOException | RuntimeException e) {
+                if (added && !pins.containsKey(documentId)) {
+                    delete(documentId);
+                }
+                throw e;
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Moves a fully written and already hashed file into the store under {@code documentId}.
+     *
+     * @return whether the file was added, {@code false} if the content was already stored
+     */
+    public boolean commit(Path file, String documentId) throws IOException {
+        Path target = resolve(documentId);
+        if (Files.exists(target)) {
+            return false;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            // stored concurrently by another request with the same content
+            return false;
+        }
+    }
+
+    /**
+     * Keeps the blob from being removed until every pin is released again.
+     */
+    public void pin(String documentId) {
+        pins.merge(documentId, 1, Integer::sum);
+    }
+
+    public void unpin(String documentId) {
+        pins.computeIfPresent(documentId, (id, count) -> count > 1 ? count - 1 : null);
+        lastUse.put(documentId, System.currentTimeMillis());
+    }
+
+    public boolean contains(String documentId) {
+        return isValidId(documentId) && Files.exists(resolve(documentId));
+    }
+
+    /**
+     * Returns the path of a stored document. Throws if the ID is malformed; the file itself may
+     * not exist, see {@link #contains(String)}.
+     */
+    public Path resolve(String documentId) {
+        if (!isValidId(documentId)) {
+            throw new IllegalArgumentException("Invalid document id: " + documentId);
+        }
+        lastUse.put(documentId, System.currentTimeMillis());
+        return root.resolve(documentId.substring(0, 2)).resolve(documentId + ".bin");
+    }
+
+    /**
+     * Removes blobs that are not pinned and have not been used within the retention period,
+     * then the least recently used unpinned blobs until the store is within its size limit.
+     */
+    @Scheduled(fixedDelayString = "${pdf.store.sweep-interval:PT10M}")
+    public void removeUnusedDocuments() {
+        long cutoff = System.currentTimeMillis() - retention.toMillis();
+        List<Blob> blobs = new ArrayList<>();
+        long size = 0;
+        try (Stream<Path> files = Files.find(root, 2,
+                (path, attributes) -> attributes.isRegularFile()
+                        && BLOB_NAME.matcher(path.getFileName().toString()).matches())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String documentId = file.getFileName().toString().substring(0, 64);
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                Blob blob = new Blob(documentId, Files.size(file),
+                        Math.max(modified, lastUse.getOrDefault(documentId, 0L)));
+                blobs.add(blob);
+                size += blob.size;
+            }
+        } catch (IOException e) {
+            logger.warn("Could not list the document store", e);
+            return;
+        }
+
+        blobs.sort(Comparator.comparingLong(blob -> blob.lastUse));
+        int removed = 0;
+        for (Blob blob : blobs) {
+            if (blob.lastUse >= cutoff && size <= maxSize.toBytes()) {
+                break;
+            }
+            if (!pins.containsKey(blob.documentId) && delete(blob.documentId)) {
+                size -= blob.size;
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            logger.info("Removed {} unused documents from the store, {} bytes left", removed, size);
+        }
+    }
+
+    private boolean delete(String documentId) {
+        try {
+            Files.deleteIfExists(resolve(documentId));
+            lastUse.remove(documentId);
+            return true;
+        } catch (IOException e) {
+            // e.g. still open for rendering on a platform that cannot delete open files
+            logger.debug("Could not remove document {}", documentId, e);
+            return false;
+        }
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public static boolean isValidId(String documentId) {
+        return documentId != null && DOCUMENT_ID.matcher(documentId).matches();
+    }
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Uses a newly stored document, see {@link #store(InputStream, DocumentUse)}.
+     */
+    @FunctionalInterface
+    public interface DocumentUse<T> {
+
+        T apply(String documentId) throws IOException;
+    }
+
+    private static final class Blob {
+
+        private final String documentId;
+        private final long size;
+        private final long lastUse;
+
+        private Blob(String documentId, long size, long lastUse) {
+            this.documentId = documentId;
+            this.size = size;
+            this.lastUse = lastUse;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Paints the solid rectangles under one page's flattened annotations in as few fill operations
+ * as the drawing order allows. Annotations hand in their fill and a deferred drawing of
+ * everything else: text, borders, stamps and images. Fills are collected and painted as one
+ * path per colour, followed by the collected drawings in request order.
+ *
+ * <p>The page must look exactly as if every annotation had been drawn on its own, fill first.
+ * Fills therefore only gather while none of them lands on a collected drawing, which a later
+ * fill would have painted over, or on a fill of another colour, whose order would be lost.
+ * Before a fill that would, everything collected so far is painted. A {@link RectIndex}
+ * answers both questions. Within a colour, rectangles that together form a rectangle, such as
+ * words selected one by one along a line, are merged, and rectangles inside another are dropped;
+ * the rest stay separate subpaths of the one fill.
+ */
+final class FillBatch {
+
+    /**
+     * A drawing deferred until the fills under it are painted.
+     */
+    interface Drawing {
+        void draw() throws IOException;
+    }
+
+    private final PDPageContentStream contentStream;
+
+    // pending rectangles as {left, bottom, right, top} by colour, in first-use order
+    private final Map<String, Fill> fills = new LinkedHashMap<>();
+    private final RectIndex<String> fillIndex = new RectIndex<>();
+
+    private final List<Drawing> drawings = new ArrayList<>();
+    private final RectIndex<Drawing> drawingIndex = new RectIndex<>();
+
+    private int fillOperations;
+
+    FillBatch(PDPageContentStream contentStream) {
+        this.contentStream = contentStream;
+    }
+
+    PDPageContentStream getContentStream() {
+        return contentStream;
+    }
+
+    void fill(PDColor color, float x, float y, float width, float height) throws IOException {
+        String key = color.getColorSpace().getName() + Arrays.toString(color.getComponents());
+        if (drawingIndex.anyOverlapping(x, y, width, height)
+                || fillIndex.anyOverlapping(x, y, width, height, other -> !other.equals(key))) {
+            flush();
+        }
+        fills.computeIfAbsent(key, name -> new Fill(color)).rectangles.add(new float[]{x, y, x + width, y + height});
+        fillIndex.add(x, y, width, height, key);
+    }
+
+    /**
+     * Queues a drawing that stays within the given bounds.
+     */
+    void draw(float x, float y, float width, float height, Drawing drawing) {
+        drawings.add(drawing);
+        drawingIndex.add(x, y, width, height, drawing);
+    }
+
+    /**
+     * Paints the collected fills, then the collected drawings.
+     */
+    void flush() throws IOException {
+        if (!fills.isEmpty()) {
+            contentStream.saveGraphicsState();
+            for (Fill fill : fills.values()) {
+                contentStream.setNonStrokingColor(fill.color);
+                for (float[] rectangle : merge(fill.rectangles)) {
+                    contentStream.addRect(rectangle[0], rectangle[1],
+                            rectangle[2] - rectangle[0], rectangle[3] - rectangle[1]);
+                }
+                contentStream.fill();
+                fillOperations++;
+            }
+            contentStream.restoreGraphicsState();
+            fills.clear();
+            fillIndex.clear();
+        }
+        for (Drawing drawing : drawings) {
+            drawing.draw();
+        }
+        drawings.clear();
+        drawingIndex.clear();
+    }
+
+    /**
+     * Number of fill operations painted so far.
+     */
+    int getFillOperations() {
+        return fillOperations;
+    }
+
+    /**
+     * The smallest set this finds of rectangles covering the same area: rectangles sharing a row
+     * or a column that overlap or touch are joined until nothing changes, and rectangles lying
+     * inside another are dropped.
+     */
+    static List<float[]> merge(List<float[]> rectangles) {
+        List<float[]> merged = new ArrayList<>(rectangles.size());
+        rectangles.forEach(rectangle -> merged.add(rectangle.clone()));
+        int size;
+        do {
+            size = merged.size();
+            join(merged, 1, 3, 0, 2);
+            join(merged, 0, 2, 1, 3);
+        } while (merged.size() < size);
+
+        merged.sort(Comparator.comparingDouble(FillBatch::area).reversed());
+        RectIndex<float[]> kept = new RectIndex<>();
+        List<float[]> result = new ArrayList<>(merged.size());
+        for (float[] rectangle : merged) {
+            if (!kept.anyOverlapping(rectangle[0], rectangle[1], rectangle[2] - rectangle[0],
+                    rectangle[3] - rectangle[1], other -> contains(other, rectangle))) {
+                kept.add(rectangle[0], rectangle[1], rectangle[2] - rectangle[0], rectangle[3] - rectangle[1], rectangle);
+                result.add(rectangle);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Joins rectangles with the same {@code low}..{@code high} span whose {@code start}..{@code end}
+     * spans overlap or touch.
+     */
+    private static void join(List<float[]> rectangles, int low, int high, int start, int end) {
+        rectangles.sort(Comparator.<float[]>comparingDouble(r -> r[low]).thenComparingDouble(r -> r[high])
+                .thenComparingDouble(r -> r[start]));
+        List<float[]> joined = new ArrayList<>(rectangles.size());
+        float[] current = null;
+        for (float[] rectangle : rectangles) {
+            if (current != null && current[low] == rectangle[low] && current[high] == rectangle[high]
+                    && rectangle[start] <= current[end]) {
+                current[end] = Math.max(current[end], rectangle[end]);
+            } else {
+                current = rectangle;
+                joined.add(current);
+            }
+        }
+        rectangles.clear();
+        rectangles.addAll(joined);
+    }
+
+    private static boolean contains(float[] outer, float[] inner) {
+        return outer[0] <= inner[0] && outer[1] <= inner[1] && inner[2] <= outer[2] && inner[3] <= outer[3];
+    }
+
+    private static double area(float[] rectangle) {
+        return (double) (rectangle[2] - rectangle[0]) * (rectangle[3] - rectangle[1]);
+    }
+
+    private static final class Fill {
+
+        private final PDColor color;
+        private final List<float[]> rectangles = new ArrayList<>();
+
+        private Fill(PDColor color) {
+            this.color = color;
+        }
+    }
+}
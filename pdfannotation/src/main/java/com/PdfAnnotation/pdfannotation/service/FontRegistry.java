@@ -0,0 +1,188 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.fontbox.ttf.OTFParser;
+import org.apache.fontbox.ttf.OpenTypeFont;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeCollection;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TrueType and OpenType fonts from {@code pdf.fonts.dir}, parsed once at startup and shared by
+ * all requests. A font is selected by its file name without extension or its PostScript name,
+ * case-insensitively. Each document gets its own {@link PDType0Font} per font, embedded as a
+ * subset of the glyphs actually drawn, so large CJK fonts cost little per request.
+ */
+@Component
+public class FontRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(FontRegistry.class);
+
+    @Value("${pdf.fonts.dir:}")
+    private String directory;
+
+    // Registered font used for text the requested standard font cannot encode
+    @Value("${pdf.fonts.fallback:}")
+    private String fallback;
+
+    // Parsed fonts are thread-safe for reading: fontbox synchronizes access to the font data
+    private final Map<String, TrueTypeFont> fonts = new ConcurrentHashMap<>();
+
+    // Open font files, closed on shutdown
+    private final List<Closeable> sources = new ArrayList<>();
+
+    private TrueTypeFont fallbackFont;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (directory != null && !directory.trim().isEmpty()) {
+            File dir = new File(directory.trim());
+            File[] files = dir.listFiles();
+            if (files == null) {
+                throw new IllegalStateException("Font directory not found: " + dir);
+            }
+            for (File file : files) {
+                register(file);
+            }
+        }
+
+        if (fallback != null && !fallback.trim().isEmpty()) {
+            fallbackFont = fonts.get(fallback.trim().toLowerCase(Locale.ROOT));
+            if (fallbackFont == null) {
+                throw new IllegalStateException("Fallback font not registered: " + fallback);
+            }
+        }
+        logger.info("Registered {} font names from '{}', fallback: {}",
+                fonts.size(), directory, fallbackFont != null ? fallback : "none");
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Closeable source : sources) {
+            try {
+                source.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close font", e);
+            }
+        }
+    }
+
+    public boolean contains(String name) {
+        return name != null && fonts.containsKey(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Starts a font scope for one pass over a document. Fonts are loaded into the document on
+     * first use and reused for the rest of the pass.
+     */
+    public DocumentFonts forDocument(PDDocument document) {
+        return new DocumentFonts(document);
+    }
+
+    private void register(File file) {
+        String fileName = file.getName().toLowerCase(Locale.ROOT);
+        try {
+            if (fileName.endsWith(".ttf")) {
+                register(fileName, new TTFParser().parse(file));
+            } else if (fileName.endsWith(".otf")) {
+                OpenTypeFont font = new OTFParser().parse(file);
+                if (font.isPostScript()) {
+                    // PDType0Font can only embed glyf outlines
+                    logger.warn("Skipping {}: OpenType fonts with CFF outlines cannot be embedded", file);
+                    font.close();
+                    return;
+                }
+                register(fileName, font);
+            } else if (fileName.endsWith(".ttc")) {
+                TrueTypeCollection collection = new TrueTypeCollection(file);
+                sources.add(collection);
+                collection.processAllFonts(font -> register(font.getName() + ".ttc", font));
+            }
+        } catch (IOException e) {
+            logger.warn("Skipping unreadable font {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void register(String fileName, TrueTypeFont font) throws IOException {
+        if (!fileName.endsWith(".ttc")) {
+            sources.add(font);
+        }
+        String stem = fileName.substring(0, fileName.lastIndexOf('.'));
+        fonts.putIfAbsent(stem.toLowerCase(Locale.ROOT), font);
+        if (font.getName() != null) {
+            fonts.putIfAbsent(font.getName().toLowerCase(Locale.ROOT), font);
+        }
+        logger.debug("Registered font {} ({} glyphs)", font.getName(), font.getNumberOfGlyphs());
+    }
+
+    /**
+     * The {@link PDType0Font}s created for one document. Not thread-safe; a document is only
+     * ever annotated by one thread at a time.
+     */
+    public final class DocumentFonts {
+
+        private final PDDocument document;
+        private final Map<TrueTypeFont, PDFont> loaded = new HashMap<>();
+
+        private DocumentFonts(PDDocument document) {
+            this.document = document;
+        }
+
+        /**
+         * Returns the registered font called {@code name} for this document, or {@code null} if
+         * there is none.
+         */
+        public PDFont get(String name) throws IOException {
+            if (name == null) {
+                return null;
+            }
+            TrueTypeFont font = fonts.get(name.toLowerCase(Locale.ROOT));
+            return font != null ? load(font) : null;
+        }
+
+        /**
+         * Returns the configured fallback font for this document, or {@code null} if none is set.
+         */
+        public PDFont fallback() throws IOException {
+            return fallbackFont != null ? load(fallbackFont) : null;
+        }
+
+        /**
+         * Embeds the subsets of the fonts loaded so far now rather than when the document is
+         * saved. No more text may be drawn with them afterwards.
+         */
+        public void subset() throws IOException {
+            for (PDFont font : loaded.values()) {
+                font.subset();
+            }
+        }
+
+        private PDFont load(TrueTypeFont font) throws IOException {
+            PDFont pdFont = loaded.get(font);
+            if (pdFont == null) {
+                // subset: only the glyphs drawn into this document are embedded on save
+                pdFont = PDType0Font.load(document, font, true);
+                loaded.put(font, pdFont);
+            }
+            return pdFont;
+        }
+    }
+}
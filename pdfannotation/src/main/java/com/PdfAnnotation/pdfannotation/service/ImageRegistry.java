@@ -0,0 +1,313 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Images for image annotations, stored in the {@link DocumentStore} and referenced by their
+ * SHA-256 ID. Decoding and compressing an image is the expensive part of embedding it, so each
+ * image is converted once into ready-to-embed PDF stream data and kept in a bounded LRU cache
+ * shared by all requests. JPEGs are embedded as they are; everything else is decoded once and
+ * Flate-compressed, with the alpha channel as a soft mask. Within a document every placement of
+ * an image reuses the same XObject.
+ */
+@Component
+public class ImageRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageRegistry.class);
+
+    @Autowired
+    private DocumentStore documentStore;
+
+    @Value("${pdf.images.cache-size:64MB}")
+    private DataSize cacheSize;
+
+    @Value("${pdf.images.max-pixels:40000000}")
+    private long maxPixels;
+
+    // Least recently used first; guarded by itself
+    private final LinkedHashMap<String, CompiledImage> compiled = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long compiledBytes;
+
+    /**
+     * Converts an uploaded image and only then stores it, so undecodable or oversized uploads
+     * are rejected up front without leaving anything behind, and the first document using the
+     * image finds it in the cache.
+     */
+    public CompiledImage register(InputStream inputStream) throws IOException {
+        byte[] bytes = inputStream.readAllBytes();
+        String imageId = HexFormat.of().formatHex(DocumentStore.sha256().digest(bytes));
+        CompiledImage image = compile(imageId, bytes);
+        documentStore.store(new ByteArrayInputStream(bytes));
+        remember(image);
+        return image;
+    }
+
+    /**
+     * Starts an image scope for one pass over a document. Images are added to the document on
+     * first use and reused for the rest of the pass.
+     */
+    public DocumentImages forDocument(PDDocument document) {
+        return new DocumentImages(document);
+    }
+
+    /**
+     * Returns the converted image, converting and caching it on a miss.
+     */
+    CompiledImage compiled(String imageId) throws IOException {
+        synchronized (compiled) {
+            CompiledImage image = compiled.get(imageId);
+            if (image != null) {
+                return image;
+            }
+        }
+        if (!documentStore.contains(imageId)) {
+            throw new IllegalArgumentException("Unknown image: " + imageId);
+        }
+
+        CompiledImage image = compile(imageId, Files.readAllBytes(documentStore.resolve(imageId)));
+        remember(image);
+        return image;
+    }
+
+    private void remember(CompiledImage image) {
+        String imageId = image.getImageId();
+        synchronized (compiled) {
+            CompiledImage previous = compiled.put(imageId, image);
+            compiledBytes += image.size() - (previous != null ? previous.size() : 0);
+            Iterator<CompiledImage> eldest = compiled.values().iterator();
+            while (compiledBytes > cacheSize.toBytes() && compiled.size() > 1) {
+                compiledBytes -= eldest.next().size();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Reads the image header first and rejects images with more than {@code pdf.images.max-pixels}
+     * pixels before anything is decoded, since a small file can declare huge dimensions.
+     */
+    private CompiledImage compile(String imageId, byte[] bytes) throws IOException {
+        long start = System.nanoTime();
+        CompiledImage image;
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IllegalArgumentException("Unsupported image: " + imageId);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IllegalArgumentException("Image " + width + "x" + height
+                            + " exceeds the maximum of " + maxPixels + " pixels");
+                }
+                image = isJpeg(bytes) ? compileJpeg(imageId, bytes, reader) : null;
+                if (image == null) {
+                    image = compileDecoded(imageId, reader.read(0));
+                }
+            } catch (IIOException e) {
+                throw new IllegalArgumentException("Unsupported image: " + imageId, e);
+            } finally {
+                reader.dispose();
+            }
+        }
+        logger.debug("Converted image {} ({}x{}, {} bytes) in {} ms", imageId, image.getWidth(),
+                image.getHeight(), image.size(), (System.nanoTime() - start) / 1_000_000);
+        return image;
+    }
+
+    /**
+     * JPEG data is embedded unchanged with {@code DCTDecode}; only the header is read for the
+     * dimensions and number of components. Returns {@code null} for JPEGs that must be decoded.
+     */
+    private static CompiledImage compileJpeg(String imageId, byte[] bytes, ImageReader reader) throws IOException {
+        int components = reader.getRawImageType(0) != null
+                ? reader.getRawImageType(0).getNumComponents() : 3;
+        if (components != 1 && components != 3) {
+            // CMYK and YCCK JPEGs need a decode array; convert them like any other image
+            return null;
+        }
+        COSName colorSpace = components == 1 ? COSName.DEVICEGRAY : COSName.DEVICERGB;
+        return new CompiledImage(imageId, reader.getWidth(0), reader.getHeight(0),
+                COSName.DCT_DECODE, colorSpace, bytes, null);
+    }
+
+    /**
+     * Compresses the decoded image's RGB samples, plus the alpha channel if there is one, with
+     * Flate.
+     */
+    private static CompiledImage compileDecoded(String imageId, BufferedImage decoded) throws IOException {
+        int width = decoded.getWidth();
+        int height = decoded.getHeight();
+        boolean hasAlpha = decoded.getColorModel().hasAlpha();
+
+        int[] row = new int[width];
+        byte[] rgbRow = new byte[width * 3];
+        byte[] alphaRow = new byte[width];
+        ByteArrayOutputStream rgb = new ByteArrayOutputStream();
+        ByteArrayOutputStream alpha = new ByteArrayOutputStream();
+        try (OutputStream rgbOut = deflate(rgb);
+             OutputStream alphaOut = deflate(alpha)) {
+            for (int y = 0; y < height; y++) {
+                decoded.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    int argb = row[x];
+                    rgbRow[x * 3] = (byte) (argb >> 16);
+                    rgbRow[x * 3 + 1] = (byte) (argb >> 8);
+                    rgbRow[x * 3 + 2] = (byte) argb;
+                    alphaRow[x] = (byte) (argb >>> 24);
+                }
+                rgbOut.write(rgbRow);
+                if (hasAlpha) {
+                    alphaOut.write(alphaRow);
+                }
+            }
+        }
+        return new CompiledImage(imageId, width, height, COSName.FLATE_DECODE, COSName.DEVICERGB,
+                rgb.toByteArray(), hasAlpha ? alpha.toByteArray() : null);
+    }
+
+    private static OutputStream deflate(OutputStream outputStream) {
+        return new DeflaterOutputStream(outputStream, new Deflater(Deflater.BEST_SPEED), 8192) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                def.end();
+            }
+        };
+    }
+
+    private static boolean isJpeg(byte[] bytes) {
+        return bytes.length > 3 && (bytes[0] & 0xff) == 0xff && (bytes[1] & 0xff) == 0xd8
+                && (bytes[2] & 0xff) == 0xff;
+    }
+
+    /**
+     * An image converted to PDF image stream data: the encoded samples with their filter and
+     * colour space, and an optional Flate-encoded 8-bit soft mask. Immutable and shared.
+     */
+    public static final class CompiledImage {
+
+        private final String imageId;
+        private final int width;
+        private final int height;
+        private final COSName filter;
+        private final COSName colorSpace;
+        private final byte[] data;
+        private final byte[] alpha;
+
+        CompiledImage(String imageId, int width, int height, COSName filter, COSName colorSpace,
+                      byte[] data, byte[] alpha) {
+            this.imageId = imageId;
+            this.width = width;
+            this.height = height;
+            this.filter = filter;
+            this.colorSpace = colorSpace;
+            this.data = data;
+            this.alpha = alpha;
+        }
+
+        public String getImageId() {
+            return imageId;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public boolean hasAlpha() {
+            return alpha != null;
+        }
+
+        long size() {
+            return data.length + (alpha != null ? alpha.length : 0);
+        }
+
+        /**
+         * Writes the image into {@code document} as a new XObject without re-encoding it.
+         */
+        PDImageXObject embed(PDDocument document) throws IOException {
+            COSStream stream = imageStream(document, data, filter, colorSpace);
+            if (alpha != null) {
+                stream.setItem(COSName.SMASK, imageStream(document, alpha, COSName.FLATE_DECODE, COSName.DEVICEGRAY));
+            }
+            return new PDImageXObject(new PDStream(stream), null);
+        }
+
+        private COSStream imageStream(PDDocument document, byte[] encoded, COSName filter,
+                                      COSName colorSpace) throws IOException {
+            COSStream stream = document.getDocument().createCOSStream();
+            stream.setItem(COSName.TYPE, COSName.XOBJECT);
+            stream.setItem(COSName.SUBTYPE, COSName.IMAGE);
+            stream.setInt(COSName.WIDTH, width);
+            stream.setInt(COSName.HEIGHT, height);
+            stream.setItem(COSName.BITS_PER_COMPONENT, COSInteger.get(8));
+            stream.setItem(COSName.COLORSPACE, colorSpace);
+            stream.setItem(COSName.FILTER, filter);
+            try (OutputStream outputStream = stream.createRawOutputStream()) {
+                outputStream.write(encoded);
+            }
+            return stream;
+        }
+    }
+
+    /**
+     * The XObjects created for one document. Not thread-safe; a document is only ever annotated
+     * by one thread at a time.
+     */
+    public final class DocumentImages {
+
+        private final PDDocument document;
+        private final Map<String, PDImageXObject> loaded = new HashMap<>();
+
+        private DocumentImages(PDDocument document) {
+            this.document = document;
+        }
+
+        public PDImageXObject get(String imageId) throws IOException {
+            PDImageXObject image = loaded.get(imageId);
+            if (image == null) {
+                image = compiled(imageId).embed(document);
+                loaded.put(imageId, image);
+            }
+            return image;
+        }
+    }
+}
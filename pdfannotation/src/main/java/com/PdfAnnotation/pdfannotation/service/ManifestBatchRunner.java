@@ -0,0 +1,244 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline bulk annotation driven by a JSONL manifest, one document per line:
+ * <pre>
+ * {"input": "in/0001.pdf", "output": "out/0001.pdf", "annotations": [ ... ]}
+ * {"input": "in/0002.pdf", "output": "out/0002.pdf", "annotations": "stamp.json"}
+ * </pre>
+ * {@code annotations} is either an inline array or the path of a JSON file holding one, which is
+ * parsed once and shared by every line that names it. Relative paths resolve against the
+ * manifest's directory. The manifest is read lazily, so it may list millions of documents.
+ */
+@Service
+public class ManifestBatchRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ManifestBatchRunner.class);
+
+    private static final int PROGRESS_INTERVAL = 100;
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Autowired
+    private AnnotationParser annotationParser;
+
+    @Autowired
+    private ShardedAnnotator shardedAnnotator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Processes every line of the manifest with {@code parallelism} workers. Failed lines are
+     * logged and collected; they never stop the run.
+     */
+    public Summary run(Path manifest, int parallelism, AnnotationOptions options) throws IOException {
+        Path baseDirectory = manifest.toAbsolutePath().getParent();
+        JavaType listType = objectMapper.getTypeFactory().constructCollectionType(List.class, AnnotationRequest.class);
+        Map<Path, List<AnnotationRequest>> sharedAnnotations = new HashMap<>();
+
+        Summary summary = new Summary();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "pdf-cli-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Keeps the reader at most a few lines ahead of the workers
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+
+        logger.info("Running manifest {} with {} workers", manifest, parallelism);
+        long start = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                ManifestEntry entry;
+                try {
+                    entry = parseEntry(line, baseDirectory, listType, sharedAnnotations);
+                } catch (IOException | RuntimeException e) {
+                    summary.failed(lineNumber, line, e.getMessage());
+                    continue;
+                }
+
+                inFlight.acquireUninterruptibly();
+                int entryLine = lineNumber;
+                executor.execute(() -> {
+                    try {
+                        process(entry, options, summary);
+                    } catch (Exception e) {
+                        summary.failed(entryLine, entry.input().toString(), e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                    summary.reportProgress(start);
+                });
+            }
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        summary.elapsedNanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    private ManifestEntry parseEntry(String line, Path baseDirectory, JavaType listType,
+                                     Map<Path, List<AnnotationRequest>> sharedAnnotations) throws IOException {
+        JsonNode node = objectMapper.readTree(line);
+        String input = node.path("input").asText(null);
+        String output = node.path("output").asText(null);
+        JsonNode annotationsNode = node.get("annotations");
+        if (input == null || output == null || annotationsNode == null) {
+            throw new IllegalArgumentException("'input', 'output' and 'annotations' are required");
+        }
+
+        List<AnnotationRequest> annotations;
+        if (annotationsNode.isTextual()) {
+            Path annotationsFile = baseDirectory.resolve(annotationsNode.asText()).normalize();
+            annotations = sharedAnnotations.get(annotationsFile);
+            if (annotations == null) {
+                annotations = annotationParser.parse(Files.readString(annotationsFile));
+                annotationParser.requireCoordinates(annotations);
+                sharedAnnotations.put(annotationsFile, annotations);
+            }
+        } else {
+            annotations = objectMapper.convertValue(annotationsNode, listType);
+            annotationParser.validate(annotations);
+            annotationParser.requireCoordinates(annotations);
+        }
+        return new ManifestEntry(baseDirectory.resolve(input), baseDirectory.resolve(output), annotations);
+    }
+
+    private void process(ManifestEntry entry, AnnotationOptions options, Summary summary) throws IOException {
+        Path output = entry.output();
+        Path parent = output.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        // Written next to the target and renamed, so a failed document never leaves a partial file
+        Path temp = Files.createTempFile(parent, output.getFileName().toString(), ".tmp");
+        try {
+            if (options.isSharded()) {
+                try (OutputStream outputStream = Files.newOutputStream(temp)) {
+                    shardedAnnotator.annotatePdf(entry.input().toFile(), entry.annotations(), options, outputStream);
+                }
+            } else {
+                try (PDDocument document = pdfAnnotationService.loadDocument(entry.input().toFile())) {
+                    pdfAnnotationService.applyAnnotations(document, entry.annotations(), options);
+                    try (OutputStream outputStream = Files.newOutputStream(temp)) {
+                        pdfAnnotationService.saveDocument(document, options, outputStream);
+                    }
+                }
+            }
+            Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+            summary.succeeded(Files.size(entry.input()), Files.size(output));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private record ManifestEntry(Path input, Path output, List<AnnotationRequest> annotations) {}
+
+    /**
+     * Counters of a run, updated concurrently by the workers.
+     */
+    public static final class Summary {
+
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicLong bytesIn = new AtomicLong();
+        private final AtomicLong bytesOut = new AtomicLong();
+        private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        private volatile long elapsedNanos;
+
+        void succeeded(long inputBytes, long outputBytes) {
+            succeeded.incrementAndGet();
+            bytesIn.addAndGet(inputBytes);
+            bytesOut.addAndGet(outputBytes);
+        }
+
+        void failed(int lineNumber, String subject, String error) {
+            logger.warn("Line {} ({}) failed: {}", lineNumber, subject, error);
+            failures.add("line " + lineNumber + ": " + subject + ": " + error);
+        }
+
+        void reportProgress(long startNanos) {
+            int done = succeeded.get() + failures.size();
+            if (done % PROGRESS_INTERVAL == 0) {
+                double seconds = (System.nanoTime() - startNanos) / 1e9;
+                logger.info("{} documents done ({} failed), {} docs/s",
+                        done, failures.size(), String.format("%.1f", succeeded.get() / seconds));
+            }
+        }
+
+        public int getSucceeded() {
+            return succeeded.get();
+        }
+
+        public List<String> getFailures() {
+            return new ArrayList<>(failures);
+        }
+
+        public long getBytesIn() {
+            return bytesIn.get();
+        }
+
+        public long getBytesOut() {
+            return bytesOut.get();
+        }
+
+        public double getSeconds() {
+            return elapsedNanos / 1e9;
+        }
+
+        public double getDocumentsPerSecond() {
+            return succeeded.get() / Math.max(getSeconds(), 1e-9);
+        }
+
+        /**
+         * Input megabytes processed per second.
+         */
+        public double getMegabytesPerSecond() {
+            return bytesIn.get() / 1_048_576.0 / Math.max(getSeconds(), 1e-9);
+        }
+    }
+}
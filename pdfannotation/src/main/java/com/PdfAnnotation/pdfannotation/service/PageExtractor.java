@@ -0,0 +1,291 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes some of a document's pages as a new, self-contained PDF. The new document references
+ * the kept pages' objects instead of copying them, so content streams, fonts and images are
+ * written out still encoded, and nothing of the other pages is ever decoded or written.
+ * Everything the kept pages could reach through the rest of the document is cut off:
+ * resource dictionaries keep only the names the page content uses, links to dropped pages and
+ * to named destinations are removed, and the page tree, outlines and forms are left behind.
+ */
+@Component
+public class PageExtractor {
+
+    /**
+     * Pages option value selecting the pages that received annotations.
+     */
+    public static final String ANNOTATED = "annotated";
+
+    private static final Set<COSName> NAMED_RESOURCES = Set.of(COSName.FONT, COSName.XOBJECT,
+            COSName.EXT_G_STATE, COSName.COLORSPACE, COSName.PATTERN, COSName.SHADING, COSName.PROPERTIES);
+
+    // Annotation entries that point to other annotations
+    private static final COSName[] ANNOTATION_LINKS = {COSName.getPDFName("Popup"), COSName.PARENT,
+            COSName.getPDFName("IRT")};
+
+    private static final COSName LINK = COSName.getPDFName("Link");
+    private static final COSName GO_TO = COSName.getPDFName("GoTo");
+
+    @Autowired
+    private MemoryUsageSetting memoryUsageSetting;
+
+    /**
+     * Whether the options write selected pages through the extractor rather than saving the
+     * whole document.
+     */
+    public static boolean selectsPages(AnnotationOptions options) {
+        return options != null && options.getPages() != null && !options.getPages().isBlank();
+    }
+
+    /**
+     * Resolves a pages option against the document: {@code null} for the whole document,
+     * otherwise 1-based page numbers in ascending order. {@link #ANNOTATED} selects the pages
+     * {@link PdfAnnotationService} flagged as updated while applying annotations.
+     */
+    public List<Integer> select(PDDocument document, String pages) {
+        if (pages == null || pages.isBlank()) {
+            return null;
+        }
+        TreeSet<Integer> selected = new TreeSet<>();
+        if (ANNOTATED.equalsIgnoreCase(pages.trim())) {
+            int pageNumber = 1;
+            for (PDPage page : document.getPages()) {
+                if (page.getCOSObject().isNeedToBeUpdated()) {
+                    selected.add(pageNumber);
+                }
+                pageNumber++;
+            }
+            if (selected.isEmpty()) {
+                throw new IllegalArgumentException("No pages were annotated");
+            }
+            return new ArrayList<>(selected);
+        }
+
+        int numberOfPages = document.getNumberOfPages();
+        for (String range : pages.split(",")) {
+            String[] bounds = range.trim().split("-", -1);
+            int first;
+            int last;
+            try {
+                if (bounds.length > 2) {
+                    throw new NumberFormatException(range);
+                }
+                first = Integer.parseInt(bounds[0].trim());
+                last = bounds.length == 2 ? Integer.parseInt(bounds[1].trim()) : first;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid pages: " + pages);
+            }
+            if (first < 1 || last > numberOfPages || first > last) {
+                throw new IllegalArgumentException("Invalid page range: " + range.trim());
+            }
+            for (int pageNumber = first; pageNumber <= last; pageNumber++) {
+                selected.add(pageNumber);
+            }
+        }
+        return new ArrayList<>(selected);
+    }
+
+    /**
+     * Writes the given pages (1-based, in the given order) of {@code source} as a new document.
+     * The source is not modified, so it can be saved or annotated further afterwards.
+     */
+    public void write(PDDocument source, List<Integer> pageNumbers, OutputStream outputStream) throws IOException {
+        try (PDDocument output = new PDDocument(memoryUsageSetting)) {
+            output.getDocument().setVersion(source.getVersion());
+            COSBase info = source.getDocument().getTrailer().getDictionaryObject(COSName.INFO);
+            if (info instanceof COSDictionary) {
+                output.getDocument().getTrailer().setItem(COSName.INFO, new COSDictionary((COSDictionary) info));
+            }
+
+            // source page dictionary to its copy
+            Map<COSDictionary, COSDictionary> pages = new IdentityHashMap<>();
+            List<PDPage> kept = new ArrayList<>(pageNumbers.size());
+            for (int pageNumber : pageNumbers) {
+                PDPage page = source.getPage(pageNumber - 1);
+                COSDictionary copy = new COSDictionary(page.getCOSObject());
+                copy.removeItem(COSName.PARENT);
+                copy.removeItem(COSName.B);
+                PDPage imported = new PDPage(copy);
+                // inheritable attributes may live in page tree nodes that are left behind
+                imported.setMediaBox(page.getMediaBox());
+                imported.setCropBox(page.getCropBox());
+                imported.setRotation(page.getRotation());
+                imported.setResources(prune(page));
+                output.addPage(imported);
+                pages.put(page.getCOSObject(), copy);
+                kept.add(page);
+            }
+            for (PDPage page : kept) {
+                copyAnnotations(page.getCOSObject(), pages);
+            }
+            output.save(outputStream);
+        }
+    }
+
+    /**
+     * A copy of the page's resources, inherited ones included, holding only the named
+     * resources its content refers to. Forms, patterns and annotation appearances carry their
+     * own resources, so they are unaffected.
+     */
+    private static PDResources prune(PDPage page) throws IOException {
+        PDResources resources = page.getResources();
+        if (resources == null) {
+            return null;
+        }
+        Set<COSName> used = namesIn(page);
+        COSDictionary pruned = new COSDictionary();
+        for (Map.Entry<COSName, COSBase> entry : resources.getCOSObject().entrySet()) {
+            COSBase value = entry.getValue() instanceof COSObject
+                    ? ((COSObject) entry.getValue()).getObject() : entry.getValue();
+            if (!NAMED_RESOURCES.contains(entry.getKey()) || !(value instanceof COSDictionary)) {
+                pruned.setItem(entry.getKey(), entry.getValue());
+                continue;
+            }
+            COSDictionary names = new COSDictionary();
+            for (Map.Entry<COSName, COSBase> resource : ((COSDictionary) value).entrySet()) {
+                if (used.contains(resource.getKey())) {
+                    names.setItem(resource.getKey(), resource.getValue());
+                }
+            }
+            if (names.size() > 0) {
+                pruned.setItem(entry.getKey(), names);
+            }
+        }
+        return new PDResources(pruned);
+    }
+
+    /**
+     * Every name in the page content, operands and inline image parameters alike. Names that
+     * are not resource names are harmless extras.
+     */
+    private static Set<COSName> namesIn(PDPage page) throws IOException {
+        Set<COSName> names = new HashSet<>();
+        if (!page.hasContents()) {
+            return names;
+        }
+        PDFStreamParser parser = new PDFStreamParser(page);
+        for (Object token = parser.parseNextToken(); token != null; token = parser.parseNextToken()) {
+            if (token instanceof COSName) {
+                names.add((COSName) token);
+            } else if (token instanceof Operator && OperatorName.BEGIN_INLINE_IMAGE.equals(((Operator) token).getName())
+                    && ((Operator) token).getImageParameters() != null) {
+                for (COSBase value : ((Operator) token).getImageParameters().getValues()) {
+                    if (value instanceof COSName) {
+                        names.add((COSName) value);
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Gives the page copy its own copies of the page's annotations, pointing at the kept pages
+     * and at each other instead of the originals. Links to dropped pages or to named
+     * destinations, which need the left-behind name tree, are removed.
+     */
+    private static void copyAnnotations(COSDictionary page, Map<COSDictionary, COSDictionary> pages) {
+        COSDictionary copy = pages.get(page);
+        COSBase annots = page.getDictionaryObject(COSName.ANNOTS);
+        if (!(annots instanceof COSArray)) {
+            copy.removeItem(COSName.ANNOTS);
+            return;
+        }
+
+        Map<COSDictionary, COSDictionary> annotations = new LinkedHashMap<>();
+        for (COSBase item : (COSArray) annots) {
+            COSBase object = item instanceof COSObject ? ((COSObject) item).getObject() : item;
+            if (object instanceof COSDictionary) {
+                COSDictionary annotation = new COSDictionary((COSDictionary) object);
+                if (retarget(annotation, pages)) {
+                    annotation.setItem(COSName.P, copy);
+                    annotations.put((COSDictionary) object, annotation);
+                }
+            }
+        }
+
+        Map<COSDictionary, COSDictionary> byOriginal = new IdentityHashMap<>(annotations);
+        COSArray copies = new COSArray();
+        for (COSDictionary annotation : annotations.values()) {
+            for (COSName key : ANNOTATION_LINKS) {
+                COSBase target = annotation.getDictionaryObject(key);
+                COSDictionary mapped = target instanceof COSDictionary ? byOriginal.get(target) : null;
+                if (mapped != null) {
+                    annotation.setItem(key, mapped);
+                } else {
+                    annotation.removeItem(key);
+                }
+            }
+            copies.add(annotation);
+        }
+        copy.setItem(COSName.ANNOTS, copies);
+    }
+
+    /**
+     * Points a link annotation's destination at the copy of its target page. Returns
+     * {@code false} when the link must be dropped.
+     */
+    private static boolean retarget(COSDictionary annotation, Map<COSDictionary, COSDictionary> pages) {
+        if (!LINK.equals(annotation.getCOSName(COSName.SUBTYPE))) {
+            return true;
+        }
+        COSDictionary holder = annotation;
+        COSName key = COSName.DEST;
+        if (annotation.getDictionaryObject(COSName.DEST) == null) {
+            COSBase action = annotation.getDictionaryObject(COSName.A);
+            if (!(action instanceof COSDictionary)
+                    || !GO_TO.equals(((COSDictionary) action).getCOSName(COSName.S))) {
+                // URIs, remote documents and other actions do not depend on this document's pages
+                return true;
+            }
+            holder = new COSDictionary((COSDictionary) action);
+            annotation.setItem(COSName.A, holder);
+            key = COSName.D;
+        }
+
+        COSBase destination = holder.getDictionaryObject(key);
+        if (!(destination instanceof COSArray) || ((COSArray) destination).size() == 0) {
+            return false;
+        }
+        COSArray array = (COSArray) destination;
+        COSBase target = array.getObject(0);
+        COSDictionary targetCopy = target instanceof COSDictionary ? pages.get(target) : null;
+        if (targetCopy == null) {
+            return false;
+        }
+        COSArray retargeted = new COSArray();
+        retargeted.add(targetCopy);
+        for (int i = 1; i < array.size(); i++) {
+            retargeted.add(array.get(i));
+        }
+        holder.setItem(key, retargeted);
+        return true;
+    }
+}
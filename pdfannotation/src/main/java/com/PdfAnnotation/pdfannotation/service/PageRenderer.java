@@ -0,0 +1,292 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.RenderOptions;
+import com.PdfAnnotation.pdfannotation.exception.DocumentNotFoundException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders pages, or square tiles of pages, to images with PDFBox's {@link PDFRenderer}. Renders
+ * run on a fixed pool so a burst of tile requests cannot occupy every request thread with
+ * rasterizing, and concurrent requests for the same image share one render. Results go into
+ * the {@link RenderCache}.
+ *
+ * <p>A {@link PDDocument} cannot be used by two threads at once, so stored documents are
+ * rendered from a pool of parsed copies: each render borrows a copy of its document, loading
+ * one if none is idle, and returns it afterwards. Idle copies are capped across all documents,
+ * least recently used documents losing theirs first.
+ */
+@Component
+public class PageRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PageRenderer.class);
+
+    @Autowired
+    private DocumentStore documentStore;
+
+    @Autowired
+    private MemoryUsageSetting memoryUsageSetting;
+
+    @Autowired
+    private RenderCache renderCache;
+
+    @Autowired
+    private AnnotationMetrics annotationMetrics;
+
+    @Value("${pdf.render.parallelism:0}")
+    private int parallelism;
+
+    @Value("${pdf.render.max-dpi:600}")
+    private float maxDpi;
+
+    @Value("${pdf.render.max-pixels:25000000}")
+    private long maxPixels;
+
+    @Value("${pdf.render.pooled-documents:8}")
+    private int pooledDocuments;
+
+    private ExecutorService executor;
+
+    private final ConcurrentHashMap<String, Future<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    // Idle parsed copies by document ID, least recently used first; guarded by itself
+    private final LinkedHashMap<String, Deque<PDDocument>> idle = new LinkedHashMap<>(16, 0.75f, true);
+    private int idleCount;
+
+    @PostConstruct
+    public void init() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "pdf-render-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Render pool: {} workers", threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        synchronized (idle) {
+            idle.values().forEach(documents -> documents.forEach(PageRenderer::closeQuietly));
+            idle.clear();
+            idleCount = 0;
+        }
+    }
+
+    /**
+     * Renders a page (1-based) of a stored document.
+     */
+    public byte[] render(String documentId, int pageNumber, RenderOptions options) throws IOException {
+        validate(options);
+        return cached(key(documentId, "", pageNumber, options), () -> {
+            PDDocument document = borrow(documentId);
+            try {
+                return render(document, pageNumber, options);
+            } finally {
+                release(documentId, document);
+            }
+        });
+    }
+
+    /**
+     * Renders a page of a document the caller holds, such as a session's annotated copy. The
+     * render runs on the pool while the caller waits, so the caller must keep other threads
+     * away from the document until this returns. {@code version} tells the cache entries of
+     * different states of the same stored document apart.
+     */
+    public byte[] render(PDDocument document, String documentId, String version, int pageNumber,
+                         RenderOptions options) throws IOException {
+        validate(options);
+        return cached(key(documentId, version, pageNumber, options),
+                () -> render(document, pageNumber, options));
+    }
+
+    private byte[] cached(String key, Callable<byte[]> render) throws IOException {
+        byte[] data = renderCache.get(key);
+        if (data != null) {
+            return data;
+        }
+
+        FutureTask<byte[]> task = new FutureTask<>(() -> {
+            byte[] rendered = render.call();
+            renderCache.put(key, rendered);
+            return rendered;
+        });
+        Future<byte[]> running = inFlight.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            executor.execute(task);
+        }
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to render page", cause);
+        } finally {
+            if (running == task) {
+                inFlight.remove(key, task);
+            }
+        }
+    }
+
+    /**
+     * Rasterizes the page, or the requested tile of it, onto a white background and encodes it.
+     */
+    private byte[] render(PDDocument document, int pageNumber, RenderOptions options) throws IOException {
+        long start = System.nanoTime();
+        if (pageNumber < 1 || pageNumber > document.getNumberOfPages()) {
+            throw new IllegalArgumentException("Invalid page number: " + pageNumber);
+        }
+        PDPage page = document.getPage(pageNumber - 1);
+        PDRectangle cropBox = page.getCropBox();
+        boolean rotated = page.getRotation() % 180 != 0;
+        float scale = options.getDpi() / 72;
+        // same rounding as PDFRenderer.renderImage
+        int pageWidth = (int) Math.max(Math.floor((rotated ? cropBox.getHeight() : cropBox.getWidth()) * scale), 1);
+        int pageHeight = (int) Math.max(Math.floor((rotated ? cropBox.getWidth() : cropBox.getHeight()) * scale), 1);
+
+        int left = 0;
+        int top = 0;
+        int width = pageWidth;
+        int height = pageHeight;
+        if (options.getTileSize() > 0) {
+            left = options.getTileX() * options.getTileSize();
+            top = options.getTileY() * options.getTileSize();
+            if (left >= pageWidth || top >= pageHeight) {
+                throw new IllegalArgumentException("Invalid tile: " + options.getTileX() + "," + options.getTileY()
+                        + " (page is " + pageWidth + "x" + pageHeight + " pixels)");
+            }
+            width = Math.min(options.getTileSize(), pageWidth - left);
+            height = Math.min(options.getTileSize(), pageHeight - top);
+        }
+        if ((long) width * height > maxPixels) {
+            throw new IllegalArgumentException("Image of " + width + "x" + height
+                    + " pixels is too large; use a lower dpi or tiles");
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setBackground(Color.WHITE);
+            graphics.clearRect(0, 0, width, height);
+            graphics.translate(-left, -top);
+            new PDFRenderer(document).renderPageToGraphics(pageNumber - 1, graphics, scale);
+        } finally {
+            graphics.dispose();
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, options.getFormat().getExtension(), outputStream);
+        annotationMetrics.recordStage(AnnotationMetrics.Stage.RENDER, start);
+        return outputStream.toByteArray();
+    }
+
+    private void validate(RenderOptions options) {
+        if (!(options.getDpi() > 0) || options.getDpi() > maxDpi) {
+            throw new IllegalArgumentException("dpi must be between 0 and " + maxDpi);
+        }
+        if (options.getTileSize() < 0 || options.getTileX() < 0 || options.getTileY() < 0) {
+            throw new IllegalArgumentException("Tile size and position must not be negative");
+        }
+    }
+
+    private static String key(String documentId, String version, int pageNumber, RenderOptions options) {
+        MessageDigest digest = DocumentStore.sha256();
+        digest.update(String.join("\n", documentId, version, String.valueOf(pageNumber),
+                String.valueOf(options.getDpi()), options.getFormat().name(),
+                String.valueOf(options.getTileSize()), String.valueOf(options.getTileX()),
+                String.valueOf(options.getTileY())).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private PDDocument borrow(String documentId) throws IOException {
+        synchronized (idle) {
+            Deque<PDDocument> documents = idle.get(documentId);
+            if (documents != null) {
+                PDDocument document = documents.pop();
+                if (documents.isEmpty()) {
+                    idle.remove(documentId);
+                }
+                idleCount--;
+                return document;
+            }
+        }
+        if (!documentStore.contains(documentId)) {
+            throw new DocumentNotFoundException("Document not found: " + documentId);
+        }
+        return PDDocument.load(documentStore.resolve(documentId).toFile(), memoryUsageSetting);
+    }
+
+    private void release(String documentId, PDDocument document) {
+        List<PDDocument> evicted = new ArrayList<>();
+        synchronized (idle) {
+            idle.computeIfAbsent(documentId, key -> new ArrayDeque<>()).push(document);
+            idleCount++;
+            Iterator<Deque<PDDocument>> eldest = idle.values().iterator();
+            while (idleCount > pooledDocuments) {
+                Deque<PDDocument> documents = eldest.next();
+                while (idleCount > pooledDocuments && !documents.isEmpty()) {
+                    evicted.add(documents.removeLast());
+                    idleCount--;
+                }
+                if (documents.isEmpty()) {
+                    eldest.remove();
+                }
+            }
+        }
+        evicted.forEach(PageRenderer::closeQuietly);
+    }
+
+    private static void closeQuietly(PDDocument document) {
+        try {
+            document.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close pooled document", e);
+        }
+    }
+}
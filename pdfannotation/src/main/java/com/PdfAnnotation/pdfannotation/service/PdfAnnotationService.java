@@ -1,204 +1,647 @@
 
 package com.PdfAnnotation.pdfannotation.service;
 
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
 import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.fontbox.util.BoundingBox;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSUpdateInfo;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.pdmodel.interactive.action.PDActionURI;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationLink;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationMarkup;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationRubberStamp;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDBorderStyleDictionary;
+import org.apache.pdfbox.util.Matrix;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.awt.*;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 @Service
 public class PdfAnnotationService {
 
     private static final Logger logger = LoggerFactory.getLogger(PdfAnnotationService.class);
 
-    public byte[] annotatePdf(InputStream pdfInputStream, List<AnnotationRequest> annotations) throws IOException {
-        try (PDDocument document = PDDocument.load(pdfInputStream)) {
+    private static final PDColor WHITE = new PDColor(new float[]{1, 1, 1}, PDDeviceRGB.INSTANCE);
 
-            for (AnnotationRequest annotation : annotations) {
-                applyAnnotation(document, annotation);
-            }
+    @Autowired
+    private MemoryUsageSetting memoryUsageSetting;
+
+    @Autowired
+    private AnnotationMetrics annotationMetrics;
+
+    @Autowired
+    private TextLayoutEngine textLayoutEngine;
+
+    @Autowired
+    private FontRegistry fontRegistry;
 
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            document.save(outputStream);
-            return outputStream.toByteArray();
+    @Autowired
+    private ImageRegistry imageRegistry;
+
+    @Autowired
+    private TextRedactor textRedactor;
+
+    @Autowired
+    private PageExtractor pageExtractor;
+
+    public void annotatePdf(InputStream pdfInputStream, List<AnnotationRequest> annotations,
+                            AnnotationOptions options, OutputStream outputStream) throws IOException {
+        try (PDDocument document = loadDocument(pdfInputStream)) {
+            applyAnnotations(document, annotations, options);
+            saveDocument(document, options, outputStream);
         }
     }
 
+    /**
+     * Loads a document backed by PDFBox scratch storage, so only the configured main-memory budget
+     * of the upload is held in heap. The caller owns the returned document and must close it.
+     */
+    public PDDocument loadDocument(InputStream pdfInputStream) throws IOException {
+        long start = System.nanoTime();
+        // unbounded; only counts the bytes read
+        BoundedInputStream countingStream = BoundedInputStream.builder().setInputStream(pdfInputStream).get();
+        PDDocument document = PDDocument.load(countingStream, memoryUsageSetting);
+        annotationMetrics.recordStage(AnnotationMetrics.Stage.LOAD, start);
+        annotationMetrics.countDocumentLoaded(document.getNumberOfPages(), countingStream.getCount());
+        return document;
+    }
 
-private void applyAnnotation(PDDocument document, AnnotationRequest annotation) throws IOException {
-    logger.info("Applying annotation: {}", annotation);
+    /**
+     * Loads a document from a local file. PDFBox reads it through a random-access file source,
+     * so the file is not copied into scratch storage first.
+     */
+    public PDDocument loadDocument(File pdfFile) throws IOException {
+        long start = System.nanoTime();
+        PDDocument document = PDDocument.load(pdfFile, memoryUsageSetting);
+        annotationMetrics.recordStage(AnnotationMetrics.Stage.LOAD, start);
+        annotationMetrics.countDocumentLoaded(document.getNumberOfPages(), pdfFile.length());
+        return document;
+    }
 
-    int pageIndex = annotation.getPageNumber() - 1;
-    if (pageIndex < 0 || pageIndex >= document.getNumberOfPages()) {
-        throw new IllegalArgumentException("Invalid page number: " + annotation.getPageNumber());
+    /**
+     * Flattens all annotations into the page content, see
+     * {@link #applyAnnotations(PDDocument, List, AnnotationOptions)}.
+     */
+    public void applyAnnotations(PDDocument document, List<AnnotationRequest> annotations) throws IOException {
+        applyAnnotations(document, annotations, null);
     }
 
-    PDPage page = document.getPage(pageIndex);
-    PDRectangle pageSize = page.getMediaBox();
+    /**
+     * Applies all annotations page by page. When flattening, each touched page gets exactly one
+     * appended content stream, wrapped in its own graphics state, no matter how many annotations
+     * it carries. In {@link AnnotationOptions.Mode#NATIVE} mode the page content is left alone and
+     * each annotation becomes an annotation object in the page's /Annots array instead.
+     * Stamp templates are rendered once per call from the annotation that defines them, see
+     * {@link TemplateSources}, and shared by all pages, and so is each image.
+     * With {@link AnnotationOptions#isRedact()} the text under the annotations is first removed
+     * from each page's content by the {@link TextRedactor}. When {@link AnnotationOptions#getPages()}
+     * selects pages, embedded fonts are subset at the end of the pass: the {@link PageExtractor}
+     * writes those pages as a new document, and only the source's own save would subset them.
+     * PDFBox cannot subset a font twice, so a document annotated this way must be saved with
+     * the same options.
+     */
+    public void applyAnnotations(PDDocument document, List<AnnotationRequest> annotations,
+                                 AnnotationOptions options) throws IOException {
+        applyAnnotations(document, annotations, options, TemplateSources.of(annotations));
+    }
 
-    float pdfWidth = pageSize.getWidth();
-    float pdfHeight = pageSize.getHeight();
+    /**
+     * Applies annotations like {@link #applyAnnotations(PDDocument, List, AnnotationOptions)},
+     * with templates defined by {@code templateSources}, such as a session's sources for a delta
+     * that continues its earlier requests.
+     */
+    void applyAnnotations(PDDocument document, List<AnnotationRequest> annotations, AnnotationOptions options,
+                          TemplateSources templateSources) throws IOException {
+        long start = System.nanoTime();
+        Map<Integer, List<AnnotationRequest>> annotationsByPage = groupByPage(document, annotations);
+        FontRegistry.DocumentFonts fonts = fontRegistry.forDocument(document);
+        ImageRegistry.DocumentImages images = imageRegistry.forDocument(document);
+        Templates templates = new Templates(document, templateSources.get(options), fonts, images);
+
+        for (Map.Entry<Integer, List<AnnotationRequest>> entry : annotationsByPage.entrySet()) {
+            applyPage(document, entry.getKey(), entry.getValue(), options, fonts, images, templates);
+        }
+        if (PageExtractor.selectsPages(options)) {
+            fonts.subset();
+        }
 
-    logger.info("PDF page dimensions: {}x{}", pdfWidth, pdfHeight);
+        annotationMetrics.recordStage(AnnotationMetrics.Stage.APPLY, start);
+        annotationMetrics.countAnnotations(annotations.size());
+    }
 
-    float finalX, finalY, finalWidth, finalHeight;
-    
-    if (annotation.getCanvasWidth() != null && annotation.getCanvasHeight() != null) {
-        float canvasWidth = annotation.getCanvasWidth().floatValue();
-        float canvasHeight = annotation.getCanvasHeight().floatValue();
-        
-        logger.info("Canvas dimensions: {}x{}", canvasWidth, canvasHeight);
-        logger.info("Original canvas coordinates: x={}, y={}, w={}, h={}", 
-                   annotation.getX(), annotation.getY(), annotation.getWidth(), annotation.getHeight());
-        
-        // Calculate scale factors
-        float scaleX = pdfWidth / canvasWidth;
-        float scaleY = pdfHeight / canvasHeight;
-        
-        logger.info("Scale factors: scaleX={}, scaleY={}", scaleX, scaleY);
-        
-        // Convert coordinates
-        finalX = annotation.getX().floatValue() * scaleX;
-        finalWidth = annotation.getWidth().floatValue() * scaleX;
-        finalHeight = annotation.getHeight().floatValue() * scaleY;
-        
-        float canvasY = annotation.getY().floatValue();
-        finalY = pdfHeight - (canvasY * scaleY) - finalHeight;
-        
-    } else {
-        finalX = annotation.getX().floatValue();
-        finalY = pdfHeight - annotation.getY().floatValue() - annotation.getHeight().floatValue();
-        finalWidth = annotation.getWidth().floatValue();
-        finalHeight = annotation.getHeight().floatValue();
+    /**
+     * Applies streamed annotations the same way as
+     * {@link #applyAnnotations(PDDocument, List, AnnotationOptions)}, taking one page's bucket at
+     * a time so only that page's annotations exist as request objects. Templates are still
+     * defined by the first annotation in request order, which the buckets keep. The buckets are
+     * empty afterwards.
+     */
+    public void applyAnnotations(PDDocument document, AnnotationBuckets buckets,
+                                 AnnotationOptions options) throws IOException {
+        long start = System.nanoTime();
+        FontRegistry.DocumentFonts fonts = fontRegistry.forDocument(document);
+        ImageRegistry.DocumentImages images = imageRegistry.forDocument(document);
+        Templates templates = new Templates(document, buckets.templateSources().get(options), fonts, images);
+
+        for (int pageNumber : buckets.pageNumbers()) {
+            applyPage(document, pageNumber, buckets.take(pageNumber), options, fonts, images, templates);
+        }
+        if (PageExtractor.selectsPages(options)) {
+            fonts.subset();
+        }
+
+        annotationMetrics.recordStage(AnnotationMetrics.Stage.APPLY, start);
+        annotationMetrics.countAnnotations(buckets.size());
+    }
+
+    /**
+     * Applies the annotations of one {@link ShardedAnnotator} shard. Stamp templates are
+     * rendered from {@code templateSources} of the whole request, so every shard draws the
+     * stamps the unsharded run would. A {@code copy} is never saved itself, so its embedded
+     * fonts are subset here instead of on save; the first shard is annotated in the document
+     * that is saved, and is subset like any other pass.
+     */
+    void applyShard(PDDocument document, List<AnnotationRequest> annotations, AnnotationOptions options,
+                    TemplateSources templateSources, boolean copy) throws IOException {
+        Map<Integer, List<AnnotationRequest>> annotationsByPage = groupByPage(document, annotations);
+        FontRegistry.DocumentFonts fonts = fontRegistry.forDocument(document);
+        ImageRegistry.DocumentImages images = imageRegistry.forDocument(document);
+        Templates templates = new Templates(document, templateSources.get(options), fonts, images);
+
+        for (Map.Entry<Integer, List<AnnotationRequest>> entry : annotationsByPage.entrySet()) {
+            applyPage(document, entry.getKey(), entry.getValue(), options, fonts, images, templates);
+        }
+        if (copy || PageExtractor.selectsPages(options)) {
+            fonts.subset();
+        }
     }
 
-    logger.info("Final PDF coordinates: x={}, y={}, w={}, h={}", finalX, finalY, finalWidth, finalHeight);
+    private void applyPage(PDDocument document, int pageNumber, List<AnnotationRequest> pageAnnotations,
+                           AnnotationOptions options, FontRegistry.DocumentFonts fonts,
+                           ImageRegistry.DocumentImages images, Templates templates) throws IOException {
+        PDPage page = document.getPage(pageNumber - 1);
+        boolean nativeMode = options != null && options.getMode() == AnnotationOptions.Mode.NATIVE;
+
+        if (options != null && options.isRedact()) {
+            List<PDRectangle> areas = new ArrayList<>(pageAnnotations.size());
+            for (AnnotationRequest annotation : pageAnnotations) {
+                areas.add(toPdfRectangle(page, annotation));
+            }
+            textRedactor.redact(document, page, areas);
+        }
 
-    if (finalX < 0 || finalY < 0 || finalX + finalWidth > pdfWidth || finalY + finalHeight > pdfHeight) {
-        logger.warn("Annotation coordinates outside page bounds. Adjusting...");
-        finalX = Math.max(0, Math.min(finalX, pdfWidth - finalWidth));
-        finalY = Math.max(0, Math.min(finalY, pdfHeight - finalHeight));
-        finalWidth = Math.min(finalWidth, pdfWidth - finalX);
-        finalHeight = Math.min(finalHeight, pdfHeight - finalY);
-        logger.info("Adjusted coordinates: x={}, y={}, w={}, h={}", finalX, finalY, finalWidth, finalHeight);
+        if (nativeMode) {
+            for (AnnotationRequest annotation : pageAnnotations) {
+                addNativeAnnotation(document, page, annotation, fonts, images, templates);
+            }
+        } else {
+            try (PDPageContentStream contentStream = new PDPageContentStream(
+                    document, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
+                FillBatch batch = new FillBatch(contentStream);
+                for (AnnotationRequest annotation : pageAnnotations) {
+                    applyAnnotation(document, batch, page, annotation, fonts, images, templates);
+                }
+                batch.flush();
+            }
+        }
+
+        markUpdated(document, page);
+
+        logger.debug("Rendered {} annotations on page {}", pageAnnotations.size(), pageNumber);
+    }
+
+    /**
+     * Checks that the document can be saved with these options, so a bad request fails before
+     * the response starts streaming. Returns the pages to save, or {@code null} for all.
+     */
+    public List<Integer> validateOutput(PDDocument document, AnnotationOptions options) {
+        List<Integer> pages = pageExtractor.select(document, options != null ? options.getPages() : null);
+        if (pages != null && options.isIncremental()) {
+            throw new IllegalArgumentException("pages cannot be combined with incremental");
+        }
+        // an incremental save keeps the original revision, and the redacted text with it
+        if (options != null && options.isRedact() && options.isIncremental()) {
+            throw new IllegalArgumentException("redact cannot be combined with incremental");
+        }
+        return pages;
     }
 
-    coverOriginalText(document, page, finalX, finalY, finalWidth, finalHeight);
+    /**
+     * Saves the document. In incremental mode the original bytes are copied unchanged and only
+     * the objects flagged by {@link #markUpdated} are appended as a new revision. With
+     * {@link AnnotationOptions#getPages()} only the selected pages are written, as a new
+     * document, by the {@link PageExtractor}; "annotated" selects the pages flagged by
+     * {@link #markUpdated}.
+     */
+    public void saveDocument(PDDocument document, AnnotationOptions options,
+                             OutputStream outputStream) throws IOException {
+        long start = System.nanoTime();
+        List<Integer> pages = validateOutput(document, options);
+        CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+        if (pages != null) {
+            pageExtractor.write(document, pages, countingStream);
+        } else if (options != null && options.isIncremental()) {
+            document.saveIncremental(countingStream);
+        } else {
+            document.save(countingStream);
+        }
+        annotationMetrics.recordStage(AnnotationMetrics.Stage.SAVE, start);
+        annotationMetrics.countBytesOut(countingStream.getCount());
+    }
 
-    addStyledAnnotationText(document, page, annotation, finalX, finalY, finalWidth, finalHeight);
+    /**
+     * Flags everything annotating a page can modify: the page dictionary with its /Contents and
+     * /Annots arrays, its resource dictionaries, and the page-tree path up to the catalog that
+     * PDFBox needs to reach them during an incremental save.
+     */
+    void markUpdated(PDDocument document, PDPage page) {
+        COSDictionary pageDictionary = page.getCOSObject();
+        pageDictionary.setNeedToBeUpdated(true);
+        markUpdated(pageDictionary.getDictionaryObject(COSName.CONTENTS));
+        markUpdated(pageDictionary.getDictionaryObject(COSName.ANNOTS));
+
+        PDResources resources = page.getResources();
+        if (resources != null) {
+            COSDictionary resourcesDictionary = resources.getCOSObject();
+            resourcesDictionary.setNeedToBeUpdated(true);
+            for (COSName key : resourcesDictionary.keySet()) {
+                markUpdated(resourcesDictionary.getDictionaryObject(key));
+            }
+        }
 
-    if (annotation.getLink() != null && !annotation.getLink().trim().isEmpty()) {
-        addHyperlink(page, annotation, finalX, finalY, finalWidth, finalHeight);
+        COSBase parent = pageDictionary.getDictionaryObject(COSName.PARENT);
+        while (parent instanceof COSDictionary) {
+            COSDictionary node = (COSDictionary) parent;
+            node.setNeedToBeUpdated(true);
+            parent = node.getDictionaryObject(COSName.PARENT);
+        }
+        document.getDocumentCatalog().getCOSObject().setNeedToBeUpdated(true);
     }
-}
-    private void coverOriginalText(PDDocument document, PDPage page, 
-                                 float x, float y, float width, float height) throws IOException {
-        try (PDPageContentStream contentStream = new PDPageContentStream(
-                document, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
 
-            contentStream.setNonStrokingColor(Color.WHITE);
-            
-            contentStream.addRect(x, y, width, height);
-            contentStream.fill();
+    private static void markUpdated(COSBase object) {
+        if (object instanceof COSUpdateInfo && !(object instanceof COSStream)) {
+            ((COSUpdateInfo) object).setNeedToBeUpdated(true);
+        }
+    }
 
-            logger.info("Covered original text area at ({}, {}) with dimensions {}x{}", x, y, width, height);
+    /**
+     * Groups annotations by page number, keeping pages in first-seen order and annotations in
+     * request order. Page numbers are validated up front so nothing is drawn for a bad request.
+     */
+    private Map<Integer, List<AnnotationRequest>> groupByPage(PDDocument document,
+                                                              List<AnnotationRequest> annotations) {
+        int numberOfPages = document.getNumberOfPages();
+        Map<Integer, List<AnnotationRequest>> annotationsByPage = new LinkedHashMap<>();
+
+        for (AnnotationRequest annotation : annotations) {
+            if (TextLocator.needsLocating(annotation)) {
+                throw new IllegalArgumentException("Annotation without coordinates must be located first: "
+                        + annotation.getSelectedText());
+            }
+            Integer pageNumber = annotation.getPageNumber();
+            if (pageNumber == null || pageNumber < 1 || pageNumber > numberOfPages) {
+                throw new IllegalArgumentException("Invalid page number: " + pageNumber);
+            }
+            annotationsByPage.computeIfAbsent(pageNumber, key -> new ArrayList<>()).add(annotation);
         }
+        return annotationsByPage;
     }
-    private void addStyledAnnotationText(PDDocument document, PDPage page, AnnotationRequest annotation,
-    float x, float y, float width, float height) throws IOException {
-try (PDPageContentStream contentStream = new PDPageContentStream(
-document, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
 
-PDFont font = getFont(annotation.getFontStyle());
-float fontSize = annotation.getFontSize() != null ? annotation.getFontSize() : 12f;
+    /**
+     * Draws one annotation through the page's {@link FillBatch}: the rectangle covering the
+     * original text becomes a fill, and the text, border, stamp or image a drawing within its
+     * ink bounds.
+     */
+    private void applyAnnotation(PDDocument document, FillBatch batch, PDPage page,
+                                 AnnotationRequest annotation, FontRegistry.DocumentFonts fonts,
+                                 ImageRegistry.DocumentImages images, Templates templates) throws IOException {
+        logger.debug("Applying annotation: {}", annotation);
+
+        PDRectangle area = toPdfRectangle(page, annotation);
+        float x = area.getLowerLeftX();
+        float y = area.getLowerLeftY();
+        float width = area.getWidth();
+        float height = area.getHeight();
+
+        String template = annotation.getTemplate();
+        PDPageContentStream contentStream = batch.getContentStream();
+        if (AnnotationRequest.TYPE_IMAGE.equalsIgnoreCase(annotation.getType())) {
+            PDImageXObject image = images.get(annotation.getImageId());
+            batch.draw(x, y, width, height, () -> drawImage(contentStream, image, x, y, width, height));
+        } else if (template != null && !template.trim().isEmpty()) {
+            PDFormXObject form = templates.get(annotation, width, height);
+            // a form is clipped to its box
+            batch.draw(x, y, width, height, () -> drawTemplate(contentStream, form, x, y, width, height));
+        } else {
+            batch.fill(coverColor(annotation), x, y, width, height);
+            PDFont font = resolveFont(annotation.getFontStyle(), annotation.getSelectedText(), fonts);
+            TextLayoutEngine.TextLayout layout = layoutText(font, annotation, width, height);
+            PDRectangle bounds = inkBounds(font, annotation, layout, x, y, width, height);
+            if (bounds != null) {
+                batch.draw(bounds.getLowerLeftX(), bounds.getLowerLeftY(), bounds.getWidth(), bounds.getHeight(), () -> {
+                    contentStream.saveGraphicsState();
+                    drawStyledText(contentStream, font, annotation, layout, x, y, width, height);
+                    contentStream.restoreGraphicsState();
+                });
+            }
+        }
 
-String text = annotation.getSelectedText();
+        if (annotation.getLink() != null && !annotation.getLink().trim().isEmpty()) {
+            addHyperlink(page, annotation, x, y, width, height);
+        }
+    }
 
-float textWidth = font.getStringWidth(text) / 1000f * fontSize;
-float textHeight = font.getFontDescriptor().getCapHeight() / 1000f * fontSize;
+    /**
+     * Adds the annotation as a FreeText annotation, or a Stamp for images, whose appearance
+     * stream is the same drawing the flattened mode puts into the page content. Templated
+     * annotations share one appearance stream; viewers scale it to each annotation's rectangle.
+     */
+    private void addNativeAnnotation(PDDocument document, PDPage page, AnnotationRequest annotation,
+                                     FontRegistry.DocumentFonts fonts, ImageRegistry.DocumentImages images,
+                                     Templates templates) throws IOException {
+        PDRectangle area = toPdfRectangle(page, annotation);
+        float width = area.getWidth();
+        float height = area.getHeight();
+
+        String template = annotation.getTemplate();
+        PDFormXObject form;
+        if (template != null && !template.trim().isEmpty()) {
+            form = templates.get(annotation, width, height);
+        } else {
+            form = renderForm(document, annotation, fonts, images, width, height);
+        }
 
-float descent = font.getFontDescriptor().getDescent() / 1000f * fontSize;
-float textX = x;
-float textY = y + (height - textHeight) / 2f - descent;
+        PDAnnotationMarkup markup;
+        if (AnnotationRequest.TYPE_IMAGE.equalsIgnoreCase(annotation.getType())) {
+            markup = new PDAnnotationRubberStamp();
+        } else {
+            markup = new PDAnnotationMarkup();
+            markup.getCOSObject().setName(COSName.SUBTYPE, PDAnnotationMarkup.SUB_TYPE_FREETEXT);
+            markup.setContents(annotation.getSelectedText());
+            markup.setDefaultAppearance(defaultAppearance(annotation));
+        }
+        markup.setRectangle(area);
+        markup.setPrinted(true);
+        markup.setCreationDate(Calendar.getInstance());
 
-if (textWidth < width) {
-textX = x + (width - textWidth) / 2f;
-}
+        PDAppearanceDictionary appearance = new PDAppearanceDictionary();
+        appearance.setNormalAppearance(new PDAppearanceStream(form.getCOSObject()));
+        markup.setAppearance(appearance);
+        page.getAnnotations().add(markup);
 
-PDColor textColor = parseColor(annotation.getColor());
+        if (annotation.getLink() != null && !annotation.getLink().trim().isEmpty()) {
+            addHyperlink(page, annotation, area.getLowerLeftX(), area.getLowerLeftY(), width, height);
+        }
+    }
 
-if (annotation.getBackgroundColor() != null && !annotation.getBackgroundColor().trim().isEmpty()) {
-PDColor backgroundColor = parseColor(annotation.getBackgroundColor());
-contentStream.setNonStrokingColor(backgroundColor);
-contentStream.addRect(x, y, width, height);
-contentStream.fill();
-}
+    /**
+     * The /DA string FreeText requires; viewers only fall back to it when they regenerate the
+     * appearance after the text was edited.
+     */
+    private String defaultAppearance(AnnotationRequest annotation) {
+        float[] rgb = parseColor(annotation.getColor()).getComponents();
+        float fontSize = annotation.getFontSize() != null ? annotation.getFontSize() : 12f;
+        return String.format(Locale.ROOT, "/Helv %.1f Tf %.3f %.3f %.3f rg", fontSize, rgb[0], rgb[1], rgb[2]);
+    }
 
-float leading = 1.5f * fontSize; 
-float cursorX = x + 2;
-float cursorY = y + height - fontSize; 
+    /**
+     * Renders one annotation into a Form XObject of the given size, with its own resources. Used
+     * for stamp templates, where every page that places it only references the one shared
+     * stream, and as the appearance stream of native annotations.
+     */
+    private PDFormXObject renderForm(PDDocument document, AnnotationRequest annotation,
+                                     FontRegistry.DocumentFonts fonts, ImageRegistry.DocumentImages images,
+                                     float width, float height) throws IOException {
+        PDFormXObject form = new PDFormXObject(document);
+        form.setBBox(new PDRectangle(width, height));
+        form.setResources(new PDResources());
+        try (PDPageContentStream contentStream = new PDPageContentStream(
+                document, form, form.getStream().createOutputStream(COSName.FLATE_DECODE))) {
+            if (AnnotationRequest.TYPE_IMAGE.equalsIgnoreCase(annotation.getType())) {
+                drawImage(contentStream, images.get(annotation.getImageId()), 0, 0, width, height);
+            } else {
+                coverOriginalText(contentStream, annotation, 0, 0, width, height);
+                PDFont font = resolveFont(annotation.getFontStyle(), annotation.getSelectedText(), fonts);
+                addStyledAnnotationText(contentStream, font, annotation, 0, 0, width, height);
+            }
+        }
+        logger.debug("Rendered form for '{}' at {}x{}", annotation.getTemplate(), width, height);
+        return form;
+    }
+
+    /**
+     * Places a rendered stamp with a single {@code Do}, scaled from the template's box to this
+     * placement's box.
+     */
+    private void drawTemplate(PDPageContentStream contentStream, PDFormXObject stamp,
+                              float x, float y, float width, float height) throws IOException {
+        PDRectangle box = stamp.getBBox();
+        if (box.getWidth() <= 0 || box.getHeight() <= 0) {
+            return;
+        }
+        contentStream.saveGraphicsState();
+        contentStream.transform(new Matrix(width / box.getWidth(), 0, 0, height / box.getHeight(), x, y));
+        contentStream.drawForm(stamp);
+        contentStream.restoreGraphicsState();
+    }
+
+    /**
+     * Draws an image as large as fits the box without distorting it, centred. The original
+     * content is not covered, so transparent signatures keep the line they are placed on.
+     */
+    private void drawImage(PDPageContentStream contentStream, PDImageXObject image,
+                           float x, float y, float width, float height) throws IOException {
+        float scale = Math.min(width / image.getWidth(), height / image.getHeight());
+        float drawnWidth = image.getWidth() * scale;
+        float drawnHeight = image.getHeight() * scale;
+        contentStream.drawImage(image, x + (width - drawnWidth) / 2, y + (height - drawnHeight) / 2,
+                drawnWidth, drawnHeight);
+    }
+
+    /**
+     * Converts the annotation's canvas (top-left origin) coordinates into PDF user space,
+     * clamped to the page's media box.
+     */
+    PDRectangle toPdfRectangle(PDPage page, AnnotationRequest annotation) {
+        PDRectangle pageSize = page.getMediaBox();
+
+        float pdfWidth = pageSize.getWidth();
+        float pdfHeight = pageSize.getHeight();
+
+        float finalX, finalY, finalWidth, finalHeight;
 
-contentStream.beginText();
-contentStream.setFont(font, fontSize);
-contentStream.setNonStrokingColor(textColor);
-contentStream.newLineAtOffset(cursorX, cursorY);
+        if (annotation.getCanvasWidth() != null && annotation.getCanvasHeight() != null) {
+            float canvasWidth = annotation.getCanvasWidth().floatValue();
+            float canvasHeight = annotation.getCanvasHeight().floatValue();
 
-String[] words = text.split(" ");
-StringBuilder lineBuilder = new StringBuilder();
+            // Calculate scale factors
+            float scaleX = pdfWidth / canvasWidth;
+            float scaleY = pdfHeight / canvasHeight;
 
-for (String word : words) {
-    String testLine = lineBuilder.length() == 0 ? word : lineBuilder + " " + word;
-    float size = font.getStringWidth(testLine) / 1000f * fontSize;
+            // Convert coordinates
+            finalX = annotation.getX().floatValue() * scaleX;
+            finalWidth = annotation.getWidth().floatValue() * scaleX;
+            finalHeight = annotation.getHeight().floatValue() * scaleY;
 
-    if (cursorY < y) break;
+            float canvasY = annotation.getY().floatValue();
+            finalY = pdfHeight - (canvasY * scaleY) - finalHeight;
+
+        } else {
+            finalX = annotation.getX().floatValue();
+            finalY = pdfHeight - annotation.getY().floatValue() - annotation.getHeight().floatValue();
+            finalWidth = annotation.getWidth().floatValue();
+            finalHeight = annotation.getHeight().floatValue();
+        }
+
+        if (finalX < 0 || finalY < 0 || finalX + finalWidth > pdfWidth || finalY + finalHeight > pdfHeight) {
+            logger.debug("Annotation coordinates outside page bounds. Adjusting...");
+            finalX = Math.max(0, Math.min(finalX, pdfWidth - finalWidth));
+            finalY = Math.max(0, Math.min(finalY, pdfHeight - finalHeight));
+            finalWidth = Math.min(finalWidth, pdfWidth - finalX);
+            finalHeight = Math.min(finalHeight, pdfHeight - finalY);
+        }
 
-    if (size > width - 4) { 
-        contentStream.showText(lineBuilder.toString());
-        contentStream.newLineAtOffset(0, -leading);
-        cursorY -= leading;
-        lineBuilder = new StringBuilder(word);
-    } else {
-        lineBuilder = new StringBuilder(testLine);
+        logger.debug("Final PDF coordinates: x={}, y={}, w={}, h={}", finalX, finalY, finalWidth, finalHeight);
+        return new PDRectangle(finalX, finalY, finalWidth, finalHeight);
     }
-}
 
-// Draw the remaining line
-if (cursorY >= y && lineBuilder.length() > 0) {
-    contentStream.showText(lineBuilder.toString());
-}
-contentStream.endText();
+    private void coverOriginalText(PDPageContentStream contentStream, AnnotationRequest annotation,
+                                   float x, float y, float width, float height) throws IOException {
+        contentStream.setNonStrokingColor(coverColor(annotation));
 
+        contentStream.addRect(x, y, width, height);
+        contentStream.fill();
+    }
 
-// Optional: Border
-if (annotation.getBorderColor() != null && !annotation.getBorderColor().trim().isEmpty()) {
-PDColor borderColor = parseColor(annotation.getBorderColor());
-contentStream.setStrokingColor(borderColor);
-contentStream.setLineWidth(annotation.getBorderWidth() != null ? annotation.getBorderWidth() : 1f);
-contentStream.addRect(x, y, width, height);
-contentStream.stroke();
-}
+    /**
+     * The annotation's background colour, or white. The background used to be painted over a
+     * white cover of the same box; painting only the background looks the same.
+     */
+    private PDColor coverColor(AnnotationRequest annotation) {
+        if (annotation.getBackgroundColor() != null && !annotation.getBackgroundColor().trim().isEmpty()) {
+            return parseColor(annotation.getBackgroundColor());
+        }
+        return WHITE;
+    }
 
-logger.info("Added styled text '{}' at ({}, {}) with font '{}' and size {}",
-text, textX, textY, annotation.getFontStyle(), fontSize);
-}
-}
+    void addStyledAnnotationText(PDPageContentStream contentStream, PDFont font, AnnotationRequest annotation,
+                                 float x, float y, float width, float height) throws IOException {
+        TextLayoutEngine.TextLayout layout = layoutText(font, annotation, width, height);
+        drawStyledText(contentStream, font, annotation, layout, x, y, width, height);
+    }
+
+    private TextLayoutEngine.TextLayout layoutText(PDFont font, AnnotationRequest annotation,
+                                                   float width, float height) throws IOException {
+        float fontSize = annotation.getFontSize() != null ? annotation.getFontSize() : 12f;
+        boolean autoFit = Boolean.TRUE.equals(annotation.getAutoFit());
+        if (autoFit && annotation.getFontSize() == null) {
+            // without an explicit size, grow as well as shrink to fill the box
+            fontSize = TextLayoutEngine.MAX_AUTO_FIT_SIZE;
+        }
+        return textLayoutEngine.layout(annotation.getSelectedText(), font, fontSize, width - 4, height, autoFit);
+    }
+
+    /**
+     * Where {@link #drawStyledText} can leave ink, or {@code null} if it draws nothing. Lines are
+     * wrapped to the box less a 2 point margin on each side and only as many as fit are kept,
+     * but glyphs of the first and last line may reach past the top and bottom, as far as the
+     * font's bounding box allows, and a border straddles the box edge.
+     */
+    private PDRectangle inkBounds(PDFont font, AnnotationRequest annotation, TextLayoutEngine.TextLayout layout,
+                                  float x, float y, float width, float height) throws IOException {
+        boolean border = annotation.getBorderColor() != null && !annotation.getBorderColor().trim().isEmpty();
+        if (layout.getLines().isEmpty() && !border) {
+            return null;
+        }
+        float left = x;
+        float bottom = y;
+        float right = x + width;
+        float top = y + height;
+        if (!layout.getLines().isEmpty()) {
+            BoundingBox glyphs = font.getBoundingBox();
+            float scale = layout.getFontSize() / 1000f;
+            float firstBaseline = y + height - layout.getFontSize();
+            float lastBaseline = firstBaseline - (layout.getLines().size() - 1) * layout.getLeading();
+            left = Math.min(left, x + 2 + glyphs.getLowerLeftX() * scale);
+            bottom = Math.min(bottom, lastBaseline + glyphs.getLowerLeftY() * scale);
+            top = Math.max(top, firstBaseline + glyphs.getUpperRightY() * scale);
+        }
+        if (border) {
+            float half = (annotation.getBorderWidth() != null ? annotation.getBorderWidth() : 1f) / 2;
+            left -= half;
+            bottom -= half;
+            right += half;
+            top += half;
+        }
+        return new PDRectangle(left, bottom, right - left, top - bottom);
+    }
+
+    private void drawStyledText(PDPageContentStream contentStream, PDFont font, AnnotationRequest annotation,
+                                TextLayoutEngine.TextLayout layout,
+                                float x, float y, float width, float height) throws IOException {
+        String text = annotation.getSelectedText();
+
+        PDColor textColor = parseColor(annotation.getColor());
+
+        if (!layout.getLines().isEmpty()) {
+            contentStream.beginText();
+            contentStream.setFont(font, layout.getFontSize());
+            contentStream.setNonStrokingColor(textColor);
+            contentStream.newLineAtOffset(x + 2, y + height - layout.getFontSize());
+            for (int i = 0; i < layout.getLines().size(); i++) {
+                if (i > 0) {
+                    contentStream.newLineAtOffset(0, -layout.getLeading());
+                }
+                contentStream.showText(layout.getLines().get(i));
+            }
+            contentStream.endText();
+        }
+
+        // Optional: Border
+        if (annotation.getBorderColor() != null && !annotation.getBorderColor().trim().isEmpty()) {
+            PDColor borderColor = parseColor(annotation.getBorderColor());
+            contentStream.setStrokingColor(borderColor);
+            contentStream.setLineWidth(annotation.getBorderWidth() != null ? annotation.getBorderWidth() : 1f);
+            contentStream.addRect(x, y, width, height);
+            contentStream.stroke();
+        }
+
+        logger.debug("Added styled text '{}' at ({}, {}) with font '{}' and size {}",
+                text, x, y, annotation.getFontStyle(), layout.getFontSize());
+    }
 
 
     private void addHyperlink(PDPage page, AnnotationRequest annotation, 
@@ -223,10 +666,47 @@ text, textX, textY, annotation.getFontStyle(), fontSize);
 
         page.getAnnotations().add(linkAnnotation);
 
-        logger.info("Added hyperlink '{}' at ({}, {})", annotation.getLink(), normalizedX, normalizedY);
+        logger.debug("Added hyperlink '{}' at ({}, {})", annotation.getLink(), normalizedX, normalizedY);
+    }
+
+    /**
+     * Picks the font for an annotation: a registered TrueType font when {@code fontStyle} names
+     * one, otherwise the matching standard font. Text the standard font cannot encode (anything
+     * outside WinAnsi) switches to the configured fallback font, if there is one.
+     */
+    private PDFont resolveFont(String fontStyle, String text, FontRegistry.DocumentFonts fonts) throws IOException {
+        PDFont registered = fonts.get(fontStyle);
+        if (registered != null) {
+            return registered;
+        }
+        PDFont standard = getFont(fontStyle);
+        if (!canEncode(standard, text)) {
+            PDFont fallback = fonts.fallback();
+            if (fallback != null) {
+                return fallback;
+            }
+        }
+        return standard;
     }
 
-    private PDFont getFont(String fontStyle) {
+    private static boolean canEncode(PDFont font, String text) {
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            char c = text.charAt(i);
+            ascii = c >= 0x20 && c < 0x7f || c == '\n' || c == '\r';
+        }
+        if (ascii) {
+            return true;
+        }
+        try {
+            font.encode(text.replace("\r", "").replace("\n", ""));
+            return true;
+        } catch (IllegalArgumentException | IOException e) {
+            return false;
+        }
+    }
+
+    PDFont getFont(String fontStyle) {
         if (fontStyle == null || fontStyle.trim().isEmpty()) {
             return PDType1Font.HELVETICA;
         }
@@ -260,7 +740,7 @@ text, textX, textY, annotation.getFontStyle(), fontSize);
         }
     }
 
-    private PDColor parseColor(String colorString) {
+    PDColor parseColor(String colorString) {
         try {
             if (colorString == null || colorString.trim().isEmpty()) {
                 return new PDColor(new float[]{0, 0, 0}, PDDeviceRGB.INSTANCE); // Default to black
@@ -321,4 +801,45 @@ text, textX, textY, annotation.getFontStyle(), fontSize);
             default: return null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The stamp templates of one pass over a document, each rendered on first use from the
+     * annotation that defines it, at that annotation's size.
+     */
+    private final class Templates {
+
+        private final PDDocument document;
+        private final Map<String, AnnotationRequest> sources;
+        private final FontRegistry.DocumentFonts fonts;
+        private final ImageRegistry.DocumentImages images;
+        private final Map<String, PDFormXObject> forms = new HashMap<>();
+
+        private Templates(PDDocument document, Map<String, AnnotationRequest> sources,
+                          FontRegistry.DocumentFonts fonts, ImageRegistry.DocumentImages images) {
+            this.document = document;
+            this.sources = sources;
+            this.fonts = fonts;
+            this.images = images;
+        }
+
+        /**
+         * The form of the annotation's template. An annotation without a recorded source
+         * defines the template itself, at its own {@code width} and {@code height}.
+         */
+        private PDFormXObject get(AnnotationRequest annotation, float width, float height) throws IOException {
+            String template = annotation.getTemplate();
+            PDFormXObject form = forms.get(template);
+            if (form == null) {
+                AnnotationRequest source = sources.get(template);
+                if (source != null && source != annotation) {
+                    PDRectangle area = toPdfRectangle(document.getPage(source.getPageNumber() - 1), source);
+                    form = renderForm(document, source, fonts, images, area.getWidth(), area.getHeight());
+                } else {
+                    form = renderForm(document, annotation, fonts, images, width, height);
+                }
+                forms.put(template, form);
+            }
+            return form;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A uniform grid over a page for finding the rectangles that overlap a query box. Each
+ * rectangle is listed in every cell it covers, so a query only looks at the rectangles near it
+ * instead of all of them. Rectangles can be added at any time, each with a value. Rectangles
+ * only overlap when they share area; touching edges do not count. Not thread-safe.
+ *
+ * @param <T> the value stored with each rectangle
+ */
+final class RectIndex<T> {
+
+    // about an inch, so a line of words falls into a handful of cells
+    private static final float DEFAULT_CELL_SIZE = 64f;
+
+    private static final int MAX_CELLS_PER_SIDE = 64;
+
+    private final float originX;
+    private final float originY;
+    private final float cellSize;
+    // cells beyond the last one are folded into it, so huge boxes cost no more than the grid
+    private final int lastColumn;
+    private final int lastRow;
+    private final Map<Long, List<Entry<T>>> cells = new HashMap<>();
+    private int size;
+
+    // stamped on entries during a query so an entry listed in several cells is seen once
+    private int query;
+
+    RectIndex() {
+        originX = 0;
+        originY = 0;
+        cellSize = DEFAULT_CELL_SIZE;
+        lastColumn = Integer.MAX_VALUE;
+        lastRow = Integer.MAX_VALUE;
+    }
+
+    private RectIndex(PDRectangle page, int side) {
+        originX = page.getLowerLeftX();
+        originY = page.getLowerLeftY();
+        cellSize = Math.max(Math.max(page.getWidth(), page.getHeight()), 1f) / side;
+        lastColumn = side - 1;
+        lastRow = side - 1;
+    }
+
+    /**
+     * An index of a fixed set of rectangles on a page, with about as many cells as there are
+     * rectangles, so a lookup for a glyph-sized box stays cheap no matter how many rectangles
+     * the page has. Cells are clamped to the page, so boxes reaching far off it are still only
+     * looked up in the cells along its edge.
+     */
+    static RectIndex<PDRectangle> of(PDRectangle page, List<PDRectangle> rectangles) {
+        int side = Math.max(1, Math.min(MAX_CELLS_PER_SIDE, (int) Math.ceil(Math.sqrt(rectangles.size()))));
+        RectIndex<PDRectangle> index = new RectIndex<>(page, side);
+        for (PDRectangle rectangle : rectangles) {
+            index.add(rectangle.getLowerLeftX(), rectangle.getLowerLeftY(), rectangle.getWidth(),
+                    rectangle.getHeight(), rectangle);
+        }
+        return index;
+    }
+
+    void add(float x, float y, float width, float height, T value) {
+        Entry<T> entry = new Entry<>(x, y, x + width, y + height, value, size);
+        for (int column = column(x); column <= column(entry.right); column++) {
+            for (int row = row(y); row <= row(entry.top); row++) {
+                cells.computeIfAbsent(key(column, row), key -> new ArrayList<>()).add(entry);
+            }
+        }
+        size++;
+    }
+
+    /**
+     * The values of the rectangles overlapping the given one, in the order they were added.
+     */
+    List<T> overlapping(float x, float y, float width, float height) {
+        List<Entry<T>> found = new ArrayList<>();
+        visit(x, y, width, height, entry -> {
+            found.add(entry);
+            return false;
+        });
+        found.sort((a, b) -> Integer.compare(a.order, b.order));
+        List<T> values = new ArrayList<>(found.size());
+        found.forEach(entry -> values.add(entry.value));
+        return values;
+    }
+
+    /**
+     * Whether any rectangle overlaps the given one.
+     */
+    boolean anyOverlapping(float x, float y, float width, float height) {
+        return visit(x, y, width, height, entry -> true);
+    }
+
+    /**
+     * Whether any rectangle overlapping the given one has a value matching {@code condition}.
+     */
+    boolean anyOverlapping(float x, float y, float width, float height, Predicate<T> condition) {
+        return visit(x, y, width, height, entry -> condition.test(entry.value));
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        cells.clear();
+        size = 0;
+    }
+
+    /**
+     * Calls {@code visitor} once for each overlapping entry until it returns {@code true}.
+     */
+    private boolean visit(float x, float y, float width, float height, Predicate<Entry<T>> visitor) {
+        float right = x + width;
+        float top = y + height;
+        int stamp = ++query;
+        for (int column = column(x); column <= column(right); column++) {
+            for (int row = row(y); row <= row(top); row++) {
+                List<Entry<T>> entries = cells.get(key(column, row));
+                if (entries == null) {
+                    continue;
+                }
+                for (Entry<T> entry : entries) {
+                    if (entry.seen == stamp) {
+                        continue;
+                    }
+                    entry.seen = stamp;
+                    if (entry.x < right && x < entry.right && entry.y < top && y < entry.top
+                            && visitor.test(entry)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private int column(float x) {
+        return clamp((x - originX) / cellSize, lastColumn);
+    }
+
+    private int row(float y) {
+        return clamp((y - originY) / cellSize, lastRow);
+    }
+
+    private int clamp(float cell, int last) {
+        if (last == Integer.MAX_VALUE) {
+            return (int) Math.floor(cell);
+        }
+        return Math.max(0, Math.min(last, (int) cell));
+    }
+
+    private static long key(int column, int row) {
+        return ((long) column << 32) | (row & 0xffffffffL);
+    }
+
+    private static final class Entry<V> {
+
+        private final float x;
+        private final float y;
+        private final float right;
+        private final float top;
+        private final V value;
+        private final int order;
+        private int seen;
+
+        private Entry(float x, float y, float right, float top, V value, int order) {
+            this.x = x;
+            this.y = y;
+            this.right = right;
+            this.top = top;
+            this.value = value;
+            this.order = order;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Two-tier cache of rendered page images, laid out like {@link ResultCache}: an in-memory LRU
+ * bounded by bytes in front of a directory bounded by size, where the least recently used files
+ * are deleted first. Keys already identify the document, page, scale and format, so entries
+ * never go stale.
+ */
+@Component
+public class RenderCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenderCache.class);
+
+    private static final String SUFFIX = ".img";
+
+    @Value("${pdf.render.dir:${java.io.tmpdir}/pdf-annotation/renders}")
+    private String directory;
+
+    @Value("${pdf.render.memory-max-bytes:64MB}")
+    private DataSize memoryMaxBytes;
+
+    @Value("${pdf.render.disk-max-bytes:1GB}")
+    private DataSize diskMaxBytes;
+
+    private Path root;
+
+    // Least recently used first; guarded by itself
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Files.createDirectories(Paths.get(directory));
+        diskBytes.set(evictFromDisk());
+        logger.info("Render cache at {} ({} bytes on disk)", root, diskBytes.get());
+    }
+
+    /**
+     * Looks up an image, memory first, then disk. Returns {@code null} on a miss.
+     */
+    public byte[] get(String key) {
+        synchronized (memory) {
+            byte[] data = memory.get(key);
+            if (data != null) {
+                return data;
+            }
+        }
+
+        Path file = root.resolve(key + SUFFIX);
+        try {
+            byte[] data = Files.readAllBytes(file);
+            // last-modified time doubles as the LRU timestamp
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            remember(key, data);
+            return data;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.warn("Failed to read cached render {}", key, e);
+            return null;
+        }
+    }
+
+    public void put(String key, byte[] data) {
+        remember(key, data);
+        try {
+            Path temp = Files.createTempFile(root, key, ".tmp");
+            try {
+                Files.write(temp, data);
+                Files.move(temp, root.resolve(key + SUFFIX),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            if (diskBytes.addAndGet(data.length) > diskMaxBytes.toBytes()) {
+                diskBytes.set(evictFromDisk());
+            }
+        } catch (IOException e) {
+            // the image is still served and kept in memory
+            logger.warn("Failed to write cached render {}", key, e);
+        }
+    }
+
+    private void remember(String key, byte[] data) {
+        synchronized (memory) {
+            byte[] previous = memory.put(key, data);
+            memoryBytes += data.length - (previous != null ? previous.length : 0);
+
+            Iterator<byte[]> iterator = memory.values().iterator();
+            while (memoryBytes > memoryMaxBytes.toBytes() && iterator.hasNext()) {
+                memoryBytes -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the directory is below 90% of its budget.
+     *
+     * @return the remaining size of the cache directory
+     */
+    private synchronized long evictFromDisk() throws IOException {
+        List<DiskEntry> entries = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> listing = Files.list(root)) {
+            for (Path file : (Iterable<Path>) listing::iterator) {
+                if (!file.getFileName().toString().endsWith(SUFFIX)) {
+                    continue;
+                }
+                try {
+                    long size = Files.size(file);
+                    entries.add(new DiskEntry(file, Files.getLastModifiedTime(file), size));
+                    total += size;
+                } catch (NoSuchFileException e) {
+                    // evicted concurrently
+                }
+            }
+        }
+
+        if (total <= diskMaxBytes.toBytes()) {
+            return total;
+        }
+        long target = diskMaxBytes.toBytes() / 10 * 9;
+        entries.sort(Comparator.comparing(DiskEntry::lastModified));
+        for (DiskEntry entry : entries) {
+            if (total <= target) {
+                break;
+            }
+            if (Files.deleteIfExists(entry.file())) {
+                total -= entry.size();
+            }
+        }
+        logger.info("Evicted render cache down to {} bytes", total);
+        return total;
+    }
+
+    private record DiskEntry(Path file, FileTime lastModified, long size) {}
+}
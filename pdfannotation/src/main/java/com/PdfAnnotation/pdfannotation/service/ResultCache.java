@@ -0,0 +1,355 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Two-tier cache of annotated PDFs keyed by a hash of the input document and a canonical form of
+ * the annotation request. Small results live in an in-memory LRU; every result is also written
+ * to a directory that several nodes may share, bounded by size with least-recently-used files
+ * deleted first.
+ */
+@Component
+public class ResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResultCache.class);
+
+    private static final String SUFFIX = ".pdf";
+
+    // Sorted properties and map keys give the same bytes for equal requests
+    private static final ObjectMapper CANONICAL_MAPPER = JsonMapper.builder()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .build();
+
+    @Value("${pdf.result-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${pdf.result-cache.dir:${java.io.tmpdir}/pdf-annotation/results}")
+    private String directory;
+
+    @Value("${pdf.result-cache.memory-max-bytes:64MB}")
+    private DataSize memoryMaxBytes;
+
+    @Value("${pdf.result-cache.memory-max-entry-bytes:4MB}")
+    private DataSize memoryMaxEntryBytes;
+
+    @Value("${pdf.result-cache.disk-max-bytes:2GB}")
+    private DataSize diskMaxBytes;
+
+    private Path root;
+
+    // Least recently used first; guarded by itself
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Files.createDirectories(Paths.get(directory));
+        diskBytes.set(evictFromDisk());
+        logger.info("Result cache at {} ({} bytes on disk)", root, diskBytes.get());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the hex SHA-256 of a stream, reading it to the end.
+     */
+    public static String hash(InputStream inputStream) throws IOException {
+        MessageDigest digest = DocumentStore.sha256();
+        try (DigestInputStream digestStream = new DigestInputStream(inputStream, digest)) {
+            digestStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Cache key for annotating the document with the given hash. Annotation order is part of the
+     * key because later annotations are drawn over earlier ones.
+     */
+    public String key(String documentHash, List<AnnotationRequest> annotations, AnnotationOptions options)
+            throws IOException {
+        MessageDigest digest = DocumentStore.sha256();
+        digest.update(documentHash.getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) '\n');
+        digest.update(CANONICAL_MAPPER.writeValueAsBytes(annotations));
+        digest.update((byte) '\n');
+        digest.update(CANONICAL_MAPPER.writeValueAsBytes(options != null ? options : new AnnotationOptions()));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Looks up a result, memory first, then disk. Returns {@code null} on a miss.
+     */
+    public CachedResult get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        synchronized (memory) {
+            byte[] data = memory.get(key);
+            if (data != null) {
+                return new CachedResult(data, null, data.length);
+            }
+        }
+
+        Path file = root.resolve(key + SUFFIX);
+        FileChannel channel = null;
+        try {
+            // held open until the result is written, so eviction by another node in between
+            // cannot cut the response short after its length was sent
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            long size = channel.size();
+            // last-modified time doubles as the LRU timestamp shared by all nodes
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            if (size <= memoryMaxEntryBytes.toBytes()) {
+                byte[] data = readFully(channel, (int) size);
+                channel.close();
+                remember(key, data);
+                return new CachedResult(data, null, data.length);
+            }
+            return new CachedResult(null, channel, size);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.warn("Failed to read cached result {}", key, e);
+            closeQuietly(channel);
+            return null;
+        }
+    }
+
+    private static byte[] readFully(FileChannel channel, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // read until the buffer is full
+        }
+        return buffer.position() == size ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close cached result", e);
+        }
+    }
+
+    /**
+     * Starts writing a result for {@code key}. The entry becomes visible only after
+     * {@link PendingResult#commit()}; closing an uncommitted result discards it.
+     */
+    public PendingResult begin(String key) throws IOException {
+        if (!enabled) {
+            return new PendingResult(key, null, OutputStream.nullOutputStream());
+        }
+        Path temp = Files.createTempFile(root, key, ".tmp");
+        return new PendingResult(key, temp, Files.newOutputStream(temp));
+    }
+
+    private void remember(String key, byte[] data) {
+        if (data.length > memoryMaxEntryBytes.toBytes()) {
+            return;
+        }
+        synchronized (memory) {
+            byte[] previous = memory.put(key, data);
+            memoryBytes += data.length - (previous != null ? previous.length : 0);
+
+            Iterator<byte[]> iterator = memory.values().iterator();
+            while (memoryBytes > memoryMaxBytes.toBytes() && iterator.hasNext()) {
+                memoryBytes -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    private void store(String key, Path temp) throws IOException {
+        long size = Files.size(temp);
+        Files.move(temp, root.resolve(key + SUFFIX),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        if (size <= memoryMaxEntryBytes.toBytes()) {
+            remember(key, Files.readAllBytes(root.resolve(key + SUFFIX)));
+        }
+        if (diskBytes.addAndGet(size) > diskMaxBytes.toBytes()) {
+            diskBytes.set(evictFromDisk());
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the directory is below 90% of its budget.
+     * Rescans the directory because other nodes may have added or removed entries.
+     *
+     * @return the remaining size of the cache directory
+     */
+    private synchronized long evictFromDisk() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(root)) {
+            listing.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).forEach(files::add);
+        }
+
+        long total = 0;
+        List<DiskEntry> entries = new ArrayList<>(files.size());
+        for (Path file : files) {
+            try {
+                long size = Files.size(file);
+                entries.add(new DiskEntry(file, Files.getLastModifiedTime(file), size));
+                total += size;
+            } catch (NoSuchFileException e) {
+                // evicted concurrently by another node
+            }
+        }
+
+        long target = diskMaxBytes.toBytes() / 10 * 9;
+        if (total <= diskMaxBytes.toBytes()) {
+            return total;
+        }
+
+        entries.sort(Comparator.comparing(DiskEntry::lastModified));
+        for (DiskEntry entry : entries) {
+            if (total <= target) {
+                break;
+            }
+            try {
+                if (Files.deleteIfExists(entry.file())) {
+                    total -= entry.size();
+                }
+            } catch (IOException e) {
+                // still open for a response on a file system that cannot delete open files
+                logger.debug("Could not evict {}", entry.file(), e);
+            }
+        }
+        logger.info("Evicted result cache down to {} bytes", total);
+        return total;
+    }
+
+    private record DiskEntry(Path file, FileTime lastModified, long size) {}
+
+    /**
+     * A cache hit, held either in memory or as a file on disk that is already open. Writing the
+     * result closes the file; a result that is never written should be closed instead.
+     */
+    public static final class CachedResult implements Closeable {
+
+        private final byte[] data;
+        private final FileChannel channel;
+        private final long size;
+
+        private CachedResult(byte[] data, FileChannel channel, long size) {
+            this.data = data;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public void writeTo(OutputStream outputStream) throws IOException {
+            if (data != null) {
+                outputStream.write(data);
+                return;
+            }
+            try (FileChannel source = channel) {
+                WritableByteChannel target = Channels.newChannel(outputStream);
+                long position = 0;
+                while (position < size) {
+                    long transferred = source.transferTo(position, size - position, target);
+                    if (transferred <= 0) {
+                        throw new IOException("Cached result ended after " + position + " of " + size + " bytes");
+                    }
+                    position += transferred;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * A result being written to a temporary file next to the cache entries.
+     */
+    public final class PendingResult implements Closeable {
+
+        private final String key;
+        private final Path temp;
+        private final OutputStream outputStream;
+        private boolean committed;
+
+        private PendingResult(String key, Path temp, OutputStream outputStream) {
+            this.key = key;
+            this.temp = temp;
+            this.outputStream = outputStream;
+        }
+
+        public OutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        public void commit() throws IOException {
+            outputStream.close();
+            if (temp != null) {
+                store(key, temp);
+            }
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                outputStream.close();
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,549 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.cos.COSUpdateInfo;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Annotates one large document on several threads. A {@link PDDocument} cannot be shared
+ * between threads, so the annotated pages are split into contiguous page ranges with about the
+ * same number of annotations each, and every range but the first is annotated in its own copy
+ * of the document, loaded from the same file. The first range is annotated directly in the
+ * document that is returned, and the other shards' pages are then copied into it in page order.
+ *
+ * <p>Copying a page takes only what annotating it changed: objects of the original file that a
+ * shard did not modify are replaced by the returned document's own copies of them, so fonts,
+ * images and resource dictionaries the pages share stay shared instead of being duplicated once
+ * per shard. New streams are copied still encoded, and identical ones, such as an image or stamp
+ * template every shard embedded, are written once. Link annotations come along with the page's
+ * /Annots array.
+ */
+@Component
+public class ShardedAnnotator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedAnnotator.class);
+
+    // Top-level objects that are never copied out of a shard, only pointed at in the result
+    private static final Set<COSName> STRUCTURE_TYPES = Set.of(COSName.PAGE, COSName.PAGES, COSName.CATALOG);
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Autowired
+    private MemoryUsageSetting memoryUsageSetting;
+
+    @Autowired
+    private AnnotationMetrics annotationMetrics;
+
+    @Value("${pdf.shards.parallelism:0}")
+    private int parallelism;
+
+    @Value("${pdf.shards.min-annotations-per-shard:500}")
+    private int minAnnotationsPerShard;
+
+    private int threads;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "pdf-shard-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Shard pool: {} workers", threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Loads the file, annotates it and saves it, see {@link #annotate(File, List, AnnotationOptions)}.
+     */
+    public void annotatePdf(File pdfFile, List<AnnotationRequest> annotations, AnnotationOptions options,
+                            OutputStream outputStream) throws IOException {
+        try (PDDocument document = annotate(pdfFile, annotations, options)) {
+            pdfAnnotationService.saveDocument(document, options, outputStream);
+        }
+    }
+
+    /**
+     * Loads the file and applies the annotations shard by shard. The result is what
+     * {@link PdfAnnotationService#applyAnnotations(PDDocument, List, AnnotationOptions)} would
+     * produce, pages flagged as updated included, so it can be saved with any output option.
+     * Requests too small to be worth more than one shard are applied on the calling thread.
+     * The caller owns the returned document and must close it.
+     */
+    public PDDocument annotate(File pdfFile, List<AnnotationRequest> annotations,
+                               AnnotationOptions options) throws IOException {
+        PDDocument document = pdfAnnotationService.loadDocument(pdfFile);
+        try {
+            List<List<AnnotationRequest>> shards = split(document, annotations);
+            if (shards.size() == 1) {
+                pdfAnnotationService.applyAnnotations(document, annotations, options);
+                return document;
+            }
+
+            long start = System.nanoTime();
+            TemplateSources templateSources = TemplateSources.of(annotations);
+            List<Future<PDDocument>> results = new ArrayList<>();
+            for (List<AnnotationRequest> shard : shards.subList(1, shards.size())) {
+                results.add(executor.submit(() -> annotateCopy(pdfFile, shard, options, templateSources)));
+            }
+            int merged = 0;
+            try {
+                pdfAnnotationService.applyShard(document, shards.get(0), options, templateSources, false);
+                Transplant transplant = new Transplant(document);
+                transplant.register(shards.get(0));
+                while (merged < results.size()) {
+                    try (PDDocument copy = await(results.get(merged++))) {
+                        transplant.pages(copy, shards.get(merged));
+                    }
+                }
+            } finally {
+                // after a failure, wait for the remaining shards so their copies get closed
+                for (Future<PDDocument> result : results.subList(merged, results.size())) {
+                    closeQuietly(result);
+                }
+            }
+            annotationMetrics.recordStage(AnnotationMetrics.Stage.APPLY, start);
+            annotationMetrics.countAnnotations(annotations.size());
+            logger.info("Applied {} annotations to {} in {} shards", annotations.size(), pdfFile.getName(),
+                    shards.size());
+            return document;
+        } catch (IOException | RuntimeException e) {
+            document.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Splits the annotations into contiguous page ranges, at most one per worker and at least
+     * {@code min-annotations-per-shard} annotations each, cutting between pages where the running
+     * annotation count passes each shard's share. Page numbers are validated here, before any
+     * work starts.
+     */
+    List<List<AnnotationRequest>> split(PDDocument document, List<AnnotationRequest> annotations) {
+        int numberOfPages = document.getNumberOfPages();
+        TreeMap<Integer, Integer> counts = new TreeMap<>();
+        for (AnnotationRequest annotation : annotations) {
+            if (TextLocator.needsLocating(annotation)) {
+                throw new IllegalArgumentException("Annotation without coordinates must be located first: "
+                        + annotation.getSelectedText());
+            }
+            Integer pageNumber = annotation.getPageNumber();
+            if (pageNumber == null || pageNumber < 1 || pageNumber > numberOfPages) {
+                throw new IllegalArgumentException("Invalid page number: " + pageNumber);
+            }
+            counts.merge(pageNumber, 1, Integer::sum);
+        }
+
+        int shardCount = Math.min(threads, Math.min(counts.size(),
+                annotations.size() / Math.max(minAnnotationsPerShard, 1)));
+        if (shardCount <= 1) {
+            return List.of(annotations);
+        }
+
+        // last page of each shard
+        List<Integer> lastPages = new ArrayList<>();
+        int seen = 0;
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            seen += entry.getValue();
+            if (lastPages.size() < shardCount - 1
+                    && seen >= (long) annotations.size() * (lastPages.size() + 1) / shardCount) {
+                lastPages.add(entry.getKey());
+            }
+        }
+        lastPages.add(numberOfPages);
+
+        List<List<AnnotationRequest>> shards = new ArrayList<>();
+        for (int i = 0; i < lastPages.size(); i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (AnnotationRequest annotation : annotations) {
+            int shard = 0;
+            while (annotation.getPageNumber() > lastPages.get(shard)) {
+                shard++;
+            }
+            shards.get(shard).add(annotation);
+        }
+        shards.removeIf(List::isEmpty);
+        return shards;
+    }
+
+    private PDDocument annotateCopy(File pdfFile, List<AnnotationRequest> shard, AnnotationOptions options,
+                                    TemplateSources templateSources) throws IOException {
+        PDDocument copy = PDDocument.load(pdfFile, memoryUsageSetting);
+        try {
+            pdfAnnotationService.applyShard(copy, shard, options, templateSources, true);
+            return copy;
+        } catch (IOException | RuntimeException e) {
+            copy.close();
+            throw e;
+        }
+    }
+
+    private static PDDocument await(Future<PDDocument> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while annotating shards", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to annotate shard", cause);
+        }
+    }
+
+    private static void closeQuietly(Future<PDDocument> result) {
+        try {
+            result.get().close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | IOException e) {
+            // the failure was already reported, or the copy was never loaded
+        }
+    }
+
+    /**
+     * Copies annotated pages from shard documents into the result document. One instance is
+     * used for all shards of a run, so identical new streams are shared across shards.
+     */
+    final class Transplant {
+
+        private final PDDocument target;
+
+        // result page dictionaries in page order
+        private final List<COSDictionary> targetPages = new ArrayList<>();
+
+        // shard object to its copy in the result, for the current shard
+        private final Map<COSBase, COSBase> copies = new IdentityHashMap<>();
+
+        // every stream copied so far, by fingerprint
+        private final Map<String, COSStream> streams = new HashMap<>();
+
+        // every dictionary and array created by copying, in any shard
+        private final Set<COSBase> created = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        // fingerprints of copied objects; null while being computed
+        private final Map<COSBase, String> fingerprints = new IdentityHashMap<>();
+
+        Transplant(PDDocument target) {
+            this.target = target;
+            for (PDPage page : target.getPages()) {
+                targetPages.add(page.getCOSObject());
+            }
+        }
+
+        /**
+         * Registers what annotating created on the result's own pages, so streams copied from
+         * shards that are identical to one of them, such as a stamp template, are replaced by it.
+         */
+        void register(List<AnnotationRequest> annotations) throws IOException {
+            Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<COSStream> found = new ArrayList<>();
+            for (int pageNumber : pageNumbers(annotations)) {
+                for (Map.Entry<COSName, COSBase> entry : targetPages.get(pageNumber - 1).entrySet()) {
+                    if (!COSName.PARENT.equals(entry.getKey())) {
+                        collect(entry.getValue(), visited, found);
+                    }
+                }
+            }
+            for (COSStream stream : found) {
+                String fingerprint = fingerprint(stream);
+                if (fingerprint != null) {
+                    streams.putIfAbsent(fingerprint, stream);
+                }
+            }
+        }
+
+        /**
+         * Walks the objects annotating created or modified, marking the new ones as created.
+         * Objects of the original file that were not modified are not entered.
+         */
+        private void collect(COSBase item, Set<COSBase> visited, List<COSStream> found) {
+            boolean direct = !(item instanceof COSObject);
+            COSBase object = direct ? item : ((COSObject) item).getObject();
+            if (!(object instanceof COSDictionary || object instanceof COSArray) || isStructure(object)
+                    || (!direct && !modified(object)) || !visited.add(object)) {
+                return;
+            }
+            if (direct) {
+                created.add(object);
+                if (object instanceof COSStream && shareable(object)) {
+                    found.add((COSStream) object);
+                }
+            }
+            Iterable<COSBase> children = object instanceof COSArray
+                    ? (COSArray) object : ((COSDictionary) object).getValues();
+            for (COSBase child : children) {
+                collect(child, visited, found);
+            }
+        }
+
+        /**
+         * Replaces the result's pages that the shard annotated with the shard's versions. Every
+         * entry of the page dictionary but /Parent is taken from the shard, and resources the
+         * shard page only inherited are set on the page itself, since the shard may have added to
+         * them. The pages are flagged as updated like locally annotated ones.
+         */
+        void pages(PDDocument shard, List<AnnotationRequest> annotations) throws IOException {
+            copies.clear();
+            List<COSDictionary> shardPages = new ArrayList<>(targetPages.size());
+            Iterator<COSDictionary> targetIterator = targetPages.iterator();
+            for (PDPage page : shard.getPages()) {
+                COSDictionary dictionary = page.getCOSObject();
+                shardPages.add(dictionary);
+                copies.put(dictionary, targetIterator.next());
+            }
+
+            for (int pageNumber : pageNumbers(annotations)) {
+                COSDictionary source = shardPages.get(pageNumber - 1);
+                COSDictionary destination = targetPages.get(pageNumber - 1);
+                for (Map.Entry<COSName, COSBase> entry : source.entrySet()) {
+                    if (!COSName.PARENT.equals(entry.getKey())) {
+                        destination.setItem(entry.getKey(), copy(entry.getValue()));
+                    }
+                }
+                PDResources resources = new PDPage(source).getResources();
+                if (!source.containsKey(COSName.RESOURCES) && resources != null) {
+                    destination.setItem(COSName.RESOURCES, copy(resources.getCOSObject()));
+                }
+                pdfAnnotationService.markUpdated(target, new PDPage(destination));
+            }
+        }
+
+        private COSBase copy(COSBase item) throws IOException {
+            if (item == null) {
+                return null;
+            }
+            COSBase known = copies.get(item);
+            if (known != null) {
+                return known;
+            }
+            if (item instanceof COSObject) {
+                return copyReference((COSObject) item);
+            }
+            if (item instanceof COSStream) {
+                return copyStream((COSStream) item);
+            }
+            if (item instanceof COSDictionary) {
+                COSDictionary dictionary = new COSDictionary();
+                copies.put(item, dictionary);
+                created.add(dictionary);
+                for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) item).entrySet()) {
+                    dictionary.setItem(entry.getKey(), copy(entry.getValue()));
+                }
+                return dictionary;
+            }
+            if (item instanceof COSArray) {
+                COSArray array = new COSArray();
+                copies.put(item, array);
+                created.add(array);
+                for (COSBase element : (COSArray) item) {
+                    array.add(copy(element));
+                }
+                return array;
+            }
+            // names, numbers, strings, booleans and null are not changed by annotating
+            return item;
+        }
+
+        /**
+         * An object of the original file stands for itself unless the shard modified it, so it
+         * becomes a reference to the result's copy of the same object number. Objects the shard
+         * modified are copied, and so are objects without a number, which the shard created.
+         */
+        private COSBase copyReference(COSObject reference) throws IOException {
+            COSBase object = reference.getObject();
+            COSBase known = object != null ? copies.get(object) : null;
+            if (known != null) {
+                return known;
+            }
+            if (reference.getObjectNumber() > 0 && (!modified(object) || isStructure(object))) {
+                return target.getDocument().getObjectFromPool(
+                        new COSObjectKey(reference.getObjectNumber(), reference.getGenerationNumber()));
+            }
+            return copy(object);
+        }
+
+        private COSBase copyStream(COSStream stream) throws IOException {
+            COSStream copy = target.getDocument().createCOSStream();
+            copies.put(stream, copy);
+            created.add(copy);
+            for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+                copy.setItem(entry.getKey(), copy(entry.getValue()));
+            }
+            try (InputStream inputStream = stream.createRawInputStream();
+                 OutputStream outputStream = copy.createRawOutputStream()) {
+                inputStream.transferTo(outputStream);
+            }
+
+            if (!shareable(copy)) {
+                return copy;
+            }
+            String fingerprint = fingerprint(copy);
+            if (fingerprint == null) {
+                return copy;
+            }
+            COSStream existing = streams.putIfAbsent(fingerprint, copy);
+            if (existing == null) {
+                return copy;
+            }
+            copy.close();
+            copies.put(stream, existing);
+            return existing;
+        }
+
+        /**
+         * A digest of a copied object's content, encoded stream bytes included, or {@code null}
+         * when it refers back to itself or to anything other than copies and the result's
+         * numbered objects, such as a page.
+         */
+        private String fingerprint(COSBase item) throws IOException {
+            if (item instanceof COSObject) {
+                COSObject reference = (COSObject) item;
+                return "R" + reference.getObjectNumber() + "." + reference.getGenerationNumber();
+            }
+            if (item instanceof COSName) {
+                return "/" + ((COSName) item).getName();
+            }
+            if (item instanceof COSNumber || item instanceof COSBoolean || item instanceof COSNull) {
+                return item.toString();
+            }
+            if (item instanceof COSString) {
+                return "(" + ((COSString) item).toHexString() + ")";
+            }
+            if (!created.contains(item)) {
+                return null;
+            }
+            if (fingerprints.containsKey(item)) {
+                return fingerprints.get(item);
+            }
+
+            fingerprints.put(item, null);
+            MessageDigest digest = DocumentStore.sha256();
+            if (item instanceof COSArray) {
+                digest.update((byte) '[');
+                for (COSBase element : (COSArray) item) {
+                    if (!update(digest, element)) {
+                        return null;
+                    }
+                }
+            } else {
+                digest.update((byte) '<');
+                Map<String, COSBase> entries = new TreeMap<>();
+                ((COSDictionary) item).entrySet().forEach(entry -> entries.put(entry.getKey().getName(), entry.getValue()));
+                for (Map.Entry<String, COSBase> entry : entries.entrySet()) {
+                    digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                    if (!update(digest, entry.getValue())) {
+                        return null;
+                    }
+                }
+                if (item instanceof COSStream) {
+                    digest.update((byte) 's');
+                    try (InputStream inputStream = new DigestInputStream(
+                            ((COSStream) item).createRawInputStream(), digest)) {
+                        inputStream.transferTo(OutputStream.nullOutputStream());
+                    }
+                }
+            }
+            String fingerprint = HexFormat.of().formatHex(digest.digest());
+            fingerprints.put(item, fingerprint);
+            return fingerprint;
+        }
+
+        private boolean update(MessageDigest digest, COSBase element) throws IOException {
+            String fingerprint = fingerprint(element);
+            if (fingerprint == null) {
+                return false;
+            }
+            digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ' ');
+            return true;
+        }
+
+        private static Set<Integer> pageNumbers(List<AnnotationRequest> annotations) {
+            Set<Integer> pageNumbers = new TreeSet<>();
+            annotations.forEach(annotation -> pageNumbers.add(annotation.getPageNumber()));
+            return pageNumbers;
+        }
+
+        /**
+         * Images and forms, which several shards may embed alike. Page content streams are
+         * unique to their page and not worth hashing.
+         */
+        private static boolean shareable(COSBase stream) {
+            return COSName.XOBJECT.equals(((COSDictionary) stream).getCOSName(COSName.TYPE))
+                    || ((COSDictionary) stream).containsKey(COSName.SUBTYPE);
+        }
+
+        private static boolean modified(COSBase object) {
+            return object instanceof COSUpdateInfo && ((COSUpdateInfo) object).isNeedToBeUpdated();
+        }
+
+        private static boolean isStructure(COSBase object) {
+            COSName type = object instanceof COSDictionary ? ((COSDictionary) object).getCOSName(COSName.TYPE) : null;
+            return type != null && STRUCTURE_TYPES.contains(type);
+        }
+    }
+}
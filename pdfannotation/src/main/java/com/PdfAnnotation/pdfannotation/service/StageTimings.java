@@ -0,0 +1,66 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Durations of the pipeline stages of the current request, bound to the request thread so the
+ * controller can report them in a {@code Server-Timing} header. Stages that run after the
+ * response headers are sent (saving a streamed PDF) or on other threads are not included.
+ */
+public final class StageTimings {
+
+    private static final ThreadLocal<StageTimings> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> durations = new LinkedHashMap<>();
+
+    private StageTimings() {}
+
+    /**
+     * Binds a new instance to the current thread; pair with {@link #end()}.
+     */
+    public static StageTimings begin() {
+        StageTimings timings = new StageTimings();
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Returns the instance bound to this thread, or {@code null} outside a request.
+     */
+    public static StageTimings current() {
+        return CURRENT.get();
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    void add(String stage, long nanos) {
+        durations.merge(stage, nanos, Long::sum);
+    }
+
+    /**
+     * Formats the stages as a {@code Server-Timing} header value, e.g.
+     * {@code load;dur=12.4, apply;dur=3.1}, or {@code null} if nothing was recorded.
+     */
+    public String toHeaderValue() {
+        if (durations.isEmpty()) {
+            return null;
+        }
+        StringBuilder header = new StringBuilder();
+        durations.forEach((stage, nanos) -> {
+            if (header.length() > 0) {
+                header.append(", ");
+            }
+            header.append(stage).append(";dur=").append(String.format(Locale.ROOT, "%.1f", nanos / 1e6));
+        });
+        return header.toString();
+    }
+}
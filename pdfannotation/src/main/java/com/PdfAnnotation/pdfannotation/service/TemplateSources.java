@@ -0,0 +1,62 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The annotation that defines each stamp template: the first one using its name in request
+ * order. Every way of applying annotations renders a template from this annotation, so one-shot,
+ * streamed, sharded and replayed session requests all draw the same stamps. Flattened image
+ * annotations are drawn directly and never use a template, so they only define one in
+ * {@link AnnotationOptions.Mode#NATIVE} mode. Not thread-safe.
+ */
+final class TemplateSources {
+
+    private final Map<String, AnnotationRequest> all = new LinkedHashMap<>();
+    private final Map<String, AnnotationRequest> withoutImages = new LinkedHashMap<>();
+
+    static TemplateSources of(Iterable<AnnotationRequest> annotations) {
+        TemplateSources sources = new TemplateSources();
+        sources.addAll(annotations);
+        return sources;
+    }
+
+    /**
+     * Records the annotation as the source of its template unless an earlier one already is.
+     */
+    void add(AnnotationRequest annotation) {
+        String template = annotation.getTemplate();
+        if (template == null || template.trim().isEmpty()) {
+            return;
+        }
+        all.putIfAbsent(template, annotation);
+        if (!AnnotationRequest.TYPE_IMAGE.equalsIgnoreCase(annotation.getType())) {
+            withoutImages.putIfAbsent(template, annotation);
+        }
+    }
+
+    void addAll(Iterable<AnnotationRequest> annotations) {
+        for (AnnotationRequest annotation : annotations) {
+            add(annotation);
+        }
+    }
+
+    TemplateSources copy() {
+        TemplateSources copy = new TemplateSources();
+        copy.all.putAll(all);
+        copy.withoutImages.putAll(withoutImages);
+        return copy;
+    }
+
+    /**
+     * The defining annotation of each template, by template name, for annotations applied with
+     * these options.
+     */
+    Map<String, AnnotationRequest> get(AnnotationOptions options) {
+        boolean nativeMode = options != null && options.getMode() == AnnotationOptions.Mode.NATIVE;
+        return nativeMode ? all : withoutImages;
+    }
+}
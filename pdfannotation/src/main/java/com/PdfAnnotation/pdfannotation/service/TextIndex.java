@@ -0,0 +1,261 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The extracted text of a document with a bounding box for every character, for finding where
+ * a piece of text appears. Runs of whitespace, word and line breaks are collapsed into single
+ * spaces, so a search phrase matches across line breaks. Boxes are in PDF points measured from
+ * the top-left corner of the page, the same space as annotation coordinates without a canvas
+ * size. Immutable once built.
+ */
+public final class TextIndex {
+
+    private final List<PageText> pages;
+
+    TextIndex(List<PageText> pages) {
+        this.pages = pages;
+    }
+
+    public int getNumberOfPages() {
+        return pages.size();
+    }
+
+    /**
+     * Finds every non-overlapping occurrence of {@code text} on pages {@code firstPage} to
+     * {@code lastPage} (1-based, inclusive). An occurrence that wraps onto another line yields
+     * one box per line.
+     */
+    public List<Hit> find(String text, int firstPage, int lastPage) {
+        String query = normalize(text);
+        List<Hit> hits = new ArrayList<>();
+        if (query.isEmpty()) {
+            return hits;
+        }
+        for (int pageNumber = firstPage; pageNumber <= lastPage; pageNumber++) {
+            PageText page = pages.get(pageNumber - 1);
+            for (int start = page.text.indexOf(query); start >= 0;
+                 start = page.text.indexOf(query, start + query.length())) {
+                page.addLineBoxes(pageNumber, start, start + query.length(), hits);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Approximate heap size, for the cache bound.
+     */
+    long size() {
+        long size = 0;
+        for (PageText page : pages) {
+            size += page.text.length() * 2L + page.boxes.length * 4L;
+        }
+        return size;
+    }
+
+    static String normalize(String text) {
+        return text.trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Extracts pages {@code firstPage} to {@code lastPage} (1-based, inclusive) of the document.
+     */
+    static List<PageText> extract(PDDocument document, int firstPage, int lastPage) throws IOException {
+        Collector collector = new Collector(firstPage, lastPage);
+        collector.writeText(document, Writer.nullWriter());
+        return Arrays.asList(collector.pages);
+    }
+
+    /**
+     * One line's part of an occurrence: the text on that line and its bounding box.
+     */
+    public static final class Hit {
+
+        private final int pageNumber;
+        private final String text;
+        private final float x;
+        private final float y;
+        private final float width;
+        private final float height;
+
+        Hit(int pageNumber, String text, float x, float y, float width, float height) {
+            this.pageNumber = pageNumber;
+            this.text = text;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        public int getPageNumber() {
+            return pageNumber;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public float getX() {
+            return x;
+        }
+
+        public float getY() {
+            return y;
+        }
+
+        public float getWidth() {
+            return width;
+        }
+
+        public float getHeight() {
+            return height;
+        }
+    }
+
+    /**
+     * A page's normalized text and a left, top, right, bottom box per character. Spaces have NaN
+     * boxes.
+     */
+    static final class PageText {
+
+        private final String text;
+        private final float[] boxes;
+
+        PageText(String text, float[] boxes) {
+            this.text = text;
+            this.boxes = boxes;
+        }
+
+        /**
+         * Splits the characters {@code start} to {@code end} into lines, starting a new line
+         * wherever a character's top edge moves by more than half its height.
+         */
+        void addLineBoxes(int pageNumber, int start, int end, List<Hit> hits) {
+            int lineStart = -1;
+            int lineEnd = -1;
+            float left = 0, top = 0, right = 0, bottom = 0;
+            for (int i = start; i < end; i++) {
+                float charTop = boxes[i * 4 + 1];
+                if (Float.isNaN(charTop)) {
+                    continue;
+                }
+                float charBottom = boxes[i * 4 + 3];
+                if (lineStart >= 0 && Math.abs(charTop - top) > (charBottom - charTop) / 2) {
+                    hits.add(new Hit(pageNumber, text.substring(lineStart, lineEnd + 1),
+                            left, top, right - left, bottom - top));
+                    lineStart = -1;
+                }
+                if (lineStart < 0) {
+                    lineStart = i;
+                    left = boxes[i * 4];
+                    top = charTop;
+                    right = boxes[i * 4 + 2];
+                    bottom = charBottom;
+                } else {
+                    left = Math.min(left, boxes[i * 4]);
+                    top = Math.min(top, charTop);
+                    right = Math.max(right, boxes[i * 4 + 2]);
+                    bottom = Math.max(bottom, charBottom);
+                }
+                lineEnd = i;
+            }
+            if (lineStart >= 0) {
+                hits.add(new Hit(pageNumber, text.substring(lineStart, lineEnd + 1),
+                        left, top, right - left, bottom - top));
+            }
+        }
+    }
+
+    /**
+     * Collects each page's characters and boxes instead of writing text out.
+     */
+    private static final class Collector extends PDFTextStripper {
+
+        private static final PageText EMPTY = new PageText("", new float[0]);
+
+        // pages without text may never be started, so they stay empty
+        private final PageText[] pages;
+        private StringBuilder text;
+        private float[] boxes;
+
+        Collector(int firstPage, int lastPage) throws IOException {
+            setStartPage(firstPage);
+            setEndPage(lastPage);
+            pages = new PageText[lastPage - firstPage + 1];
+            Arrays.fill(pages, EMPTY);
+        }
+
+        @Override
+        protected void startPage(PDPage page) {
+            text = new StringBuilder();
+            boxes = new float[1024];
+        }
+
+        @Override
+        protected void endPage(PDPage page) {
+            int length = text.length();
+            if (length > 0 && text.charAt(length - 1) == ' ') {
+                length--;
+            }
+            pages[getCurrentPageNo() - getStartPage()] = new PageText(text.substring(0, length),
+                    Arrays.copyOf(boxes, length * 4));
+        }
+
+        @Override
+        protected void writeString(String string, List<TextPosition> textPositions) {
+            for (TextPosition position : textPositions) {
+                // the box reaches a quarter of the glyph height below the baseline for descenders
+                float left = position.getXDirAdj();
+                float baseline = position.getYDirAdj();
+                float height = position.getHeightDir();
+                String unicode = position.getUnicode();
+                for (int i = 0; i < unicode.length(); i++) {
+                    char c = unicode.charAt(i);
+                    if (Character.isWhitespace(c)) {
+                        appendSpace();
+                    } else {
+                        append(c, left, baseline - height, left + position.getWidthDirAdj(),
+                                baseline + height / 4);
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected void writeWordSeparator() {
+            appendSpace();
+        }
+
+        @Override
+        protected void writeLineSeparator() {
+            appendSpace();
+        }
+
+        private void appendSpace() {
+            if (text.length() > 0 && text.charAt(text.length() - 1) != ' ') {
+                append(' ', Float.NaN, Float.NaN, Float.NaN, Float.NaN);
+            }
+        }
+
+        private void append(char c, float left, float top, float right, float bottom) {
+            int offset = text.length() * 4;
+            if (offset + 4 > boxes.length) {
+                boxes = Arrays.copyOf(boxes, boxes.length * 2);
+            }
+            boxes[offset] = left;
+            boxes[offset + 1] = top;
+            boxes[offset + 2] = right;
+            boxes[offset + 3] = bottom;
+            text.append(c);
+        }
+    }
+}
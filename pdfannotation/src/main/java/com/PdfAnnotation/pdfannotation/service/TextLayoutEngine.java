@@ -0,0 +1,295 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wraps annotation text into a box. Glyph advance widths are cached per font, so every word is
+ * measured once from the table and line widths are accumulated instead of re-measuring the
+ * growing line. In auto-fit mode the largest font size whose wrapped text fits the box is found
+ * by binary search. Finished layouts are kept in a bounded LRU cache because templated
+ * annotations repeat the same text, font and box over and over.
+ */
+@Component
+public class TextLayoutEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(TextLayoutEngine.class);
+
+    // Line height as a multiple of the font size
+    public static final float LEADING = 1.5f;
+
+    // Auto-fit searches in quarter points between these bounds
+    static final float MIN_AUTO_FIT_SIZE = 4f;
+    static final float MAX_AUTO_FIT_SIZE = 72f;
+    private static final int STEPS_PER_POINT = 4;
+
+    @Value("${pdf.layout.cache-size:4096}")
+    private int cacheSize;
+
+    private final Map<String, FontWidths> fontWidths = new ConcurrentHashMap<>();
+
+    // Least recently used first; guarded by itself
+    private final LinkedHashMap<LayoutKey, TextLayout> layouts = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * Lays out {@code text} in a box of {@code width} by {@code height} points. Spaces separate
+     * words and {@code \n} forces a line break. Words wider than the box are broken between
+     * characters.
+     *
+     * @param fontSize the size to use, or with {@code autoFit} the largest size to try
+     * @param autoFit pick the largest size up to {@code fontSize} at which all lines fit
+     */
+    public TextLayout layout(String text, PDFont font, float fontSize, float width, float height,
+                             boolean autoFit) throws IOException {
+        LayoutKey key = new LayoutKey(text, font.getName(), fontSize, width, height, autoFit);
+        synchronized (layouts) {
+            TextLayout cached = layouts.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        MeasuredText measured = measure(text, font);
+        TextLayout layout = autoFit
+                ? fitToBox(measured, fontSize, width, height)
+                : wrap(measured, fontSize, width, height);
+        if (layout.isTruncated()) {
+            logger.warn("Text does not fit its {}x{} box at {}pt, dropped {} of {} lines",
+                    width, height, layout.getFontSize(), layout.getDroppedLines(),
+                    layout.getLines().size() + layout.getDroppedLines());
+        }
+
+        synchronized (layouts) {
+            layouts.put(key, layout);
+            if (layouts.size() > cacheSize) {
+                layouts.remove(layouts.keySet().iterator().next());
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Number of lines that fit in {@code height}. The first baseline sits one font size below the
+     * top edge and every further line needs one leading.
+     */
+    static int maxLines(float fontSize, float height) {
+        if (height < fontSize) {
+            return 0;
+        }
+        return (int) Math.floor((height - fontSize) / (LEADING * fontSize)) + 1;
+    }
+
+    private TextLayout fitToBox(MeasuredText measured, float fontSize, float width, float height) {
+        int low = (int) (MIN_AUTO_FIT_SIZE * STEPS_PER_POINT);
+        // a size taller than the box can never fit
+        float largest = Math.min(Math.min(fontSize, height), MAX_AUTO_FIT_SIZE);
+        int high = (int) Math.floor(Math.max(largest, MIN_AUTO_FIT_SIZE) * STEPS_PER_POINT);
+        TextLayout best = wrap(measured, (float) low / STEPS_PER_POINT, width, height);
+        if (best.isTruncated()) {
+            // even the smallest size overflows; keep it and report the overflow
+            return best;
+        }
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            TextLayout candidate = wrap(measured, (float) mid / STEPS_PER_POINT, width, height);
+            if (candidate.isTruncated()) {
+                high = mid - 1;
+            } else {
+                low = mid;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private TextLayout wrap(MeasuredText measured, float fontSize, float width, float height) {
+        float scale = fontSize / 1000f;
+        float limit = width / scale; // available width in glyph-space units
+        int maxLines = maxLines(fontSize, height);
+
+        List<String> lines = new ArrayList<>();
+        int totalLines = 0;
+        StringBuilder line = new StringBuilder();
+
+        for (MeasuredWord[] paragraph : measured.paragraphs) {
+            line.setLength(0);
+            float lineWidth = 0;
+            int paragraphStart = totalLines;
+            for (MeasuredWord word : paragraph) {
+                float candidate = line.length() == 0 ? word.width : lineWidth + measured.spaceWidth + word.width;
+                if (candidate <= limit) {
+                    if (line.length() > 0) {
+                        line.append(' ');
+                    }
+                    line.append(word.text);
+                    lineWidth = candidate;
+                    continue;
+                }
+                if (line.length() > 0) {
+                    totalLines = addLine(lines, line.toString(), totalLines, maxLines);
+                    line.setLength(0);
+                    lineWidth = 0;
+                }
+                if (word.width <= limit) {
+                    line.append(word.text);
+                    lineWidth = word.width;
+                } else {
+                    // a single word wider than the box: break it between characters
+                    int start = 0;
+                    float partWidth = 0;
+                    for (int i = 0; i < word.text.length(); i++) {
+                        float charWidth = word.charWidths[i];
+                        if (partWidth + charWidth > limit && i > start
+                                && !Character.isLowSurrogate(word.text.charAt(i))) {
+                            totalLines = addLine(lines, word.text.substring(start, i), totalLines, maxLines);
+                            start = i;
+                            partWidth = 0;
+                        }
+                        partWidth += charWidth;
+                    }
+                    line.append(word.text, start, word.text.length());
+                    lineWidth = partWidth;
+                }
+            }
+            if (line.length() > 0 || totalLines == paragraphStart) {
+                // an empty paragraph still takes up a line
+                totalLines = addLine(lines, line.toString(), totalLines, maxLines);
+            }
+        }
+
+        return new TextLayout(fontSize, List.copyOf(lines), totalLines - lines.size());
+    }
+
+    private static int addLine(List<String> lines, String line, int totalLines, int maxLines) {
+        if (lines.size() < maxLines) {
+            lines.add(line);
+        }
+        return totalLines + 1;
+    }
+
+    /**
+     * Splits the text into paragraphs of words and measures every word once, in glyph-space
+     * units (thousandths of the font size).
+     */
+    private MeasuredText measure(String text, PDFont font) throws IOException {
+        FontWidths widths = fontWidths.computeIfAbsent(font.getName(), name -> new FontWidths());
+        String[] paragraphs = text.split("\r?\n", -1);
+        MeasuredWord[][] measured = new MeasuredWord[paragraphs.length][];
+        for (int p = 0; p < paragraphs.length; p++) {
+            String[] words = paragraphs[p].split(" ");
+            measured[p] = new MeasuredWord[words.length];
+            for (int w = 0; w < words.length; w++) {
+                String word = words[w];
+                float[] charWidths = new float[word.length()];
+                float total = 0;
+                for (int i = 0; i < word.length(); i++) {
+                    char c = word.charAt(i);
+                    if (Character.isHighSurrogate(c) && i + 1 < word.length()) {
+                        // measure the pair on its first unit, the low surrogate adds nothing
+                        charWidths[i] = widths.width(font, word.codePointAt(i));
+                        total += charWidths[i];
+                        i++;
+                        continue;
+                    }
+                    charWidths[i] = widths.width(font, c);
+                    total += charWidths[i];
+                }
+                measured[p][w] = new MeasuredWord(word, total, charWidths);
+            }
+        }
+        return new MeasuredText(measured, widths.width(font, ' '));
+    }
+
+    /**
+     * Advance widths of one font in glyph-space units. Latin-1 code points live in an array, the
+     * rest in a map; both are filled lazily.
+     */
+    private static final class FontWidths {
+
+        private final float[] latin = new float[256];
+        private final Map<Integer, Float> other = new ConcurrentHashMap<>();
+
+        FontWidths() {
+            Arrays.fill(latin, Float.NaN);
+        }
+
+        float width(PDFont font, int codePoint) throws IOException {
+            if (codePoint < latin.length) {
+                float width = latin[codePoint];
+                if (Float.isNaN(width)) {
+                    width = measure(font, codePoint);
+                    latin[codePoint] = width;
+                }
+                return width;
+            }
+            Float width = other.get(codePoint);
+            if (width == null) {
+                width = measure(font, codePoint);
+                other.put(codePoint, width);
+            }
+            return width;
+        }
+
+        private static float measure(PDFont font, int codePoint) throws IOException {
+            // PDFont keeps its own width cache in a plain HashMap
+            synchronized (font) {
+                return font.getStringWidth(new String(Character.toChars(codePoint)));
+            }
+        }
+    }
+
+    private record LayoutKey(String text, String font, float fontSize, float width, float height,
+                             boolean autoFit) {}
+
+    private record MeasuredWord(String text, float width, float[] charWidths) {}
+
+    private record MeasuredText(MeasuredWord[][] paragraphs, float spaceWidth) {}
+
+    /**
+     * Wrapped lines at the chosen font size. Lines that did not fit vertically are counted in
+     * {@link #getDroppedLines()} rather than silently lost.
+     */
+    public static final class TextLayout {
+
+        private final float fontSize;
+        private final List<String> lines;
+        private final int droppedLines;
+
+        TextLayout(float fontSize, List<String> lines, int droppedLines) {
+            this.fontSize = fontSize;
+            this.lines = lines;
+            this.droppedLines = droppedLines;
+        }
+
+        public float getFontSize() {
+            return fontSize;
+        }
+
+        public float getLeading() {
+            return LEADING * fontSize;
+        }
+
+        public List<String> getLines() {
+            return lines;
+        }
+
+        public int getDroppedLines() {
+            return droppedLines;
+        }
+
+        public boolean isTruncated() {
+            return droppedLines > 0;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Places annotations that carry only their text: every occurrence of the text in the document
+ * becomes an annotation covering it, one per line the occurrence spans. Occurrences are looked
+ * up in a {@link TextIndex} of the document. Building an index extracts the pages in
+ * parallel, each worker on its own copy of the document since a {@link PDDocument} cannot be
+ * shared between threads. Indexes are cached by document ID, the SHA-256 of the content, in a
+ * bounded LRU; content never changes under its hash, so a cached index never goes stale.
+ */
+@Component
+public class TextLocator {
+
+    private static final Logger logger = LoggerFactory.getLogger(TextLocator.class);
+
+    // Fewer pages than this per worker and loading another copy costs more than it saves
+    private static final int MIN_PAGES_PER_TASK = 16;
+
+    @Autowired
+    private DocumentStore documentStore;
+
+    @Autowired
+    private MemoryUsageSetting memoryUsageSetting;
+
+    @Autowired
+    private AnnotationMetrics annotationMetrics;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${pdf.text-index.parallelism:0}")
+    private int parallelism;
+
+    @Value("${pdf.text-index.cache-size:64MB}")
+    private DataSize cacheSize;
+
+    private ExecutorService executor;
+    private int poolSize;
+
+    // Least recently used first; guarded by itself
+    private final LinkedHashMap<String, TextIndex> indexes = new LinkedHashMap<>(16, 0.75f, true);
+    private long indexedBytes;
+
+    @PostConstruct
+    public void init() {
+        poolSize = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "pdf-text-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Text index pool: {} workers", poolSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Whether the annotation has to be placed by searching for its text: a text annotation
+     * without any coordinates.
+     */
+    public static boolean needsLocating(AnnotationRequest annotation) {
+        return !AnnotationRequest.TYPE_IMAGE.equalsIgnoreCase(annotation.getType())
+                && annotation.getX() == null && annotation.getY() == null
+                && annotation.getWidth() == null && annotation.getHeight() == null;
+    }
+
+    public static boolean needsLocating(List<AnnotationRequest> annotations) {
+        return annotations.stream().anyMatch(TextLocator::needsLocating);
+    }
+
+    /**
+     * Locates the annotations in a document that is not in the store, such as a spooled one-shot
+     * upload, see {@link #locate(List, String)}. The index is cached under the file's SHA-256,
+     * which is the ID the document would have in the store, so repeated uploads of the same
+     * document and requests for the stored copy share one index. The file is not kept.
+     */
+    public List<AnnotationRequest> locate(List<AnnotationRequest> annotations, File pdfFile)
+            throws IOException {
+        if (!needsLocating(annotations)) {
+            return annotations;
+        }
+        String key;
+        try (InputStream input = Files.newInputStream(pdfFile.toPath())) {
+            key = ResultCache.hash(input);
+        }
+        return locate(annotations, index(key, pdfFile));
+    }
+
+    /**
+     * Replaces each annotation that {@link #needsLocating needs locating} with one annotation
+     * per line of every occurrence of its text, searching its page, its page range or the whole
+     * document. Other annotations are kept as they are, in order. Text that is not found adds
+     * nothing.
+     */
+    public List<AnnotationRequest> locate(List<AnnotationRequest> annotations, String documentId)
+            throws IOException {
+        if (!needsLocating(annotations)) {
+            return annotations;
+        }
+        return locate(annotations, index(documentId));
+    }
+
+    private List<AnnotationRequest> locate(List<AnnotationRequest> annotations, TextIndex index) {
+        long start = System.nanoTime();
+        List<AnnotationRequest> located = new ArrayList<>(annotations.size());
+        for (AnnotationRequest annotation : annotations) {
+            if (!needsLocating(annotation)) {
+                located.add(annotation);
+                continue;
+            }
+            int firstPage = annotation.getPageNumber() != null ? annotation.getPageNumber()
+                    : annotation.getFirstPage() != null ? annotation.getFirstPage() : 1;
+            int lastPage = annotation.getPageNumber() != null ? annotation.getPageNumber()
+                    : annotation.getLastPage() != null ? annotation.getLastPage() : index.getNumberOfPages();
+            if (firstPage < 1 || lastPage > index.getNumberOfPages() || firstPage > lastPage) {
+                throw new IllegalArgumentException("Invalid page range: " + firstPage + "-" + lastPage);
+            }
+
+            List<TextIndex.Hit> hits = index.find(annotation.getSelectedText(), firstPage, lastPage);
+            if (hits.isEmpty()) {
+                logger.info("Text \"{}\" not found on pages {}-{}", annotation.getSelectedText(), firstPage, lastPage);
+            }
+            for (TextIndex.Hit hit : hits) {
+                located.add(place(annotation, hit));
+            }
+        }
+        annotationMetrics.recordStage(AnnotationMetrics.Stage.LOCATE, start);
+        return located;
+    }
+
+    /**
+     * Returns the document's text index, building and caching it on a miss.
+     */
+    public TextIndex index(String documentId) throws IOException {
+        synchronized (indexes) {
+            TextIndex index = indexes.get(documentId);
+            if (index != null) {
+                return index;
+            }
+        }
+        if (!documentStore.contains(documentId)) {
+            throw new IllegalArgumentException("Unknown document: " + documentId);
+        }
+        return index(documentId, documentStore.resolve(documentId).toFile());
+    }
+
+    /**
+     * Returns the index cached under {@code key}, building it from {@code file} on a miss.
+     */
+    private TextIndex index(String key, File file) throws IOException {
+        synchronized (indexes) {
+            TextIndex index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+        }
+
+        TextIndex index = build(file);
+        synchronized (indexes) {
+            TextIndex previous = indexes.put(key, index);
+            indexedBytes += index.size() - (previous != null ? previous.size() : 0);
+            Iterator<TextIndex> eldest = indexes.values().iterator();
+            while (indexedBytes > cacheSize.toBytes() && indexes.size() > 1) {
+                indexedBytes -= eldest.next().size();
+                eldest.remove();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Splits the pages into contiguous ranges; the calling thread extracts the first range
+     * while pool workers extract the others from their own copies of the file.
+     */
+    private TextIndex build(File file) throws IOException {
+        long start = System.nanoTime();
+        try (PDDocument document = PDDocument.load(file, memoryUsageSetting)) {
+            int pages = document.getNumberOfPages();
+            int tasks = Math.max(1, Math.min(poolSize, pages / MIN_PAGES_PER_TASK));
+            int pagesPerTask = (pages + tasks - 1) / tasks;
+
+            List<Future<List<TextIndex.PageText>>> futures = new ArrayList<>();
+            for (int firstPage = pagesPerTask + 1; firstPage <= pages; firstPage += pagesPerTask) {
+                int from = firstPage;
+                int to = Math.min(pages, firstPage + pagesPerTask - 1);
+                futures.add(executor.submit(() -> {
+                    try (PDDocument copy = PDDocument.load(file, memoryUsageSetting)) {
+                        return TextIndex.extract(copy, from, to);
+                    }
+                }));
+            }
+
+            List<TextIndex.PageText> pageTexts = new ArrayList<>(pages);
+            try {
+                if (pages > 0) {
+                    pageTexts.addAll(TextIndex.extract(document, 1, Math.min(pages, pagesPerTask)));
+                }
+                for (Future<List<TextIndex.PageText>> future : futures) {
+                    pageTexts.addAll(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while indexing " + file, e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Failed to index " + file, cause);
+            } finally {
+                futures.forEach(future -> future.cancel(true));
+            }
+
+            logger.debug("Indexed text of {} pages with {} tasks in {} ms", pages, tasks,
+                    (System.nanoTime() - start) / 1_000_000);
+            return new TextIndex(pageTexts);
+        }
+    }
+
+    /**
+     * A copy of the annotation, with all its styling, placed on one line of an occurrence. The
+     * found box is in PDF points, so canvas sizes and the page range are cleared.
+     */
+    private AnnotationRequest place(AnnotationRequest annotation, TextIndex.Hit hit) {
+        AnnotationRequest placed = objectMapper.convertValue(annotation, AnnotationRequest.class);
+        placed.setSelectedText(hit.getText());
+        placed.setPageNumber(hit.getPageNumber());
+        placed.setFirstPage(null);
+        placed.setLastPage(null);
+        placed.setX((double) hit.getX());
+        placed.setY((double) hit.getY());
+        placed.setWidth((double) hit.getWidth());
+        placed.setHeight((double) hit.getHeight());
+        placed.setCanvasWidth(null);
+        placed.setCanvasHeight(null);
+        return placed;
+    }
+}
@@ -0,0 +1,311 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.contentstream.operator.state.Concatenate;
+import org.apache.pdfbox.contentstream.operator.state.Restore;
+import org.apache.pdfbox.contentstream.operator.state.Save;
+import org.apache.pdfbox.contentstream.operator.state.SetGraphicsStateParameters;
+import org.apache.pdfbox.contentstream.operator.state.SetMatrix;
+import org.apache.pdfbox.contentstream.operator.text.BeginText;
+import org.apache.pdfbox.contentstream.operator.text.EndText;
+import org.apache.pdfbox.contentstream.operator.text.MoveText;
+import org.apache.pdfbox.contentstream.operator.text.MoveTextSetLeading;
+import org.apache.pdfbox.contentstream.operator.text.NextLine;
+import org.apache.pdfbox.contentstream.operator.text.SetCharSpacing;
+import org.apache.pdfbox.contentstream.operator.text.SetFontAndSize;
+import org.apache.pdfbox.contentstream.operator.text.SetTextHorizontalScaling;
+import org.apache.pdfbox.contentstream.operator.text.SetTextLeading;
+import org.apache.pdfbox.contentstream.operator.text.SetTextRenderingMode;
+import org.apache.pdfbox.contentstream.operator.text.SetTextRise;
+import org.apache.pdfbox.contentstream.operator.text.SetWordSpacing;
+import org.apache.pdfbox.contentstream.operator.text.ShowText;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextAdjusted;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextLine;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextLineAndSpace;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdfwriter.ContentStreamWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.graphics.state.PDTextState;
+import org.apache.pdfbox.util.Matrix;
+import org.apache.pdfbox.util.Vector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes the page text under redaction rectangles from the content stream itself, so it can no
+ * longer be extracted or copied. The page is interpreted once to find every glyph whose bounds
+ * overlap a rectangle, looked up in a {@link RectIndex}, and then rewritten once: each affected
+ * text operator becomes a {@code TJ} in which the removed glyphs are replaced by position
+ * adjustments of the same width, so the remaining text does not move. The page's content
+ * streams are replaced by the single rewritten stream. Text inside form XObjects is not touched.
+ */
+@Component
+public class TextRedactor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TextRedactor.class);
+
+    /**
+     * Removes all glyphs overlapping {@code areas} (in PDF user space) from the page. Returns the
+     * number of glyphs removed; the page is left unchanged when there are none.
+     */
+    public int redact(PDDocument document, PDPage page, List<PDRectangle> areas) throws IOException {
+        RectIndex<PDRectangle> index = RectIndex.of(page.getMediaBox(), areas);
+        if (index.isEmpty() || !page.hasContents()) {
+            return 0;
+        }
+
+        GlyphTracker tracker = new GlyphTracker(index);
+        tracker.processPage(page);
+        if (tracker.hits.isEmpty()) {
+            return 0;
+        }
+
+        List<Object> tokens = rewrite(page, tracker.hits);
+        PDStream contents = new PDStream(document);
+        try (OutputStream outputStream = contents.createOutputStream(COSName.FLATE_DECODE)) {
+            new ContentStreamWriter(outputStream).writeTokens(tokens);
+        }
+        page.setContents(contents);
+
+        logger.debug("Redacted {} glyphs in {} text operators", tracker.removed, tracker.hits.size());
+        return tracker.removed;
+    }
+
+    /**
+     * Re-parses the page content and replaces every text operator that lost glyphs. Operators
+     * are counted in the same order the tracker saw them.
+     */
+    private static List<Object> rewrite(PDPage page, Map<Integer, HitGlyphs> hits) throws IOException {
+        PDFStreamParser parser = new PDFStreamParser(page);
+        try {
+            List<Object> tokens = new ArrayList<>();
+            List<COSBase> operands = new ArrayList<>();
+            int operatorIndex = 0;
+            for (Object token = parser.parseNextToken(); token != null; token = parser.parseNextToken()) {
+                if (!(token instanceof Operator)) {
+                    operands.add((COSBase) token);
+                    continue;
+                }
+                Operator operator = (Operator) token;
+                HitGlyphs hit = hits.get(operatorIndex++);
+                if (hit == null) {
+                    tokens.addAll(operands);
+                    tokens.add(operator);
+                } else {
+                    rewriteTextOperator(operator.getName(), operands, hit, tokens);
+                }
+                operands.clear();
+            }
+            tokens.addAll(operands);
+            return tokens;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static void rewriteTextOperator(String name, List<COSBase> operands, HitGlyphs hit,
+                                            List<Object> tokens) throws IOException {
+        COSArray shown = new COSArray();
+        int[] glyph = {0};
+        switch (name) {
+            case OperatorName.SHOW_TEXT:
+                appendString((COSString) operands.get(0), hit, glyph, shown);
+                break;
+            case OperatorName.SHOW_TEXT_LINE:
+                tokens.add(Operator.getOperator(OperatorName.NEXT_LINE));
+                appendString((COSString) operands.get(0), hit, glyph, shown);
+                break;
+            case OperatorName.SHOW_TEXT_LINE_AND_SPACE:
+                tokens.add(operands.get(0));
+                tokens.add(Operator.getOperator(OperatorName.SET_WORD_SPACING));
+                tokens.add(operands.get(1));
+                tokens.add(Operator.getOperator(OperatorName.SET_CHAR_SPACING));
+                tokens.add(Operator.getOperator(OperatorName.NEXT_LINE));
+                appendString((COSString) operands.get(2), hit, glyph, shown);
+                break;
+            case OperatorName.SHOW_TEXT_ADJUSTED:
+                for (COSBase element : (COSArray) operands.get(0)) {
+                    if (element instanceof COSString) {
+                        appendString((COSString) element, hit, glyph, shown);
+                    } else {
+                        shown.add(element);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException("Not a text-showing operator: " + name);
+        }
+        tokens.add(shown);
+        tokens.add(Operator.getOperator(OperatorName.SHOW_TEXT_ADJUSTED));
+    }
+
+    /**
+     * Splits the string at the removed glyphs, decoding it with the font the tracker used, and
+     * puts each removed glyph's advance in its place.
+     */
+    private static void appendString(COSString string, HitGlyphs hit, int[] glyph, COSArray shown)
+            throws IOException {
+        InputStream input = new ByteArrayInputStream(string.getBytes());
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        byte[] bytes = string.getBytes();
+        int offset = 0;
+        while (input.available() > 0) {
+            hit.font.readCode(input);
+            int next = bytes.length - input.available();
+            if (hit.glyphs.get(glyph[0])) {
+                if (kept.size() > 0) {
+                    shown.add(new COSString(kept.toByteArray()));
+                    kept.reset();
+                }
+                shown.add(new COSFloat(hit.adjustments[glyph[0]]));
+            } else {
+                kept.write(bytes, offset, next - offset);
+            }
+            offset = next;
+            glyph[0]++;
+        }
+        if (kept.size() > 0) {
+            shown.add(new COSString(kept.toByteArray()));
+        }
+    }
+
+    /**
+     * The glyphs one text operator loses, by their position among the glyphs it shows, and the
+     * {@code TJ} adjustment that keeps the following text in place for each of them.
+     */
+    private static final class HitGlyphs {
+
+        private final PDFont font;
+        private final BitSet glyphs = new BitSet();
+        private float[] adjustments = new float[16];
+
+        HitGlyphs(PDFont font) {
+            this.font = font;
+        }
+
+        void add(int glyph, float adjustment) {
+            glyphs.set(glyph);
+            if (glyph >= adjustments.length) {
+                adjustments = Arrays.copyOf(adjustments, Math.max(glyph + 1, adjustments.length * 2));
+            }
+            adjustments[glyph] = adjustment;
+        }
+    }
+
+    /**
+     * Interprets the page's text and graphics-state operators and records which glyphs of which
+     * top-level operator overlap a redaction rectangle. Operators such as {@code '} that run
+     * other operators internally count as one.
+     */
+    private static final class GlyphTracker extends PDFStreamEngine {
+
+        private final RectIndex<PDRectangle> index;
+        private final Map<Integer, HitGlyphs> hits = new HashMap<>();
+        private int operatorCount;
+        private int currentOperator;
+        private int depth;
+        private int glyphInOperator;
+        private int removed;
+
+        GlyphTracker(RectIndex<PDRectangle> index) {
+            this.index = index;
+            addOperator(new BeginText());
+            addOperator(new EndText());
+            addOperator(new SetFontAndSize());
+            addOperator(new SetCharSpacing());
+            addOperator(new SetWordSpacing());
+            addOperator(new SetTextHorizontalScaling());
+            addOperator(new SetTextLeading());
+            addOperator(new SetTextRenderingMode());
+            addOperator(new SetTextRise());
+            addOperator(new MoveText());
+            addOperator(new MoveTextSetLeading());
+            addOperator(new NextLine());
+            addOperator(new SetMatrix());
+            addOperator(new ShowText());
+            addOperator(new ShowTextAdjusted());
+            addOperator(new ShowTextLine());
+            addOperator(new ShowTextLineAndSpace());
+            addOperator(new Save());
+            addOperator(new Restore());
+            addOperator(new Concatenate());
+            addOperator(new SetGraphicsStateParameters());
+        }
+
+        @Override
+        protected void processOperator(Operator operator, List<COSBase> operands) throws IOException {
+            if (depth == 0) {
+                currentOperator = operatorCount++;
+                glyphInOperator = 0;
+            }
+            depth++;
+            try {
+                super.processOperator(operator, operands);
+            } finally {
+                depth--;
+            }
+        }
+
+        @Override
+        protected void showGlyph(Matrix textRenderingMatrix, PDFont font, int code, Vector displacement) {
+            int glyph = glyphInOperator++;
+            float advance = font.isVertical() ? displacement.getY() : displacement.getX();
+
+            PDFontDescriptor descriptor = font.getFontDescriptor();
+            float ascent = descriptor != null && descriptor.getAscent() > 0 ? descriptor.getAscent() / 1000 : 0.8f;
+            float descent = descriptor != null && descriptor.getDescent() < 0 ? descriptor.getDescent() / 1000 : -0.2f;
+            float width = Math.abs(advance) > 0 ? Math.abs(advance) : 0.5f;
+
+            float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+            for (int corner = 0; corner < 4; corner++) {
+                Point2D.Float point = textRenderingMatrix.transformPoint(
+                        corner % 2 == 0 ? 0 : width, corner < 2 ? descent : ascent);
+                minX = Math.min(minX, point.x);
+                maxX = Math.max(maxX, point.x);
+                minY = Math.min(minY, point.y);
+                maxY = Math.max(maxY, point.y);
+            }
+            if (!index.anyOverlapping(minX, minY, maxX - minX, maxY - minY)) {
+                return;
+            }
+
+            // a TJ number n moves the pen back by n / 1000 text-space units times the font size,
+            // so replacing the glyph with -(its advance) leaves everything after it in place
+            PDTextState textState = getGraphicsState().getTextState();
+            float fontSize = textState.getFontSize();
+            boolean wordSpace = code == 32 && !(font instanceof PDType0Font);
+            float spacing = textState.getCharacterSpacing() + (wordSpace ? textState.getWordSpacing() : 0);
+            float adjustment = -(advance * 1000 + (fontSize != 0 ? spacing * 1000 / fontSize : 0));
+            hits.computeIfAbsent(currentOperator, key -> new HitGlyphs(font)).add(glyph, adjustment);
+            removed++;
+        }
+    }
+}
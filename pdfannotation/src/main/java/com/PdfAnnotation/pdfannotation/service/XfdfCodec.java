@@ -0,0 +1,342 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Converts annotations to and from XFDF, so clients can exchange a few kilobytes of edits instead
+ * of whole PDFs. Text annotations become {@code <freetext>} and image annotations
+ * {@code <stamp>} elements with rectangles in PDF user space, readable by other PDF tools.
+ * Properties XFDF has no place for (font style, template, link, auto-fit, image ID) are kept in
+ * extension attributes of our own namespace, which other readers ignore. Both directions stream
+ * through StAX, so large annotation sets are never held as a DOM.
+ */
+@Component
+public class XfdfCodec {
+
+    private static final Logger logger = LoggerFactory.getLogger(XfdfCodec.class);
+
+    public static final String MEDIA_TYPE = "application/vnd.adobe.xfdf";
+
+    private static final String XFDF_NS = "http://ns.adobe.com/xfdf/";
+    private static final String EXT_NS = "urn:pdf-annotation:xfdf";
+    private static final String EXT_PREFIX = "pa";
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newFactory();
+
+    static {
+        // XFDF never needs a DTD; without DTD support entities are never expanded or fetched
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    /**
+     * Writes {@code annotations}, placed on {@code document}, as an XFDF document.
+     */
+    public void write(List<AnnotationRequest> annotations, PDDocument document, String filename,
+                      OutputStream outputStream) throws IOException {
+        try {
+            XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(outputStream, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.setDefaultNamespace(XFDF_NS);
+            writer.setPrefix(EXT_PREFIX, EXT_NS);
+            writer.writeStartElement(XFDF_NS, "xfdf");
+            writer.writeDefaultNamespace(XFDF_NS);
+            writer.writeNamespace(EXT_PREFIX, EXT_NS);
+            writer.writeAttribute("xml", "http://www.w3.org/XML/1998/namespace", "space", "preserve");
+            if (filename != null) {
+                writer.writeEmptyElement(XFDF_NS, "f");
+                writer.writeAttribute("href", filename);
+            }
+            writer.writeStartElement(XFDF_NS, "annots");
+            for (int i = 0; i < annotations.size(); i++) {
+                writeAnnotation(writer, annotations.get(i), document, "annot-" + (i + 1));
+            }
+            writer.writeEndElement();
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to write XFDF", e);
+        }
+    }
+
+    private void writeAnnotation(XMLStreamWriter writer, AnnotationRequest annotation, PDDocument document,
+                                 String name) throws XMLStreamException {
+        int pageNumber = annotation.getPageNumber();
+        PDRectangle rect = pdfAnnotationService.toPdfRectangle(document.getPage(pageNumber - 1), annotation);
+        boolean image = AnnotationRequest.TYPE_IMAGE.equalsIgnoreCase(annotation.getType());
+
+        writer.writeStartElement(XFDF_NS, image ? "stamp" : "freetext");
+        writer.writeAttribute("page", String.valueOf(pageNumber - 1));
+        writer.writeAttribute("rect", String.format(Locale.ROOT, "%.2f,%.2f,%.2f,%.2f", rect.getLowerLeftX(),
+                rect.getLowerLeftY(), rect.getUpperRightX(), rect.getUpperRightY()));
+        writer.writeAttribute("name", name);
+        writer.writeAttribute("flags", "print");
+        if (image) {
+            writer.writeAttribute(EXT_NS, "image-id", annotation.getImageId());
+        } else {
+            if (hasText(annotation.getBackgroundColor())) {
+                writer.writeAttribute("color", hex(annotation.getBackgroundColor()));
+            }
+            if (hasText(annotation.getBorderColor())) {
+                writer.writeAttribute("width", String.valueOf(
+                        annotation.getBorderWidth() != null ? annotation.getBorderWidth() : 1f));
+            }
+            writeExtension(writer, "font-style", annotation.getFontStyle());
+            writeExtension(writer, "auto-fit",
+                    Boolean.TRUE.equals(annotation.getAutoFit()) ? "true" : null);
+        }
+        writeExtension(writer, "template", annotation.getTemplate());
+        writeExtension(writer, "link", annotation.getLink());
+
+        if (!image) {
+            writer.writeStartElement(XFDF_NS, "contents");
+            writer.writeCharacters(annotation.getSelectedText());
+            writer.writeEndElement();
+            writer.writeStartElement(XFDF_NS, "defaultappearance");
+            writer.writeCharacters(defaultAppearance(annotation));
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+    }
+
+    private static void writeExtension(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+        if (hasText(value)) {
+            writer.writeAttribute(EXT_NS, name, value);
+        }
+    }
+
+    /**
+     * A size of 0 is the PDF convention for "auto", which is what a missing font size means.
+     */
+    private String defaultAppearance(AnnotationRequest annotation) {
+        float fontSize = annotation.getFontSize() != null ? annotation.getFontSize() : 0f;
+        float[] text = pdfAnnotationService.parseColor(annotation.getColor()).getComponents();
+        String appearance = String.format(Locale.ROOT, "/Helv %s Tf %s %s %s rg",
+                number(fontSize), number(text[0]), number(text[1]), number(text[2]));
+        if (hasText(annotation.getBorderColor())) {
+            float[] border = pdfAnnotationService.parseColor(annotation.getBorderColor()).getComponents();
+            appearance += String.format(Locale.ROOT, " %s %s %s RG",
+                    number(border[0]), number(border[1]), number(border[2]));
+        }
+        return appearance;
+    }
+
+    /**
+     * Reads the annotations of an XFDF document for placement on {@code document}. Annotation
+     * types other than FreeText and our image stamps are skipped.
+     */
+    public List<AnnotationRequest> read(InputStream inputStream, PDDocument document) throws IOException {
+        List<AnnotationRequest> annotations = new ArrayList<>();
+        int skipped = 0;
+        try {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+            try {
+                boolean inAnnots = false;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.END_ELEMENT && "annots".equals(reader.getLocalName())) {
+                        inAnnots = false;
+                    }
+                    if (event != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    String element = reader.getLocalName();
+                    if ("annots".equals(element)) {
+                        inAnnots = true;
+                    } else if (inAnnots && ("freetext".equals(element) || isImageStamp(reader))) {
+                        annotations.add(readAnnotation(reader, document));
+                    } else if (inAnnots) {
+                        skipElement(reader);
+                        skipped++;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("Invalid XFDF: " + e.getMessage(), e);
+        }
+        if (skipped > 0) {
+            logger.info("Skipped {} unsupported XFDF annotations", skipped);
+        }
+        return annotations;
+    }
+
+    private static boolean isImageStamp(XMLStreamReader reader) {
+        return "stamp".equals(reader.getLocalName()) && reader.getAttributeValue(EXT_NS, "image-id") != null;
+    }
+
+    private AnnotationRequest readAnnotation(XMLStreamReader reader, PDDocument document) throws XMLStreamException {
+        String element = reader.getLocalName();
+        AnnotationRequest annotation = new AnnotationRequest();
+
+        int page = parseInt(reader.getAttributeValue(null, "page"), "page") + 1;
+        if (page < 1 || page > document.getNumberOfPages()) {
+            throw new IllegalArgumentException("Invalid page number: " + page);
+        }
+        PDPage pdPage = document.getPage(page - 1);
+        float[] rect = parseRect(reader.getAttributeValue(null, "rect"));
+        annotation.setPageNumber(page);
+        annotation.setX((double) rect[0]);
+        annotation.setY((double) (pdPage.getMediaBox().getHeight() - rect[3]));
+        annotation.setWidth((double) (rect[2] - rect[0]));
+        annotation.setHeight((double) (rect[3] - rect[1]));
+        annotation.setTemplate(reader.getAttributeValue(EXT_NS, "template"));
+        annotation.setLink(reader.getAttributeValue(EXT_NS, "link"));
+
+        if ("stamp".equals(element)) {
+            annotation.setType(AnnotationRequest.TYPE_IMAGE);
+            annotation.setImageId(reader.getAttributeValue(EXT_NS, "image-id"));
+            skipElement(reader);
+            return annotation;
+        }
+
+        annotation.setBackgroundColor(reader.getAttributeValue(null, "color"));
+        annotation.setFontStyle(reader.getAttributeValue(EXT_NS, "font-style"));
+        if ("true".equals(reader.getAttributeValue(EXT_NS, "auto-fit"))) {
+            annotation.setAutoFit(true);
+        }
+        String width = reader.getAttributeValue(null, "width");
+
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                String child = reader.getLocalName();
+                if ("contents".equals(child)) {
+                    annotation.setSelectedText(reader.getElementText());
+                } else if ("defaultappearance".equals(child)) {
+                    applyDefaultAppearance(annotation, reader.getElementText());
+                } else {
+                    skipElement(reader);
+                }
+            }
+        }
+        if (annotation.getBorderColor() != null && width != null) {
+            annotation.setBorderWidth(Float.parseFloat(width));
+        }
+        return annotation;
+    }
+
+    /**
+     * Picks the font size, fill colour (text) and stroke colour (border) out of a /DA string.
+     */
+    private static void applyDefaultAppearance(AnnotationRequest annotation, String appearance) {
+        String[] tokens = appearance.trim().split("\\s+");
+        try {
+            for (int i = 0; i < tokens.length; i++) {
+                switch (tokens[i]) {
+                    case "Tf":
+                        float size = Float.parseFloat(tokens[i - 1]);
+                        annotation.setFontSize(size > 0 ? size : null);
+                        break;
+                    case "rg":
+                        annotation.setColor(hex(tokens, i - 3, 3));
+                        break;
+                    case "g":
+                        annotation.setColor(hex(tokens, i - 1, 1));
+                        break;
+                    case "RG":
+                        annotation.setBorderColor(hex(tokens, i - 3, 3));
+                        break;
+                    case "G":
+                        annotation.setBorderColor(hex(tokens, i - 1, 1));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid default appearance: " + appearance, e);
+        }
+        if (annotation.getColor() == null) {
+            annotation.setColor("#000000");
+        }
+    }
+
+    private static String hex(String[] tokens, int start, int count) {
+        int[] rgb = new int[3];
+        for (int c = 0; c < 3; c++) {
+            float value = Float.parseFloat(tokens[start + (count == 1 ? 0 : c)]);
+            rgb[c] = Math.round(Math.max(0, Math.min(1, value)) * 255);
+        }
+        return String.format("#%02x%02x%02x", rgb[0], rgb[1], rgb[2]);
+    }
+
+    private String hex(String color) {
+        float[] rgb = pdfAnnotationService.parseColor(color).getComponents();
+        return String.format("#%02x%02x%02x",
+                Math.round(rgb[0] * 255), Math.round(rgb[1] * 255), Math.round(rgb[2] * 255));
+    }
+
+    private static float[] parseRect(String rect) {
+        String[] parts = rect != null ? rect.split(",") : new String[0];
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Invalid XFDF rect: " + rect);
+        }
+        float[] values = new float[4];
+        for (int i = 0; i < 4; i++) {
+            values[i] = Float.parseFloat(parts[i].trim());
+        }
+        // normalized: lower-left then upper-right
+        return new float[]{Math.min(values[0], values[2]), Math.min(values[1], values[3]),
+                Math.max(values[0], values[2]), Math.max(values[1], values[3])};
+    }
+
+    private static int parseInt(String value, String attribute) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid XFDF " + attribute + ": " + value);
+        }
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static String number(float value) {
+        String formatted = String.format(Locale.ROOT, "%.3f", value);
+        return formatted.contains(".") ? formatted.replaceAll("0+$", "").replaceAll("\\.$", "") : formatted;
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+}
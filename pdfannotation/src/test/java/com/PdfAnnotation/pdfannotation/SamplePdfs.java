@@ -0,0 +1,87 @@
+package com.PdfAnnotation.pdfannotation;
+
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic documents and annotation sets for tests and benchmarks.
+ */
+public final class SamplePdfs {
+
+    public static final int LINES_PER_PAGE = 40;
+
+    private SamplePdfs() {}
+
+    public static byte[] createPdf(int pages) throws IOException {
+        return createPdf(pages, 0);
+    }
+
+    /**
+     * Like {@link #createPdf(int)}, with a noise image of roughly {@code imageBytesPerPage}
+     * compressed bytes drawn on every page to vary the file size independently of the page count.
+     */
+    public static byte[] createPdf(int pages, int imageBytesPerPage) throws IOException {
+        Random random = new Random(42);
+        try (PDDocument document = new PDDocument();
+             ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            for (int p = 1; p <= pages; p++) {
+                PDPage page = new PDPage(PDRectangle.LETTER);
+                document.addPage(page);
+                try (PDPageContentStream contentStream = new PDPageContentStream(document, page)) {
+                    contentStream.beginText();
+                    contentStream.setFont(PDType1Font.HELVETICA, 11);
+                    contentStream.newLineAtOffset(50, 740);
+                    for (int line = 0; line < LINES_PER_PAGE; line++) {
+                        contentStream.showText("Page " + p + " line " + line
+                                + " - the quick brown fox jumps over the lazy dog");
+                        contentStream.newLineAtOffset(0, -16);
+                    }
+                    contentStream.endText();
+                    if (imageBytesPerPage > 0) {
+                        // random RGB pixels do not compress, so the stream is about 3 bytes a pixel
+                        int side = Math.max(1, (int) Math.sqrt(imageBytesPerPage / 3.0));
+                        BufferedImage noise = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+                        for (int py = 0; py < side; py++) {
+                            for (int px = 0; px < side; px++) {
+                                noise.setRGB(px, py, random.nextInt(0x1000000));
+                            }
+                        }
+                        contentStream.drawImage(LosslessFactory.createFromImage(document, noise), 400, 40, 150, 150);
+                    }
+                }
+            }
+            document.save(outputStream);
+            return outputStream.toByteArray();
+        }
+    }
+
+    /**
+     * Spreads {@code count} annotations round-robin over {@code pages} pages, one per text line.
+     */
+    public static List<AnnotationRequest> createAnnotations(int count, int pages) {
+        List<AnnotationRequest> annotations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int line = (i / pages) % LINES_PER_PAGE;
+            AnnotationRequest annotation = new AnnotationRequest(
+                    "Replacement text " + i + " for an edited clause", (i % pages) + 1,
+                    48.0, 40.0 + line * 16, 220.0, 14.0, "#3b82f6");
+            annotation.setFontSize(9f);
+            annotation.setBackgroundColor("#fef3c7");
+            annotation.setBorderColor("red");
+            annotations.add(annotation);
+        }
+        return annotations;
+    }
+}
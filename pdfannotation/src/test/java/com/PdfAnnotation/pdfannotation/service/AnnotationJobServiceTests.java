@@ -0,0 +1,100 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.PdfAnnotation.pdfannotation.exception.DocumentNotFoundException;
+import com.PdfAnnotation.pdfannotation.exception.ServiceOverloadedException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// one worker and one queue slot, so a blocked worker makes the next job wait and the one after
+// that overflow; finished jobs expire at once but are only swept when the test asks
+@SpringBootTest(properties = {"pdf.jobs.workers=1", "pdf.jobs.queue-capacity=1", "pdf.jobs.max-pending-bytes=1MB",
+        "pdf.jobs.retry-after=7s", "pdf.jobs.retention=0s", "pdf.jobs.sweep-interval=1h"})
+class AnnotationJobServiceTests {
+
+    @Autowired
+    private AnnotationJobService annotationJobService;
+
+    @Test
+    void admitsByQueueAndBytesThenRunsAndExpiresJobs() throws Exception {
+        byte[] pdf = SamplePdfs.createPdf(2);
+        List<AnnotationRequest> annotations = SamplePdfs.createAnnotations(2, 2);
+        List<AnnotationRequest> invalid = List.of(new AnnotationRequest("x", 9, 10.0, 10.0, 10.0, 10.0, "red"));
+
+        CountDownLatch release = new CountDownLatch(1);
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(annotationJobService, "executor");
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        AnnotationJob queued = annotationJobService.submit(new ByteArrayInputStream(pdf), pdf.length, "a.pdf",
+                annotations, null);
+        assertEquals(AnnotationJob.Status.QUEUED, queued.getStatus());
+        assertEquals(pdf.length, annotationJobService.getPendingBytes());
+
+        // over the byte budget while another job is pending
+        ServiceOverloadedException tooLarge = assertThrows(ServiceOverloadedException.class,
+                () -> annotationJobService.submit(new ByteArrayInputStream(pdf), 1024 * 1024, "big.pdf", annotations, null));
+        assertEquals(7, tooLarge.getRetryAfterSeconds());
+        // within the budget but the queue slot is taken
+        ServiceOverloadedException queueFull = assertThrows(ServiceOverloadedException.class,
+                () -> annotationJobService.submit(new ByteArrayInputStream(pdf), pdf.length, "b.pdf", annotations, null));
+        assertEquals(7, queueFull.getRetryAfterSeconds());
+        assertEquals(pdf.length, annotationJobService.getPendingBytes());
+        assertEquals(1, annotationJobService.getQueueSize());
+
+        release.countDown();
+        await(queued);
+        assertEquals(AnnotationJob.Status.SUCCEEDED, queued.getStatus());
+        assertNotNull(queued.getStartedAt());
+        try (PDDocument result = PDDocument.load(queued.getResultFile().toFile())) {
+            assertTrue(new PDFTextStripper().getText(result).contains("Replacement text 1"));
+        }
+
+        AnnotationJob failing = annotationJobService.submit(new ByteArrayInputStream(pdf), pdf.length, "c.pdf",
+                invalid, null);
+        await(failing);
+        assertEquals(AnnotationJob.Status.FAILED, failing.getStatus());
+        assertNotNull(failing.getError());
+        assertFalse(Files.exists(failing.getResultFile()));
+        assertEquals(0, annotationJobService.getPendingBytes());
+
+        Thread.sleep(5);
+        annotationJobService.removeExpiredJobs();
+        assertThrows(DocumentNotFoundException.class, () -> annotationJobService.getJob(queued.getJobId()));
+        assertThrows(DocumentNotFoundException.class, () -> annotationJobService.getJob(failing.getJobId()));
+        assertFalse(Files.exists(queued.getResultFile()));
+    }
+
+    /**
+     * Waits until the job has finished and returned its bytes to the budget.
+     */
+    private void await(AnnotationJob job) throws InterruptedException {
+        for (int i = 0; i < 600 && !(job.isFinished() && annotationJobService.getPendingBytes() == 0); i++) {
+            Thread.sleep(50);
+        }
+        assertSame(job, annotationJobService.getJob(job.getJobId()));
+    }
+}
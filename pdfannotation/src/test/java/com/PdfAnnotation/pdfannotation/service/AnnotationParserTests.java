@@ -0,0 +1,121 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class AnnotationParserTests {
+
+    @Autowired
+    private AnnotationParser annotationParser;
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void streamedBucketsDrawTheSameAsTheParsedList() throws Exception {
+        List<AnnotationRequest> original = SamplePdfs.createAnnotations(300, 3);
+        original.get(7).setAutoFit(true);
+        // defined by the annotation on page 3, which comes first in request order
+        original.get(8).setTemplate("approved");
+        original.get(10).setTemplate("approved");
+        byte[] json = objectMapper.writeValueAsBytes(original);
+        byte[] pdf = SamplePdfs.createPdf(3);
+
+        List<AnnotationRequest> parsed = annotationParser.parse(new String(json, StandardCharsets.UTF_8));
+        AnnotationBuckets buckets = annotationParser.stream(new ByteArrayInputStream(json), 3);
+
+        assertEquals(300, buckets.size());
+        assertEquals(List.of(1, 2, 3), buckets.pageNumbers());
+        List<AnnotationRequest> pageTwo = parsed.stream()
+                .filter(annotation -> annotation.getPageNumber() == 2)
+                .collect(Collectors.toList());
+        assertEquals(objectMapper.writeValueAsString(pageTwo), objectMapper.writeValueAsString(buckets.take(2)));
+        assertEquals(List.of(1, 3), buckets.pageNumbers());
+
+        try (PDDocument fromList = pdfAnnotationService.loadDocument(new ByteArrayInputStream(pdf));
+             PDDocument fromBuckets = pdfAnnotationService.loadDocument(new ByteArrayInputStream(pdf))) {
+            pdfAnnotationService.applyAnnotations(fromList, parsed, null);
+            pdfAnnotationService.applyAnnotations(fromBuckets,
+                    annotationParser.stream(new ByteArrayInputStream(json), 3), null);
+            for (int page = 0; page < 3; page++) {
+                assertArrayEquals(appendedContent(fromList, page), appendedContent(fromBuckets, page));
+            }
+            String text = new PDFTextStripper().getText(fromBuckets);
+            assertEquals(new PDFTextStripper().getText(fromList), text);
+            assertFalse(text.contains("Replacement text 10 "));
+        }
+    }
+
+    @Test
+    void rejectsBadAnnotationsWhileStreaming() throws Exception {
+        String valid = "{\"selectedText\":\"a\",\"pageNumber\":1,\"x\":1,\"y\":1,\"width\":9,\"height\":9,\"color\":\"red\"}";
+
+        assertThrows(IllegalArgumentException.class, () -> stream("{\"annotations\":[]}"));
+        assertThrows(IllegalArgumentException.class, () -> stream("[" + valid + "," + valid));
+        assertThrows(IllegalArgumentException.class, () -> stream("[" + valid + ",42]"));
+        assertThrows(IllegalArgumentException.class, () -> stream("[" + valid.replace("\"pageNumber\":1", "\"pageNumber\":4") + "]"));
+        assertThrows(IllegalArgumentException.class, () -> stream("[" + valid.replace("\"x\":1,", "") + "]"));
+        assertThrows(IllegalArgumentException.class, () -> stream("[" + valid.replace("\"color\":\"red\"", "\"color\":\"\"") + "]"));
+        assertEquals(1, stream("[" + valid + "]").size());
+    }
+
+    @Test
+    void rejectsTruncatedJsonWhileStreaming() throws Exception {
+        String json = objectMapper.writeValueAsString(SamplePdfs.createAnnotations(2, 3));
+        for (int length : new int[]{0, 1, json.indexOf(',') + 1, json.indexOf("},{") + 1, json.length() - 1}) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> stream(json.substring(0, length)));
+            assertTrue(e.getMessage().startsWith("Invalid annotations format"), e.getMessage());
+        }
+        assertThrows(IllegalArgumentException.class, () -> stream(json.replace("\"color\"", "color")));
+    }
+
+    @Test
+    void requiresCoordinatesWhereTextIsNotLocated() {
+        String located = "[{\"selectedText\":\"fox\",\"color\":\"red\"}]";
+
+        List<AnnotationRequest> annotations = annotationParser.parse(located);
+        assertThrows(IllegalArgumentException.class, () -> annotationParser.requireCoordinates(annotations));
+        assertThrows(IllegalArgumentException.class,
+                () -> annotationParser.requireCoordinates(annotationParser.parseByFile("{\"a.pdf\":" + located + "}")));
+        annotationParser.requireCoordinates(SamplePdfs.createAnnotations(3, 1));
+    }
+
+    private AnnotationBuckets stream(String json) throws IOException {
+        return annotationParser.stream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), 3);
+    }
+
+    private static byte[] appendedContent(PDDocument document, int page) throws IOException {
+        COSArray contents = (COSArray) document.getPage(page).getCOSObject().getDictionaryObject(COSName.CONTENTS);
+        COSStream appended = (COSStream) contents.getObject(contents.size() - 1);
+        try (InputStream input = appended.createInputStream()) {
+            return input.readAllBytes();
+        }
+    }
+}
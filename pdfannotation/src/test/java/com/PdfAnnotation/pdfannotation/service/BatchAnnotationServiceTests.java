@@ -0,0 +1,93 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.PdfAnnotation.pdfannotation.service.BatchAnnotationService.BatchItem;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@SpringBootTest
+class BatchAnnotationServiceTests {
+
+    @Autowired
+    private BatchAnnotationService batchAnnotationService;
+
+    @Test
+    void streamsSuccessfulDocumentsAndReportsFailures() throws Exception {
+        byte[] pdf = SamplePdfs.createPdf(2);
+        List<AnnotationRequest> annotations = SamplePdfs.createAnnotations(4, 2);
+        List<AnnotationRequest> invalid = List.of(new AnnotationRequest("x", 9, 10.0, 10.0, 10.0, 10.0, "red"));
+
+        Path workDirectory = batchAnnotationService.createWorkDirectory();
+        List<BatchItem> items = List.of(
+                new BatchItem("a.pdf", new ByteArrayResource(pdf), annotations),
+                new BatchItem("b.pdf", new ByteArrayResource(pdf), invalid),
+                new BatchItem("a.pdf", new ByteArrayResource(pdf), annotations));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        batchAnnotationService.process(items, new AnnotationOptions(), workDirectory, output);
+
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+
+        assertEquals(3, entries.size());
+        try (PDDocument document = PDDocument.load(entries.get("annotated_a_1.pdf"))) {
+            assertEquals(2, document.getNumberOfPages());
+        }
+
+        JsonNode manifest = new ObjectMapper().readTree(entries.get(BatchAnnotationService.MANIFEST_ENTRY));
+        assertEquals(2, manifest.get("succeeded").asInt());
+        assertEquals(1, manifest.get("failed").asInt());
+        assertFalse(Files.exists(workDirectory));
+    }
+
+    @Test
+    void keepsOnlyTheFileNameOfClientPaths() throws Exception {
+        byte[] pdf = SamplePdfs.createPdf(1);
+        List<AnnotationRequest> annotations = SamplePdfs.createAnnotations(1, 1);
+        List<BatchItem> items = List.of(
+                new BatchItem("../../x.pdf", new ByteArrayResource(pdf), annotations),
+                new BatchItem("C:\\temp\\..\\y.pdf", new ByteArrayResource(pdf), annotations),
+                new BatchItem("/etc/..", new ByteArrayResource(pdf), annotations));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        batchAnnotationService.process(items, new AnnotationOptions(), batchAnnotationService.createWorkDirectory(),
+                output);
+
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                names.add(entry.getName());
+            }
+        }
+        assertEquals(Set.of("annotated_x.pdf", "annotated_y.pdf", "annotated_document.pdf",
+                BatchAnnotationService.MANIFEST_ENTRY), Set.copyOf(names));
+    }
+}
@@ -0,0 +1,115 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.exception.DocumentNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+class ChunkedUploadServiceTests {
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
+    @Autowired
+    private DocumentStore documentStore;
+
+    @Test
+    void resumesAfterABrokenChunk() throws Exception {
+        byte[] pdf = SamplePdfs.createPdf(3, 100_000);
+        int third = pdf.length / 3;
+        ChunkedUpload upload = chunkedUploadService.create(pdf.length, "scan.pdf");
+        String uploadId = upload.getUploadId();
+
+        // the last chunk first, then the first one breaks off half-way
+        chunkedUploadService.writeChunk(uploadId, 2L * third, chunk(pdf, 2 * third, pdf.length));
+        assertThrows(IOException.class, () -> chunkedUploadService.writeChunk(uploadId, 0,
+                new BrokenStream(chunk(pdf, 0, third), third / 2)));
+        assertThrows(IllegalArgumentException.class, () -> chunkedUploadService.complete(uploadId, null));
+
+        List<long[]> missing = upload.getMissingRanges();
+        assertEquals(1, missing.size());
+        long offset = missing.get(0)[0];
+        assertEquals(2L * third, offset + missing.get(0)[1]);
+        chunkedUploadService.writeChunk(uploadId, offset, chunk(pdf, (int) offset, 2 * third));
+        // a resent chunk overwrites bytes that were already hashed
+        chunkedUploadService.writeChunk(uploadId, 0, chunk(pdf, 0, third));
+        assertEquals(pdf.length, upload.getReceivedBytes());
+
+        String sha256 = HexFormat.of().formatHex(DocumentStore.sha256().digest(pdf));
+        assertEquals(sha256, chunkedUploadService.complete(uploadId, sha256.toUpperCase()));
+        assertArrayEquals(pdf, Files.readAllBytes(documentStore.resolve(sha256)));
+        assertThrows(DocumentNotFoundException.class, () -> chunkedUploadService.getUpload(uploadId));
+        assertEquals(0, chunkedUploadService.getPendingBytes());
+    }
+
+    @Test
+    void rejectsBadChunksAndFiles() throws Exception {
+        byte[] pdf = SamplePdfs.createPdf(1);
+        ChunkedUpload upload = chunkedUploadService.create(pdf.length, "test.pdf");
+        String uploadId = upload.getUploadId();
+
+        assertThrows(IllegalArgumentException.class, () -> chunkedUploadService.writeChunk(uploadId, pdf.length,
+                chunk(pdf, 0, 1)));
+        assertThrows(IllegalArgumentException.class, () -> chunkedUploadService.writeChunk(uploadId, 1,
+                chunk(pdf, 0, pdf.length)));
+        chunkedUploadService.writeChunk(uploadId, 0, chunk(pdf, 0, pdf.length));
+        assertThrows(IllegalArgumentException.class, () -> chunkedUploadService.complete(uploadId, "00".repeat(32)));
+        assertThrows(DocumentNotFoundException.class, () -> chunkedUploadService.getUpload(uploadId));
+        assertFalse(Files.exists(upload.file));
+
+        byte[] text = "not a PDF".getBytes();
+        String textId = chunkedUploadService.create(text.length, "notes.txt").getUploadId();
+        chunkedUploadService.writeChunk(textId, 0, chunk(text, 0, text.length));
+        assertThrows(IllegalArgumentException.class, () -> chunkedUploadService.complete(textId, null));
+        assertEquals(0, chunkedUploadService.getPendingBytes());
+    }
+
+    private static InputStream chunk(byte[] bytes, int from, int to) {
+        return new ByteArrayInputStream(Arrays.copyOfRange(bytes, from, to));
+    }
+
+    /**
+     * A request body whose connection drops after {@code limit} bytes.
+     */
+    private static final class BrokenStream extends InputStream {
+
+        private final InputStream delegate;
+        private int remaining;
+
+        private BrokenStream(InputStream delegate, int limit) {
+            this.delegate = delegate;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining == 0) {
+                throw new IOException("Connection reset");
+            }
+            int read = delegate.read(buffer, offset, Math.min(length, remaining));
+            remaining -= read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.PdfAnnotation.pdfannotation.exception.DocumentNotFoundException;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// a store of its own, where unpinned blobs expire at once but are only swept when the test asks
+@SpringBootTest(properties = {"pdf.sessions.idle-timeout=0s", "pdf.store.retention=0s", "pdf.store.sweep-interval=1h"})
+class DocumentSessionServiceTests {
+
+    @DynamicPropertySource
+    static void storeDirectory(DynamicPropertyRegistry registry) throws IOException {
+        String directory = Files.createTempDirectory("store").toString();
+        registry.add("pdf.store.dir", () -> directory);
+    }
+
+    @Autowired
+    private DocumentSessionService documentSessionService;
+
+    @Autowired
+    private DocumentStore documentStore;
+
+    @Test
+    void replaysAnnotationsAfterEviction() throws Exception {
+        byte[] pdf = SamplePdfs.createPdf(4);
+        DocumentSession session = documentSessionService.createSession(new ByteArrayInputStream(pdf), "test.pdf");
+        String sessionId = session.getSessionId();
+
+        assertEquals(4, session.getPageCount());
+        assertEquals(2, documentSessionService.addAnnotations(sessionId, SamplePdfs.createAnnotations(2, 2)));
+        assertEquals(3, documentSessionService.addAnnotations(sessionId, SamplePdfs.createAnnotations(1, 1)));
+
+        Thread.sleep(5);
+        documentSessionService.evictIdleSessions();
+        assertFalse(session.isWarm());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        documentSessionService.writeDocument(sessionId, new AnnotationOptions(), output);
+        assertTrue(session.isWarm());
+
+        try (PDDocument document = PDDocument.load(output.toByteArray())) {
+            // the replay renders all recorded annotations of a page in a single pass
+            assertEquals(3, document.getPage(0).getCOSObject().getCOSArray(COSName.CONTENTS).size());
+        }
+
+        // reads count as activity too, not only requests that load the document
+        long lastAccess = session.lastAccess;
+        Thread.sleep(5);
+        documentSessionService.getAnnotations(sessionId);
+        assertTrue(session.lastAccess > lastAccess);
+
+        documentSessionService.closeSession(sessionId);
+        assertThrows(DocumentNotFoundException.class, () -> documentSessionService.getSession(sessionId));
+    }
+
+    @Test
+    void doesNotKeepAPartiallyAppliedDelta() throws Exception {
+        DocumentSession session = documentSessionService.createSession(
+                new ByteArrayInputStream(SamplePdfs.createPdf(2)), "test.pdf");
+        String sessionId = session.getSessionId();
+
+        // the first page is drawn before the unknown image on the second page is found
+        AnnotationRequest drawn = new AnnotationRequest("Never recorded", 1, 50.0, 50.0, 200.0, 20.0, "red");
+        AnnotationRequest image = new AnnotationRequest("", 2, 50.0, 50.0, 100.0, 100.0, "black");
+        image.setType(AnnotationRequest.TYPE_IMAGE);
+        image.setImageId("0".repeat(64));
+        assertThrows(IllegalArgumentException.class,
+                () -> documentSessionService.addAnnotations(sessionId, List.of(drawn, image)));
+        assertFalse(session.isWarm());
+
+        assertEquals(1, documentSessionService.addAnnotations(sessionId, SamplePdfs.createAnnotations(1, 1)));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        documentSessionService.writeDocument(sessionId, new AnnotationOptions(), output);
+        try (PDDocument document = PDDocument.load(output.toByteArray())) {
+            assertFalse(new PDFTextStripper().getText(document).contains("Never recorded"));
+        }
+        documentSessionService.closeSession(sessionId);
+    }
+
+    @Test
+    void keepsTheFirstPlacementOfATemplateAcrossDeltasAndReplays() throws Exception {
+        DocumentSession session = documentSessionService.createSession(
+                new ByteArrayInputStream(SamplePdfs.createPdf(2)), "test.pdf");
+        String sessionId = session.getSessionId();
+        AnnotationRequest first = new AnnotationRequest("First stamp", 2, 50.0, 50.0, 200.0, 20.0, "red");
+        first.setTemplate("approved");
+        AnnotationRequest second = new AnnotationRequest("Second stamp", 1, 50.0, 50.0, 200.0, 20.0, "red");
+        second.setTemplate("approved");
+        documentSessionService.addAnnotations(sessionId, List.of(first));
+        documentSessionService.addAnnotations(sessionId, List.of(second));
+
+        String warm = text(sessionId);
+        assertFalse(warm.contains("Second stamp"));
+        Thread.sleep(5);
+        documentSessionService.evictIdleSessions();
+        assertEquals(warm, text(sessionId));
+        documentSessionService.closeSession(sessionId);
+    }
+
+    @Test
+    void removesRejectedUploadsAndDocumentsNoSessionUses() throws Exception {
+        byte[] invalid = "not a pdf".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(IOException.class,
+                () -> documentSessionService.createSession(new ByteArrayInputStream(invalid), "invalid.pdf"));
+        assertFalse(documentStore.contains(HexFormat.of().formatHex(DocumentStore.sha256().digest(invalid))));
+
+        DocumentSession session = documentSessionService.createSession(
+                new ByteArrayInputStream(SamplePdfs.createPdf(1)), "test.pdf");
+        String unused = documentStore.store(new ByteArrayInputStream(SamplePdfs.createPdf(2)));
+
+        Thread.sleep(5);
+        documentStore.removeUnusedDocuments();
+        assertFalse(documentStore.contains(unused));
+        assertTrue(documentStore.contains(session.getDocumentId()));
+
+        documentSessionService.closeSession(session.getSessionId());
+        Thread.sleep(5);
+        documentStore.removeUnusedDocuments();
+        assertFalse(documentStore.contains(session.getDocumentId()));
+    }
+
+    private String text(String sessionId) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        documentSessionService.writeDocument(sessionId, new AnnotationOptions(), output);
+        try (PDDocument document = PDDocument.load(output.toByteArray())) {
+            return new PDFTextStripper().getText(document);
+        }
+    }
+}
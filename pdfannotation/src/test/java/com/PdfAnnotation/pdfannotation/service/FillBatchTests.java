@@ -0,0 +1,138 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+class FillBatchTests {
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Autowired
+    private DocumentStore documentStore;
+
+    @Autowired
+    private CollisionDetector collisionDetector;
+
+    @Test
+    void mergesRectanglesThatFormARectangle() {
+        List<float[]> row = List.of(new float[]{0, 0, 10, 5}, new float[]{10, 0, 25, 5}, new float[]{20, 0, 30, 5});
+        assertArrayEquals(new float[]{0, 0, 30, 5}, FillBatch.merge(row).get(0));
+
+        List<float[]> grid = List.of(new float[]{0, 0, 10, 10}, new float[]{10, 0, 20, 10},
+                new float[]{0, 10, 10, 20}, new float[]{10, 10, 20, 20}, new float[]{5, 5, 15, 15});
+        List<float[]> merged = FillBatch.merge(grid);
+        assertEquals(1, merged.size());
+        assertArrayEquals(new float[]{0, 0, 20, 20}, merged.get(0));
+
+        List<float[]> corner = List.of(new float[]{0, 0, 10, 10}, new float[]{5, 5, 20, 20});
+        assertEquals(2, FillBatch.merge(corner).size());
+    }
+
+    @Test
+    void paintsWordByWordSelectionsWithOneFill() throws Exception {
+        List<AnnotationRequest> annotations = new ArrayList<>();
+        for (int word = 0; word < 10; word++) {
+            // white-outs with nothing drawn on top, one per word along a line
+            annotations.add(new AnnotationRequest("", 1, 50.0 + word * 40, 100.0, 40.0, 14.0, "black"));
+        }
+        AnnotationRequest note = new AnnotationRequest("Reviewed", 1, 50.0, 300.0, 200.0, 20.0, "red");
+        note.setBackgroundColor("#fef3c7");
+        annotations.add(note);
+
+        try (PDDocument document = PDDocument.load(SamplePdfs.createPdf(1))) {
+            pdfAnnotationService.applyAnnotations(document, annotations);
+            Map<String, Integer> operators = appendedOperators(document);
+            // one fill per colour, and the ten words as one rectangle
+            assertEquals(2, operators.get("f"));
+            assertEquals(2, operators.get("re"));
+        }
+    }
+
+    @Test
+    void looksTheSameAsDrawingEachAnnotationOnItsOwn() throws Exception {
+        List<AnnotationRequest> annotations = new ArrayList<>(SamplePdfs.createAnnotations(12, 1));
+        // covers over earlier text, touching and overlapping boxes of different colours, a stamp
+        annotations.add(new AnnotationRequest("Covers the first two", 1, 60.0, 45.0, 150.0, 25.0, "blue"));
+        for (int word = 0; word < 6; word++) {
+            AnnotationRequest highlight = new AnnotationRequest("w" + word, 1, 300.0 + word * 30, 200.0, 30.0, 14.0, "black");
+            highlight.setBackgroundColor(word % 2 == 0 ? "yellow" : "#fef3c7");
+            annotations.add(highlight);
+        }
+        annotations.add(new AnnotationRequest("", 1, 320.0, 190.0, 60.0, 40.0, "black"));
+        AnnotationRequest stamp = new AnnotationRequest("APPROVED", 1, 100.0, 500.0, 120.0, 40.0, "green");
+        stamp.setTemplate("approved");
+        annotations.add(stamp);
+        annotations.add(new AnnotationRequest("Over the stamp", 1, 150.0, 510.0, 120.0, 14.0, "red"));
+
+        byte[] pdf = SamplePdfs.createPdf(1);
+        try (PDDocument batched = PDDocument.load(pdf); PDDocument separate = PDDocument.load(pdf)) {
+            pdfAnnotationService.applyAnnotations(batched, annotations);
+            for (AnnotationRequest annotation : annotations) {
+                // a call per annotation draws everything in request order
+                pdfAnnotationService.applyAnnotations(separate, List.of(annotation));
+            }
+            assertArrayEquals(pixels(separate), pixels(batched));
+        }
+    }
+
+    @Test
+    void reportsOverlappingAnnotations() throws Exception {
+        String documentId = documentStore.store(new ByteArrayInputStream(SamplePdfs.createPdf(2)));
+        List<AnnotationRequest> annotations = List.of(
+                new AnnotationRequest("a", 1, 100.0, 100.0, 100.0, 20.0, "red"),
+                new AnnotationRequest("touches a", 1, 200.0, 100.0, 50.0, 20.0, "red"),
+                new AnnotationRequest("other page", 2, 100.0, 100.0, 100.0, 20.0, "red"),
+                new AnnotationRequest("overlaps a", 1, 150.0, 110.0, 100.0, 20.0, "red"));
+
+        List<CollisionDetector.Collision> collisions = collisionDetector.find(documentId, annotations);
+
+        assertEquals(2, collisions.size());
+        CollisionDetector.Collision first = collisions.get(0);
+        assertEquals(List.of(0, 3, 1), List.of(first.getFirst(), first.getSecond(), first.getPageNumber()));
+        assertArrayEquals(new float[]{150, 110, 50, 10},
+                new float[]{first.getX(), first.getY(), first.getWidth(), first.getHeight()}, 0.001f);
+        assertEquals(List.of(1, 3), List.of(collisions.get(1).getFirst(), collisions.get(1).getSecond()));
+    }
+
+    /**
+     * Operator counts of the stream appended to the first page.
+     */
+    private static Map<String, Integer> appendedOperators(PDDocument document) throws Exception {
+        COSArray contents = (COSArray) document.getPage(0).getCOSObject().getDictionaryObject(COSName.CONTENTS);
+        PDFStreamParser parser = new PDFStreamParser(((COSStream) contents.getObject(contents.size() - 1)).toTextString().getBytes("ISO-8859-1"));
+        Map<String, Integer> counts = new HashMap<>();
+        for (Object token = parser.parseNextToken(); token != null; token = parser.parseNextToken()) {
+            if (token instanceof Operator) {
+                counts.merge(((Operator) token).getName(), 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    private static int[] pixels(PDDocument document) throws Exception {
+        BufferedImage image = new PDFRenderer(document).renderImageWithDPI(0, 72);
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+}
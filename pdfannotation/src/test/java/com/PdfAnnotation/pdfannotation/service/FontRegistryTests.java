@@ -0,0 +1,76 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class FontRegistryTests {
+
+    private static final String BUNDLED_FONT = "/org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf";
+
+    @DynamicPropertySource
+    static void fontDirectory(DynamicPropertyRegistry registry) throws IOException {
+        Path directory = Files.createTempDirectory("fonts");
+        try (InputStream font = PDDocument.class.getResourceAsStream(BUNDLED_FONT)) {
+            Files.copy(font, directory.resolve("LiberationSans-Regular.ttf"));
+        }
+        registry.add("pdf.fonts.dir", directory::toString);
+        registry.add("pdf.fonts.fallback", () -> "LiberationSans");
+    }
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Test
+    void embedsSubsetOfRegisteredFontForTextOutsideWinAnsi() throws Exception {
+        AnnotationRequest named = new AnnotationRequest("Signed", 1, 50.0, 50.0, 200.0, 20.0, "black");
+        named.setFontStyle("liberationsans-regular");
+        AnnotationRequest fallback = new AnnotationRequest("Łódź – Zoë", 1, 50.0, 100.0, 200.0, 20.0, "black");
+        AnnotationRequest standard = new AnnotationRequest("Plain", 1, 50.0, 150.0, 200.0, 20.0, "black");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pdfAnnotationService.annotatePdf(new ByteArrayInputStream(SamplePdfs.createPdf(1)),
+                List.of(named, fallback, standard), new AnnotationOptions(), output);
+
+        try (PDDocument document = PDDocument.load(output.toByteArray())) {
+            PDResources resources = document.getPage(0).getResources();
+            List<PDFont> type0Fonts = new ArrayList<>();
+            for (COSName name : resources.getFontNames()) {
+                PDFont font = resources.getFont(name);
+                if (font instanceof PDType0Font) {
+                    type0Fonts.add(font);
+                }
+            }
+            // both annotations share one subset of the font within the document
+            assertEquals(1, type0Fonts.size());
+            assertTrue(type0Fonts.get(0).getName().matches("[A-Z]{6}\\+LiberationSans"), type0Fonts.get(0).getName());
+            assertTrue(type0Fonts.get(0).getFontDescriptor().getFontFile2().toByteArray().length < 100_000);
+
+            assertTrue(new PDFTextStripper().getText(document).contains("Łódź – Zoë"));
+        }
+    }
+}
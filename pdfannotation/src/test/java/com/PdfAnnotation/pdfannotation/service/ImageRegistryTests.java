@@ -0,0 +1,132 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+class ImageRegistryTests {
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Autowired
+    private ImageRegistry imageRegistry;
+
+    @Autowired
+    private DocumentStore documentStore;
+
+    @Test
+    void placementsShareOneXObjectAndConversionIsCached() throws Exception {
+        String imageId = imageRegistry.register(new ByteArrayInputStream(encode(true, "png"))).getImageId();
+        assertSame(imageRegistry.compiled(imageId), imageRegistry.compiled(imageId));
+
+        List<AnnotationRequest> annotations = new ArrayList<>();
+        for (int page = 1; page <= 3; page++) {
+            annotations.add(imageAnnotation(imageId, page, 50.0));
+            annotations.add(imageAnnotation(imageId, page, 300.0));
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pdfAnnotationService.annotatePdf(new ByteArrayInputStream(SamplePdfs.createPdf(3)),
+                annotations, new AnnotationOptions(), output);
+
+        try (PDDocument document = PDDocument.load(output.toByteArray())) {
+            PDResources first = document.getPage(0).getResources();
+            COSName name = first.getXObjectNames().iterator().next();
+            PDImageXObject image = (PDImageXObject) first.getXObject(name);
+            assertEquals(120, image.getWidth());
+            assertNotNull(image.getCOSObject().getDictionaryObject(COSName.SMASK));
+            for (int page = 1; page < 3; page++) {
+                PDResources resources = document.getPage(page).getResources();
+                COSName other = resources.getXObjectNames().iterator().next();
+                assertSame(image.getCOSObject(), resources.getXObject(other).getCOSObject());
+            }
+        }
+    }
+
+    @Test
+    void embedsJpegWithoutReencoding() throws Exception {
+        byte[] jpeg = encode(false, "jpg");
+        String imageId = imageRegistry.register(new ByteArrayInputStream(jpeg)).getImageId();
+
+        try (PDDocument document = new PDDocument()) {
+            PDImageXObject image = imageRegistry.forDocument(document).get(imageId);
+            assertEquals(COSName.DCT_DECODE, image.getCOSObject().getDictionaryObject(COSName.FILTER));
+            assertArrayEquals(jpeg, image.getCOSObject().createRawInputStream().readAllBytes());
+        }
+    }
+
+    @Test
+    void rejectsUnknownImage() {
+        String unknown = "0".repeat(64);
+        assertThrows(IllegalArgumentException.class,
+                () -> pdfAnnotationService.annotatePdf(new ByteArrayInputStream(SamplePdfs.createPdf(1)),
+                        List.of(imageAnnotation(unknown, 1, 50.0)), new AnnotationOptions(),
+                        new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void rejectsUndecodableAndOversizedUploadsWithoutStoringThem() throws Exception {
+        byte[] garbage = "not an image".getBytes();
+        assertThrows(IllegalArgumentException.class, () -> imageRegistry.register(new ByteArrayInputStream(garbage)));
+        assertFalse(documentStore.contains(sha256(garbage)));
+
+        // a few hundred bytes that declare 100000x100000 pixels
+        byte[] huge = encode(false, "png");
+        ByteBuffer.wrap(huge, 16, 8).putInt(100_000).putInt(100_000);
+        assertThrows(IllegalArgumentException.class, () -> imageRegistry.register(new ByteArrayInputStream(huge)));
+        assertFalse(documentStore.contains(sha256(huge)));
+    }
+
+    private static String sha256(byte[] bytes) {
+        return HexFormat.of().formatHex(DocumentStore.sha256().digest(bytes));
+    }
+
+    private static AnnotationRequest imageAnnotation(String imageId, int page, double x) {
+        AnnotationRequest annotation = new AnnotationRequest();
+        annotation.setType(AnnotationRequest.TYPE_IMAGE);
+        annotation.setImageId(imageId);
+        annotation.setPageNumber(page);
+        annotation.setX(x);
+        annotation.setY(100.0);
+        annotation.setWidth(200.0);
+        annotation.setHeight(50.0);
+        return annotation;
+    }
+
+    private static byte[] encode(boolean alpha, String format) throws IOException {
+        BufferedImage image = new BufferedImage(120, 40,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < image.getWidth(); x++) {
+            image.setRGB(x, x % image.getHeight(), Color.BLUE.getRGB());
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, format, output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,196 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationLink;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDPageDestination;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDPageFitDestination;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class PageExtractorTests {
+
+    private static final String BUNDLED_FONT = "/org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf";
+
+    @DynamicPropertySource
+    static void fontDirectory(DynamicPropertyRegistry registry) throws IOException {
+        Path directory = Files.createTempDirectory("fonts");
+        try (InputStream font = PDDocument.class.getResourceAsStream(BUNDLED_FONT)) {
+            Files.copy(font, directory.resolve("LiberationSans-Regular.ttf"));
+        }
+        registry.add("pdf.fonts.dir", directory::toString);
+    }
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Autowired
+    private PageExtractor pageExtractor;
+
+    @Autowired
+    private DocumentSessionService documentSessionService;
+
+    @Test
+    void returnsOnlyTheAnnotatedPages() throws Exception {
+        byte[] pdf = SamplePdfs.createPdf(20);
+        AnnotationOptions options = new AnnotationOptions();
+        options.setPages(PageExtractor.ANNOTATED);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pdfAnnotationService.annotatePdf(new ByteArrayInputStream(pdf), List.of(
+                new AnnotationRequest("Checked", 12, 40.0, 40.0, 200.0, 20.0, "red"),
+                new AnnotationRequest("Checked", 3, 40.0, 40.0, 200.0, 20.0, "red")), options, output);
+
+        try (PDDocument document = PDDocument.load(output.toByteArray())) {
+            assertEquals(2, document.getNumberOfPages());
+            String text = new PDFTextStripper().getText(document);
+            assertTrue(text.indexOf("Page 3 line 1 ") < text.indexOf("Page 12 line 1 "));
+            assertTrue(text.contains("Checked"));
+            assertTrue(output.size() < pdf.length / 4);
+        }
+    }
+
+    @Test
+    void embedsTheSubsetOfARegisteredFont() throws Exception {
+        byte[] pdf = SamplePdfs.createPdf(3);
+        AnnotationRequest annotation = new AnnotationRequest("Łódź", 2, 40.0, 40.0, 200.0, 20.0, "red");
+        annotation.setFontStyle("liberationsans-regular");
+        AnnotationOptions options = new AnnotationOptions();
+        options.setPages("2");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pdfAnnotationService.annotatePdf(new ByteArrayInputStream(pdf), List.of(annotation), options, output);
+        assertEmbedsFont(output.toByteArray(), 0);
+
+        // a session extracts pages and is still saved whole afterwards
+        DocumentSession session = documentSessionService.createSession(new ByteArrayInputStream(pdf), "sample.pdf");
+        documentSessionService.addAnnotations(session.getSessionId(), List.of(annotation));
+        ByteArrayOutputStream extracted = new ByteArrayOutputStream();
+        documentSessionService.writeDocument(session.getSessionId(), options, extracted);
+        assertEmbedsFont(extracted.toByteArray(), 0);
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        documentSessionService.writeDocument(session.getSessionId(), new AnnotationOptions(), whole);
+        assertEmbedsFont(whole.toByteArray(), 1);
+        documentSessionService.closeSession(session.getSessionId());
+    }
+
+    @Test
+    void prunesSharedResourcesAndLinksToDroppedPages() throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            // one resource dictionary shared by all pages, each page using one of its fonts
+            PDResources shared = new PDResources();
+            shared.put(COSName.getPDFName("F1"), PDType1Font.HELVETICA);
+            shared.put(COSName.getPDFName("F2"), PDType1Font.COURIER);
+            for (int i = 0; i < 3; i++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                page.setResources(shared);
+                document.addPage(page);
+                try (PDPageContentStream contentStream = new PDPageContentStream(document, page)) {
+                    contentStream.beginText();
+                    contentStream.setFont(i == 0 ? PDType1Font.HELVETICA : PDType1Font.COURIER, 12);
+                    contentStream.newLineAtOffset(50, 700);
+                    contentStream.showText("Page " + (i + 1));
+                    contentStream.endText();
+                }
+            }
+            PDPage first = document.getPage(0);
+            first.getAnnotations().add(link(document.getPage(1)));
+            first.getAnnotations().add(link(document.getPage(2)));
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            pageExtractor.write(document, pageExtractor.select(document, "1-2"), output);
+
+            assertEquals(2, first.getAnnotations().size());
+            try (PDDocument extracted = PDDocument.load(output.toByteArray())) {
+                assertEquals(2, extracted.getNumberOfPages());
+                assertEquals(Set.of("F1"), fontNames(extracted.getPage(0)));
+                assertEquals(Set.of("F2"), fontNames(extracted.getPage(1)));
+
+                List<PDAnnotation> annotations = extracted.getPage(0).getAnnotations();
+                assertEquals(1, annotations.size());
+                PDPageDestination destination = (PDPageDestination) ((PDAnnotationLink) annotations.get(0)).getDestination();
+                assertSame(extracted.getPage(1).getCOSObject(), destination.getPage().getCOSObject());
+            }
+        }
+    }
+
+    @Test
+    void rejectsBadSelections() throws Exception {
+        try (PDDocument document = PDDocument.load(SamplePdfs.createPdf(5))) {
+            assertEquals(List.of(1, 2, 4, 5), pageExtractor.select(document, "4-5, 1-2,2"));
+            assertThrows(IllegalArgumentException.class, () -> pageExtractor.select(document, "3-6"));
+            assertThrows(IllegalArgumentException.class, () -> pageExtractor.select(document, "2-x"));
+            assertThrows(IllegalArgumentException.class, () -> pageExtractor.select(document, PageExtractor.ANNOTATED));
+
+            AnnotationOptions options = new AnnotationOptions();
+            options.setPages("1");
+            options.setIncremental(true);
+            assertThrows(IllegalArgumentException.class, () -> pdfAnnotationService.validateOutput(document, options));
+        }
+    }
+
+    private static void assertEmbedsFont(byte[] pdf, int pageIndex) throws IOException {
+        try (PDDocument document = PDDocument.load(pdf)) {
+            PDResources resources = document.getPage(pageIndex).getResources();
+            PDType0Font font = null;
+            for (COSName name : resources.getFontNames()) {
+                PDFont candidate = resources.getFont(name);
+                if (candidate instanceof PDType0Font) {
+                    font = (PDType0Font) candidate;
+                }
+            }
+            assertNotNull(font);
+            assertTrue(font.getName().matches("[A-Z]{6}\\+LiberationSans"), font.getName());
+            assertNotNull(font.getFontDescriptor().getFontFile2());
+            assertTrue(new PDFTextStripper().getText(document).contains("Łódź"));
+        }
+    }
+
+    private static PDAnnotationLink link(PDPage target) {
+        PDPageFitDestination destination = new PDPageFitDestination();
+        destination.setPage(target);
+        PDAnnotationLink link = new PDAnnotationLink();
+        link.setRectangle(new PDRectangle(50, 50, 100, 20));
+        link.setDestination(destination);
+        return link;
+    }
+
+    private static Set<String> fontNames(PDPage page) {
+        return StreamSupport.stream(page.getResources().getFontNames().spliterator(), false)
+                .map(COSName::getName)
+                .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,86 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import com.PdfAnnotation.pdfannotation.dto.RenderOptions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+class PageRendererTests {
+
+    @Autowired
+    private PageRenderer pageRenderer;
+
+    @Autowired
+    private DocumentStore documentStore;
+
+    @Autowired
+    private DocumentSessionService documentSessionService;
+
+    @Test
+    void rendersPagesAndTilesThatLineUp() throws Exception {
+        String documentId = documentStore.store(new ByteArrayInputStream(SamplePdfs.createPdf(2)));
+        RenderOptions options = new RenderOptions();
+        options.setDpi(72);
+
+        byte[] png = pageRenderer.render(documentId, 2, options);
+        BufferedImage page = decode(png);
+        assertEquals(612, page.getWidth());
+        assertEquals(792, page.getHeight());
+        assertSame(png, pageRenderer.render(documentId, 2, options));
+
+        options.setTileSize(256);
+        options.setTileX(2);
+        options.setTileY(0);
+        BufferedImage tile = decode(pageRenderer.render(documentId, 2, options));
+        assertEquals(612 - 512, tile.getWidth());
+        assertEquals(256, tile.getHeight());
+        assertArrayEquals(page.getRGB(512, 0, 100, 256, null, 0, 100), tile.getRGB(0, 0, 100, 256, null, 0, 100));
+
+        options.setTileX(3);
+        assertThrows(IllegalArgumentException.class, () -> pageRenderer.render(documentId, 2, options));
+        options.setTileSize(0);
+        assertThrows(IllegalArgumentException.class, () -> pageRenderer.render(documentId, 3, options));
+        options.setDpi(10_000);
+        assertThrows(IllegalArgumentException.class, () -> pageRenderer.render(documentId, 1, options));
+    }
+
+    @Test
+    void sessionPreviewRendersOnlyAnnotatedPagesFromTheSession() throws Exception {
+        byte[] pdf = SamplePdfs.createPdf(3);
+        DocumentSession session = documentSessionService.createSession(new ByteArrayInputStream(pdf), "sample.pdf");
+        RenderOptions options = new RenderOptions();
+        options.setDpi(36);
+        byte[] originalPage1 = pageRenderer.render(session.getDocumentId(), 1, options);
+        byte[] originalPage2 = pageRenderer.render(session.getDocumentId(), 2, options);
+
+        documentSessionService.addAnnotations(session.getSessionId(), List.of(
+                new AnnotationRequest("Reviewed", 2, 40.0, 40.0, 300.0, 60.0, "red")));
+
+        assertEquals(List.of(2), documentSessionService.getAnnotatedPages(session.getSessionId()));
+        assertSame(originalPage1, documentSessionService.renderPage(session.getSessionId(), 1, options));
+        byte[] annotatedPage2 = documentSessionService.renderPage(session.getSessionId(), 2, options);
+        assertFalse(Arrays.equals(originalPage2, annotatedPage2));
+        assertSame(annotatedPage2, documentSessionService.renderPage(session.getSessionId(), 2, options));
+        documentSessionService.closeSession(session.getSessionId());
+    }
+
+    private static BufferedImage decode(byte[] image) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(image));
+    }
+}
@@ -0,0 +1,160 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class PdfAnnotationServiceTests {
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Test
+    void appendsOneContentStreamPerPage() throws Exception {
+        byte[] pdf = SamplePdfs.createPdf(3);
+        List<AnnotationRequest> annotations = SamplePdfs.createAnnotations(200, 2);
+        annotations.get(0).setLink("https://example.com");
+
+        try (PDDocument document = pdfAnnotationService.loadDocument(new ByteArrayInputStream(pdf))) {
+            pdfAnnotationService.applyAnnotations(document, annotations);
+
+            // the graphics-state reset prefix, the original content and one appended stream
+            assertEquals(3, contentStreamCount(document.getPage(0)));
+            assertEquals(3, contentStreamCount(document.getPage(1)));
+            assertEquals(1, contentStreamCount(document.getPage(2)));
+            assertEquals(1, document.getPage(0).getAnnotations().size());
+        }
+    }
+
+    @Test
+    void rejectsInvalidPageBeforeDrawing() throws Exception {
+        byte[] pdf = SamplePdfs.createPdf(1);
+        List<AnnotationRequest> annotations = SamplePdfs.createAnnotations(2, 1);
+        annotations.get(1).setPageNumber(5);
+
+        try (PDDocument document = pdfAnnotationService.loadDocument(new ByteArrayInputStream(pdf))) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> pdfAnnotationService.applyAnnotations(document, annotations));
+            assertEquals(1, contentStreamCount(document.getPage(0)));
+        }
+    }
+
+    @Test
+    void incrementalSaveAppendsRevisionToOriginalBytes() throws Exception {
+        byte[] pdf = SamplePdfs.createPdf(50);
+        List<AnnotationRequest> annotations = SamplePdfs.createAnnotations(1, 1);
+        annotations.get(0).setPageNumber(30);
+        annotations.get(0).setLink("https://example.com");
+        AnnotationOptions options = new AnnotationOptions();
+        options.setIncremental(true);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pdfAnnotationService.annotatePdf(new ByteArrayInputStream(pdf), annotations, options, output);
+        byte[] result = output.toByteArray();
+
+        assertArrayEquals(pdf, Arrays.copyOf(result, pdf.length));
+        assertTrue(result.length - pdf.length < pdf.length / 10,
+                "revision should be small, was " + (result.length - pdf.length) + " bytes");
+
+        try (PDDocument document = PDDocument.load(result)) {
+            assertEquals(50, document.getNumberOfPages());
+            assertEquals(3, contentStreamCount(document.getPage(29)));
+            assertEquals(1, document.getPage(29).getAnnotations().size());
+            assertEquals(1, contentStreamCount(document.getPage(28)));
+        }
+    }
+
+    @Test
+    void templateIsRenderedOnceAndPlacedOnEveryPage() throws Exception {
+        int pages = 20;
+        byte[] pdf = SamplePdfs.createPdf(pages);
+        List<AnnotationRequest> stamps = new ArrayList<>();
+        for (int page = 1; page <= pages; page++) {
+            AnnotationRequest stamp = new AnnotationRequest("APPROVED", page, 400.0, 40.0,
+                    page % 2 == 0 ? 120.0 : 60.0, 40.0, "#15803d");
+            stamp.setBackgroundColor("#dcfce7");
+            stamp.setBorderColor("#15803d");
+            stamp.setTemplate("approved");
+            stamps.add(stamp);
+        }
+        AnnotationOptions options = new AnnotationOptions();
+        options.setIncremental(true);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pdfAnnotationService.annotatePdf(new ByteArrayInputStream(pdf), stamps, options, output);
+
+        try (PDDocument document = PDDocument.load(output.toByteArray())) {
+            PDResources first = document.getPage(0).getResources();
+            COSName name = first.getXObjectNames().iterator().next();
+            for (int page = 1; page < pages; page++) {
+                PDResources resources = document.getPage(page).getResources();
+                assertEquals(1, countNames(resources.getXObjectNames()));
+                assertSame(first.getXObject(name).getCOSObject(),
+                        resources.getXObject(resources.getXObjectNames().iterator().next()).getCOSObject());
+            }
+        }
+    }
+
+    @Test
+    void nativeModeAddsAnnotationObjectsWithoutTouchingContent() throws Exception {
+        byte[] pdf = SamplePdfs.createPdf(2);
+        List<AnnotationRequest> annotations = SamplePdfs.createAnnotations(4, 1);
+        annotations.get(0).setLink("https://example.com");
+        AnnotationOptions options = new AnnotationOptions();
+        options.setIncremental(true);
+        options.setMode(AnnotationOptions.Mode.NATIVE);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pdfAnnotationService.annotatePdf(new ByteArrayInputStream(pdf), annotations, options, output);
+        byte[] result = output.toByteArray();
+
+        assertArrayEquals(pdf, Arrays.copyOf(result, pdf.length));
+        try (PDDocument document = PDDocument.load(result)) {
+            assertEquals(1, contentStreamCount(document.getPage(0)));
+            List<PDAnnotation> pageAnnotations = document.getPage(0).getAnnotations();
+            assertEquals(5, pageAnnotations.size());
+            PDAnnotation freeText = pageAnnotations.get(0);
+            assertEquals("FreeText", freeText.getSubtype());
+            assertEquals(annotations.get(0).getSelectedText(), freeText.getContents());
+            assertNotNull(freeText.getNormalAppearanceStream());
+            assertEquals("Link", pageAnnotations.get(1).getSubtype());
+        }
+    }
+
+    private static int countNames(Iterable<COSName> names) {
+        int count = 0;
+        for (COSName ignored : names) {
+            count++;
+        }
+        return count;
+    }
+
+    private static int contentStreamCount(PDPage page) {
+        COSBase contents = page.getCOSObject().getDictionaryObject(COSName.CONTENTS);
+        return contents instanceof COSArray ? ((COSArray) contents).size() : 1;
+    }
+}
@@ -0,0 +1,90 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// results over two bytes are served from disk
+@SpringBootTest(properties = "pdf.result-cache.memory-max-entry-bytes=2B")
+class ResultCacheTests {
+
+    @Autowired
+    private ResultCache resultCache;
+
+    @Value("${pdf.result-cache.dir}")
+    private Path cacheDirectory;
+
+    @Test
+    void keyDependsOnContentNotIdentity() throws Exception {
+        String documentHash = UUID.randomUUID().toString();
+        AnnotationOptions incremental = new AnnotationOptions();
+        incremental.setIncremental(true);
+
+        String key = resultCache.key(documentHash, SamplePdfs.createAnnotations(3, 1), new AnnotationOptions());
+
+        assertEquals(key, resultCache.key(documentHash, SamplePdfs.createAnnotations(3, 1), null));
+        assertNotEquals(key, resultCache.key(documentHash, SamplePdfs.createAnnotations(2, 1), null));
+        assertNotEquals(key, resultCache.key(documentHash, SamplePdfs.createAnnotations(3, 1), incremental));
+    }
+
+    @Test
+    void committedResultsAreServedAndUncommittedDiscarded() throws Exception {
+        List<AnnotationRequest> annotations = SamplePdfs.createAnnotations(1, 1);
+        String committedKey = resultCache.key(UUID.randomUUID().toString(), annotations, null);
+        String abandonedKey = resultCache.key(UUID.randomUUID().toString(), annotations, null);
+        byte[] data = {1, 2, 3, 4};
+
+        try (ResultCache.PendingResult pending = resultCache.begin(committedKey)) {
+            pending.getOutputStream().write(data);
+            pending.commit();
+        }
+        try (ResultCache.PendingResult pending = resultCache.begin(abandonedKey)) {
+            pending.getOutputStream().write(data);
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        resultCache.get(committedKey).writeTo(output);
+        assertArrayEquals(data, output.toByteArray());
+        assertNull(resultCache.get(abandonedKey));
+    }
+
+    @Test
+    void servesAResultEvictedAfterTheLookup() throws Exception {
+        String key = resultCache.key(UUID.randomUUID().toString(), SamplePdfs.createAnnotations(1, 1), null);
+        byte[] data = {5, 6, 7, 8, 9};
+        try (ResultCache.PendingResult pending = resultCache.begin(key)) {
+            pending.getOutputStream().write(data);
+            pending.commit();
+        }
+
+        ResultCache.CachedResult cached = resultCache.get(key);
+        assertEquals(data.length, cached.getSize());
+        // another node evicts the file before the response body is written
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            for (Path file : files.filter(path -> path.getFileName().toString().startsWith(key)).toList()) {
+                Files.delete(file);
+            }
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        cached.writeTo(output);
+        assertArrayEquals(data, output.toByteArray());
+        assertNull(resultCache.get(key));
+    }
+}
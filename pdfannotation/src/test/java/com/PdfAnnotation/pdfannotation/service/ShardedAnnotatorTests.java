@@ -0,0 +1,255 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationLink;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// three workers and no minimum, so even a small request is split into three shards
+@SpringBootTest(properties = {"pdf.shards.parallelism=3", "pdf.shards.min-annotations-per-shard=1"})
+class ShardedAnnotatorTests {
+
+    private static final int PAGES = 12;
+
+    private static final String BUNDLED_FONT = "/org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf";
+
+    @DynamicPropertySource
+    static void fontDirectory(DynamicPropertyRegistry registry) throws IOException {
+        Path directory = Files.createTempDirectory("fonts");
+        try (InputStream font = PDDocument.class.getResourceAsStream(BUNDLED_FONT)) {
+            Files.copy(font, directory.resolve("LiberationSans-Regular.ttf"));
+        }
+        registry.add("pdf.fonts.dir", directory::toString);
+    }
+
+    @Autowired
+    private ShardedAnnotator shardedAnnotator;
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Autowired
+    private ImageRegistry imageRegistry;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void splitsIntoBalancedPageRanges() throws Exception {
+        try (PDDocument document = PDDocument.load(SamplePdfs.createPdf(PAGES))) {
+            List<List<AnnotationRequest>> shards = shardedAnnotator.split(document,
+                    SamplePdfs.createAnnotations(120, PAGES));
+            assertEquals(3, shards.size());
+            assertEquals(List.of(40, 40, 40), shards.stream().map(List::size).toList());
+            assertEquals(Set.of(1, 2, 3, 4), pages(shards.get(0)));
+            assertEquals(Set.of(9, 10, 11, 12), pages(shards.get(2)));
+
+            List<AnnotationRequest> invalid = SamplePdfs.createAnnotations(PAGES + 1, PAGES + 1);
+            assertThrows(IllegalArgumentException.class, () -> shardedAnnotator.split(document, invalid));
+        }
+    }
+
+    @Test
+    void producesTheSamePagesAsOneThread() throws Exception {
+        File pdf = write(SamplePdfs.createPdf(PAGES));
+        List<AnnotationRequest> annotations = annotations();
+
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        pdfAnnotationService.annotatePdf(Files.newInputStream(pdf.toPath()), annotations, null, single);
+        ByteArrayOutputStream sharded = new ByteArrayOutputStream();
+        shardedAnnotator.annotatePdf(pdf, annotations, null, sharded);
+
+        try (PDDocument expected = PDDocument.load(single.toByteArray());
+             PDDocument actual = PDDocument.load(sharded.toByteArray())) {
+            assertEquals(PAGES, actual.getNumberOfPages());
+            assertEquals(new PDFTextStripper().getText(expected), new PDFTextStripper().getText(actual));
+            for (int i = 0; i < PAGES; i++) {
+                assertEquals(links(expected.getPage(i)), links(actual.getPage(i)));
+                assertArrayEquals(pixels(expected, i), pixels(actual, i), "page " + (i + 1));
+            }
+
+            // the original font and the stamp template exist once, however many shards drew them
+            Set<COSBase> fonts = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<COSBase> forms = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (PDPage page : actual.getPages()) {
+                PDResources resources = page.getResources();
+                fonts.add(resources.getCOSObject().getCOSDictionary(COSName.FONT).getDictionaryObject("F1"));
+                for (COSName name : resources.getXObjectNames()) {
+                    forms.add(resources.getCOSObject().getCOSDictionary(COSName.XOBJECT).getDictionaryObject(name));
+                }
+            }
+            assertEquals(1, fonts.size());
+            assertEquals(1, forms.size());
+            assertTrue(sharded.size() < single.size() * 1.1);
+        }
+    }
+
+    @Test
+    void savesShardedPagesIncrementally() throws Exception {
+        byte[] original = SamplePdfs.createPdf(PAGES);
+        File pdf = write(original);
+        AnnotationOptions options = new AnnotationOptions();
+        options.setIncremental(true);
+        options.setSharded(true);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        shardedAnnotator.annotatePdf(pdf, annotations(), options, output);
+
+        byte[] saved = output.toByteArray();
+        assertArrayEquals(original, Arrays.copyOf(saved, original.length));
+        try (PDDocument document = PDDocument.load(saved)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setStartPage(PAGES);
+            stripper.setEndPage(PAGES);
+            assertTrue(stripper.getText(document).contains("Replacement text " + (PAGES - 1)));
+            assertEquals(1, links(document.getPage(PAGES - 1)));
+        }
+    }
+
+    @Test
+    void subsetsARegisteredFontOnceInEveryShard() throws Exception {
+        File pdf = write(SamplePdfs.createPdf(PAGES));
+        List<AnnotationRequest> annotations = new ArrayList<>();
+        for (int pageNumber = 1; pageNumber <= PAGES; pageNumber++) {
+            AnnotationRequest annotation = new AnnotationRequest("Signed", pageNumber, 40.0, 40.0, 200.0, 20.0, "red");
+            annotation.setFontStyle("liberationsans-regular");
+            annotations.add(annotation);
+        }
+
+        for (String pages : new String[]{null, "1,12"}) {
+            AnnotationOptions options = new AnnotationOptions();
+            options.setSharded(true);
+            options.setPages(pages);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            shardedAnnotator.annotatePdf(pdf, annotations, options, output);
+
+            try (PDDocument document = PDDocument.load(output.toByteArray())) {
+                for (PDPage page : document.getPages()) {
+                    PDResources resources = page.getResources();
+                    PDType0Font font = null;
+                    for (COSName name : resources.getFontNames()) {
+                        PDFont candidate = resources.getFont(name);
+                        if (candidate instanceof PDType0Font) {
+                            font = (PDType0Font) candidate;
+                        }
+                    }
+                    assertNotNull(font);
+                    assertNotNull(font.getFontDescriptor().getFontFile2());
+                }
+            }
+        }
+    }
+
+    @Test
+    void sharesANativeImageTemplateAcrossShards() throws Exception {
+        BufferedImage logo = new BufferedImage(60, 20, BufferedImage.TYPE_INT_RGB);
+        logo.setRGB(0, 0, 60, 20, new int[60 * 20], 0, 60);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(logo, "png", png);
+        String imageId = imageRegistry.register(new ByteArrayInputStream(png.toByteArray())).getImageId();
+
+        File pdf = write(SamplePdfs.createPdf(PAGES));
+        List<AnnotationRequest> annotations = new ArrayList<>();
+        for (int pageNumber = 1; pageNumber <= PAGES; pageNumber += 4) {
+            // boxes of different sizes, so a template defined per shard would look different
+            AnnotationRequest image = new AnnotationRequest("", pageNumber, 300.0, 40.0,
+                    60.0 + pageNumber * 10, 40.0, "black");
+            image.setType(AnnotationRequest.TYPE_IMAGE);
+            image.setImageId(imageId);
+            image.setTemplate("logo");
+            annotations.add(image);
+        }
+        AnnotationOptions options = new AnnotationOptions();
+        options.setMode(AnnotationOptions.Mode.NATIVE);
+
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        pdfAnnotationService.annotatePdf(Files.newInputStream(pdf.toPath()), annotations, options, single);
+        ByteArrayOutputStream sharded = new ByteArrayOutputStream();
+        shardedAnnotator.annotatePdf(pdf, annotations, options, sharded);
+
+        try (PDDocument expected = PDDocument.load(single.toByteArray());
+             PDDocument actual = PDDocument.load(sharded.toByteArray())) {
+            Set<COSBase> appearances = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < PAGES; i++) {
+                assertArrayEquals(pixels(expected, i), pixels(actual, i), "page " + (i + 1));
+                for (PDAnnotation annotation : actual.getPage(i).getAnnotations()) {
+                    appearances.add(annotation.getNormalAppearanceStream().getCOSObject());
+                }
+            }
+            assertEquals(1, appearances.size());
+        }
+    }
+
+    /**
+     * Text on every page, a link on every page and one stamp template placed in every shard.
+     */
+    private static List<AnnotationRequest> annotations() {
+        List<AnnotationRequest> annotations = new ArrayList<>(SamplePdfs.createAnnotations(PAGES * 4, PAGES));
+        for (int i = 0; i < PAGES; i++) {
+            annotations.get(i).setLink("https://example.com/" + i);
+        }
+        for (int pageNumber = 2; pageNumber <= PAGES; pageNumber += 3) {
+            AnnotationRequest stamp = new AnnotationRequest("APPROVED", pageNumber, 400.0, 20.0,
+                    120.0 + pageNumber, 40.0, "green");
+            stamp.setTemplate("approved");
+            annotations.add(stamp);
+        }
+        return annotations;
+    }
+
+    private File write(byte[] pdf) throws Exception {
+        return Files.write(directory.resolve("document.pdf"), pdf).toFile();
+    }
+
+    private static Set<Integer> pages(List<AnnotationRequest> annotations) {
+        return annotations.stream().map(AnnotationRequest::getPageNumber).collect(Collectors.toSet());
+    }
+
+    private static long links(PDPage page) throws Exception {
+        return page.getAnnotations().stream().filter(PDAnnotationLink.class::isInstance).count();
+    }
+
+    private static int[] pixels(PDDocument document, int pageIndex) throws Exception {
+        BufferedImage image = new PDFRenderer(document).renderImageWithDPI(pageIndex, 36);
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+}
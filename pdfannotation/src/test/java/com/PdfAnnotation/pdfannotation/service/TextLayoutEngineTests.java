@@ -0,0 +1,71 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextLayoutEngineTests {
+
+    private static final PDFont FONT = PDType1Font.HELVETICA;
+
+    private final TextLayoutEngine engine = new TextLayoutEngine();
+
+    TextLayoutEngineTests() {
+        ReflectionTestUtils.setField(engine, "cacheSize", 16);
+    }
+
+    @Test
+    void wrapsWordsWithinTheWidthMeasuredByTheFont() throws Exception {
+        String text = "the quick brown fox jumps over the lazy dog again and again";
+        TextLayoutEngine.TextLayout layout = engine.layout(text, FONT, 10, 80, 200, false);
+
+        assertFalse(layout.isTruncated());
+        assertEquals(text, String.join(" ", layout.getLines()));
+        for (String line : layout.getLines()) {
+            assertTrue(FONT.getStringWidth(line) / 1000f * 10 <= 80, line);
+        }
+        // a line never has room for the first word of the next one
+        for (int i = 0; i + 1 < layout.getLines().size(); i++) {
+            String extended = layout.getLines().get(i) + " " + layout.getLines().get(i + 1).split(" ")[0];
+            assertTrue(FONT.getStringWidth(extended) / 1000f * 10 > 80, extended);
+        }
+    }
+
+    @Test
+    void reportsLinesThatDoNotFitAndBreaksLongWords() throws Exception {
+        TextLayoutEngine.TextLayout layout = engine.layout("a b c d e f\nsupercalifragilistic", FONT, 12, 30, 30, false);
+
+        assertEquals(TextLayoutEngine.maxLines(12, 30), layout.getLines().size());
+        assertTrue(layout.isTruncated());
+
+        TextLayoutEngine.TextLayout tall = engine.layout("supercalifragilistic", FONT, 12, 30, 500, false);
+        assertTrue(tall.getLines().size() > 1);
+        assertEquals("supercalifragilistic", String.join("", tall.getLines()));
+    }
+
+    @Test
+    void autoFitPicksTheLargestSizeThatFits() throws Exception {
+        String text = "Approved for payment by the finance department";
+        TextLayoutEngine.TextLayout layout = engine.layout(text, FONT, 40, 150, 40, true);
+
+        assertFalse(layout.isTruncated());
+        assertTrue(layout.getFontSize() < 40);
+        float larger = layout.getFontSize() + 0.25f;
+        assertTrue(engine.layout(text, FONT, larger, 150, 40, false).isTruncated());
+    }
+
+    @Test
+    void cachesRepeatedLayouts() throws Exception {
+        TextLayoutEngine.TextLayout first = engine.layout("PAID", FONT, 12, 100, 20, false);
+        assertSame(first, engine.layout("PAID", FONT, 12, 100, 20, false));
+        assertEquals(List.of("PAID"), first.getLines());
+    }
+}
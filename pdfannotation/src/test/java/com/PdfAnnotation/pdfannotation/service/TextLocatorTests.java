@@ -0,0 +1,123 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// three workers, so a 48 page document is indexed in three ranges
+@SpringBootTest(properties = "pdf.text-index.parallelism=3")
+class TextLocatorTests {
+
+    private static final int PAGES = 48;
+
+    @Autowired
+    private TextLocator textLocator;
+
+    @Autowired
+    private DocumentStore documentStore;
+
+    @Autowired
+    private DocumentSessionService documentSessionService;
+
+    @Test
+    void findsEveryOccurrenceWithItsBox() throws Exception {
+        String documentId = documentStore.store(new ByteArrayInputStream(SamplePdfs.createPdf(PAGES)));
+        TextIndex index = textLocator.index(documentId);
+
+        assertEquals(PAGES, index.getNumberOfPages());
+        assertSame(index, textLocator.index(documentId));
+        assertEquals(PAGES * SamplePdfs.LINES_PER_PAGE, index.find("quick  brown", 1, PAGES).size());
+        assertEquals(1, index.find("Page 33 line 7 -", 1, PAGES).size());
+        assertEquals(0, index.find("Page 33 line 7 -", 1, 32).size());
+
+        TextIndex.Hit hit = index.find("quick brown", 2, 2).get(3);
+        assertEquals(2, hit.getPageNumber());
+        assertEquals("quick brown", hit.getText());
+        assertEquals(50 + width("Page 2 line 3 - the "), hit.getX(), 0.5);
+        assertEquals(width("quick brown"), hit.getWidth(), 0.5);
+        // baseline of line 3 is 740 - 3 * 16 points up from the bottom of a 792 point page
+        float baseline = 792 - (740 - 3 * 16);
+        assertTrue(hit.getY() < baseline && hit.getY() + hit.getHeight() > baseline);
+        assertTrue(hit.getHeight() < 16);
+    }
+
+    @Test
+    void splitsAWrappedOccurrenceIntoOneAnnotationPerLine() throws Exception {
+        String documentId = documentStore.store(new ByteArrayInputStream(SamplePdfs.createPdf(2)));
+        AnnotationRequest wrapped = new AnnotationRequest("lazy dog\nPage 2 line 5", null, null, null, null, null, "yellow");
+        AnnotationRequest ranged = new AnnotationRequest("line 39 -", null, null, null, null, null, "red");
+        ranged.setFirstPage(2);
+        AnnotationRequest placed = new AnnotationRequest("kept", 1, 10.0, 10.0, 50.0, 20.0, "blue");
+
+        List<AnnotationRequest> located = textLocator.locate(List.of(wrapped, placed, ranged), documentId);
+
+        assertEquals(4, located.size());
+        assertEquals("lazy dog", located.get(0).getSelectedText());
+        assertEquals("Page 2 line 5", located.get(1).getSelectedText());
+        assertEquals(located.get(0).getPageNumber(), located.get(1).getPageNumber());
+        assertEquals(16, located.get(1).getY() - located.get(0).getY(), 0.5);
+        assertEquals("yellow", located.get(1).getColor());
+        assertSame(placed, located.get(2));
+        assertEquals(2, located.get(3).getPageNumber());
+        assertNull(located.get(3).getFirstPage());
+
+        AnnotationRequest outOfRange = new AnnotationRequest("fox", 3, null, null, null, null, "red");
+        assertThrows(IllegalArgumentException.class, () -> textLocator.locate(List.of(outOfRange), documentId));
+    }
+
+    @Test
+    void locatesInAnUnstoredFileAndSharesItsIndexByContent() throws Exception {
+        byte[] pdf = SamplePdfs.createPdf(2, 7);
+        String documentId = HexFormat.of().formatHex(DocumentStore.sha256().digest(pdf));
+        Path file = Files.createTempFile("locate-", ".pdf");
+        try {
+            Files.write(file, pdf);
+            AnnotationRequest annotation = new AnnotationRequest("jumps over", 1, null, null, null, null, "green");
+
+            List<AnnotationRequest> located = textLocator.locate(List.of(annotation), file.toFile());
+
+            assertEquals(SamplePdfs.LINES_PER_PAGE, located.size());
+            assertFalse(documentStore.contains(documentId));
+        } finally {
+            Files.delete(file);
+        }
+        // cached under the content hash, so the stored copy of the same content reuses it
+        TextIndex index = textLocator.index(documentId);
+        assertEquals(documentId, documentStore.store(new ByteArrayInputStream(pdf)));
+        assertSame(index, textLocator.index(documentId));
+    }
+
+    @Test
+    void sessionRecordsLocatedAnnotations() throws Exception {
+        DocumentSession session = documentSessionService.createSession(
+                new ByteArrayInputStream(SamplePdfs.createPdf(3)), "sample.pdf");
+        AnnotationRequest annotation = new AnnotationRequest("jumps over", 2, null, null, null, null, "green");
+
+        int total = documentSessionService.addAnnotations(session.getSessionId(), List.of(annotation));
+
+        assertEquals(SamplePdfs.LINES_PER_PAGE, total);
+        List<AnnotationRequest> recorded = documentSessionService.getAnnotations(session.getSessionId());
+        assertTrue(recorded.stream().allMatch(a -> a.getPageNumber() == 2 && a.getX() != null));
+        documentSessionService.closeSession(session.getSessionId());
+    }
+
+    private static float width(String text) throws Exception {
+        return PDType1Font.HELVETICA.getStringWidth(text) / 1000 * 11;
+    }
+}
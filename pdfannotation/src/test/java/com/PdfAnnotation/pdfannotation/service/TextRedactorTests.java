@@ -0,0 +1,152 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationOptions;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class TextRedactorTests {
+
+    private static final PDFont FONT = PDType1Font.HELVETICA;
+
+    @Autowired
+    private TextRedactor textRedactor;
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Test
+    void removesOnlyTheCoveredGlyphsAndKeepsTheRestInPlace() throws Exception {
+        try (PDDocument document = PDDocument.load(SamplePdfs.createPdf(1))) {
+            float brownX = xOf(document, "brown");
+            float quickX = 50 + width("Page 1 line 0 - the ", 11);
+
+            int removed = textRedactor.redact(document, document.getPage(0),
+                    List.of(new PDRectangle(quickX + 0.5f, 738, width("quick", 11) - 1, 10)));
+
+            assertEquals(5, removed);
+            String text = new PDFTextStripper().getText(document);
+            assertFalse(text.contains("line 0 - the quick"));
+            assertTrue(text.contains("Page 1 line 0 - the"));
+            assertTrue(text.contains("Page 1 line 1 - the quick brown fox"));
+            assertEquals(brownX, xOf(document, "brown"), 0.01);
+            assertInstanceOf(COSStream.class, document.getPage(0).getCOSObject().getDictionaryObject(COSName.CONTENTS));
+        }
+    }
+
+    @Test
+    void rewritesQuoteAndAdjustedTextAmongManyRectangles() throws Exception {
+        String content = "BT /F1 12 Tf 14 TL 72 700 Td (Alpha Beta) Tj (Gamma Delta) ' [(Eps) -20 (ilon)] TJ ET";
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.LETTER);
+            PDResources resources = new PDResources();
+            resources.put(COSName.getPDFName("F1"), FONT);
+            page.setResources(resources);
+            PDStream stream = new PDStream(document);
+            try (OutputStream outputStream = stream.createOutputStream()) {
+                outputStream.write(content.getBytes(StandardCharsets.US_ASCII));
+            }
+            page.setContents(stream);
+            document.addPage(page);
+            float deltaX = xOf(document, "Delta");
+
+            List<PDRectangle> areas = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                areas.add(new PDRectangle(20 + (i % 30) * 18, 40 + (i / 30) * 20, 10, 10));
+            }
+            areas.add(new PDRectangle(72 + width("Alpha ", 12), 698, width("Beta", 12), 10));
+            areas.add(new PDRectangle(72, 684, width("Gamma", 12), 10));
+            int removed = textRedactor.redact(document, page, areas);
+
+            assertEquals(9, removed);
+            String text = new PDFTextStripper().getText(document);
+            assertTrue(text.contains("Alpha"));
+            assertTrue(text.contains("Delta"));
+            assertTrue(text.contains("Epsilon"));
+            assertFalse(text.contains("Beta"));
+            assertFalse(text.contains("Gamma"));
+            assertEquals(deltaX, xOf(document, "Delta"), 0.01);
+        }
+    }
+
+    @Test
+    void redactOptionRemovesTextUnderAnnotations() throws Exception {
+        AnnotationRequest annotation = new AnnotationRequest("[REDACTED]", 1, 40.0, 40.0, 500.0, 20.0, "black");
+        AnnotationOptions options = new AnnotationOptions();
+        options.setRedact(true);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pdfAnnotationService.annotatePdf(new ByteArrayInputStream(SamplePdfs.createPdf(1)),
+                List.of(annotation), options, output);
+
+        try (PDDocument document = PDDocument.load(output.toByteArray())) {
+            String text = new PDFTextStripper().getText(document);
+            assertFalse(text.contains("line 0 "));
+            assertTrue(text.contains("[REDACTED]"));
+            assertTrue(text.contains("Page 1 line 1 "));
+        }
+    }
+
+    @Test
+    void refusesToRedactIncrementally() throws Exception {
+        AnnotationRequest annotation = new AnnotationRequest("[REDACTED]", 1, 40.0, 40.0, 500.0, 20.0, "black");
+        AnnotationOptions options = new AnnotationOptions();
+        options.setRedact(true);
+        options.setIncremental(true);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertThrows(IllegalArgumentException.class, () -> pdfAnnotationService.annotatePdf(
+                new ByteArrayInputStream(SamplePdfs.createPdf(1)), List.of(annotation), options, output));
+        assertEquals(0, output.size());
+    }
+
+    private static float width(String text, float fontSize) throws IOException {
+        return FONT.getStringWidth(text) / 1000 * fontSize;
+    }
+
+    /**
+     * X position of the first occurrence of {@code word} on the first page.
+     */
+    private static float xOf(PDDocument document, String word) throws IOException {
+        float[] x = {Float.NaN};
+        PDFTextStripper stripper = new PDFTextStripper() {
+            @Override
+            protected void writeString(String text, List<TextPosition> textPositions) {
+                int index = text.indexOf(word);
+                if (index >= 0 && Float.isNaN(x[0])) {
+                    x[0] = textPositions.get(index).getXDirAdj();
+                }
+            }
+        };
+        stripper.getText(document);
+        return x[0];
+    }
+}
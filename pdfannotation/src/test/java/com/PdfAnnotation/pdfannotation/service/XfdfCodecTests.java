@@ -0,0 +1,111 @@
+package com.PdfAnnotation.pdfannotation.service;
+
+import com.PdfAnnotation.pdfannotation.SamplePdfs;
+import com.PdfAnnotation.pdfannotation.dto.AnnotationRequest;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class XfdfCodecTests {
+
+    @Autowired
+    private XfdfCodec xfdfCodec;
+
+    @Autowired
+    private PdfAnnotationService pdfAnnotationService;
+
+    @Test
+    void roundTripsAnnotationsThroughPdfCoordinates() throws Exception {
+        AnnotationRequest text = new AnnotationRequest("Approved & <checked>", 2, 100.0, 50.0, 200.0, 40.0, "red");
+        text.setCanvasWidth(1190f);
+        text.setCanvasHeight(1684f);
+        text.setFontStyle("bold");
+        text.setBackgroundColor("#fef3c7");
+        text.setBorderColor("blue");
+        text.setBorderWidth(2f);
+        text.setTemplate("approved");
+        text.setLink("https://example.com/?a=1&b=2");
+        AnnotationRequest autoFit = new AnnotationRequest("Fit me", 1, 10.0, 10.0, 80.0, 20.0, "#123456");
+        autoFit.setAutoFit(true);
+        AnnotationRequest image = new AnnotationRequest();
+        image.setType(AnnotationRequest.TYPE_IMAGE);
+        image.setImageId("a".repeat(64));
+        image.setPageNumber(1);
+        image.setX(300.0);
+        image.setY(700.0);
+        image.setWidth(120.0);
+        image.setHeight(60.0);
+
+        try (PDDocument document = PDDocument.load(SamplePdfs.createPdf(2))) {
+            List<AnnotationRequest> original = List.of(text, autoFit, image);
+            ByteArrayOutputStream xfdf = new ByteArrayOutputStream();
+            xfdfCodec.write(original, document, "sample.pdf", xfdf);
+            assertTrue(xfdf.toString(StandardCharsets.UTF_8).contains("<freetext"));
+
+            List<AnnotationRequest> read = xfdfCodec.read(new ByteArrayInputStream(xfdf.toByteArray()), document);
+
+            assertEquals(3, read.size());
+            for (int i = 0; i < original.size(); i++) {
+                PDRectangle expected = pdfAnnotationService.toPdfRectangle(
+                        document.getPage(original.get(i).getPageNumber() - 1), original.get(i));
+                PDRectangle actual = pdfAnnotationService.toPdfRectangle(
+                        document.getPage(read.get(i).getPageNumber() - 1), read.get(i));
+                assertEquals(expected.getLowerLeftX(), actual.getLowerLeftX(), 0.01);
+                assertEquals(expected.getLowerLeftY(), actual.getLowerLeftY(), 0.01);
+                assertEquals(expected.getWidth(), actual.getWidth(), 0.01);
+                assertEquals(expected.getHeight(), actual.getHeight(), 0.01);
+            }
+
+            AnnotationRequest readText = read.get(0);
+            assertEquals("Approved & <checked>", readText.getSelectedText());
+            assertEquals("#ff0000", readText.getColor());
+            assertEquals("#fef3c7", readText.getBackgroundColor());
+            assertEquals("#0000ff", readText.getBorderColor());
+            assertEquals(2f, readText.getBorderWidth());
+            assertEquals("bold", readText.getFontStyle());
+            assertEquals("approved", readText.getTemplate());
+            assertEquals("https://example.com/?a=1&b=2", readText.getLink());
+            assertNull(readText.getFontSize());
+            assertEquals(Boolean.TRUE, read.get(1).getAutoFit());
+            assertEquals(AnnotationRequest.TYPE_IMAGE, read.get(2).getType());
+            assertEquals(image.getImageId(), read.get(2).getImageId());
+        }
+    }
+
+    @Test
+    void skipsUnsupportedAnnotationsAndNeverResolvesEntities() throws Exception {
+        String xfdf = "<?xml version=\"1.0\"?><xfdf xmlns=\"http://ns.adobe.com/xfdf/\"><annots>"
+                + "<square page=\"0\" rect=\"1,1,50,50\"><contents>ignored</contents></square>"
+                + "<freetext page=\"0\" rect=\"10,700,110,720\"><contents>kept</contents>"
+                + "<defaultappearance>/Helv 9 Tf 0 g</defaultappearance></freetext>"
+                + "</annots></xfdf>";
+        String withEntity = "<?xml version=\"1.0\"?><!DOCTYPE xfdf [<!ENTITY x SYSTEM \"file:///etc/passwd\">]>"
+                + "<xfdf xmlns=\"http://ns.adobe.com/xfdf/\"><annots><freetext page=\"0\" rect=\"1,1,9,9\">"
+                + "<contents>&x;</contents></freetext></annots></xfdf>";
+
+        try (PDDocument document = PDDocument.load(SamplePdfs.createPdf(1))) {
+            List<AnnotationRequest> read = xfdfCodec.read(
+                    new ByteArrayInputStream(xfdf.getBytes(StandardCharsets.UTF_8)), document);
+            assertEquals(1, read.size());
+            assertEquals("kept", read.get(0).getSelectedText());
+            assertEquals(9f, read.get(0).getFontSize());
+            assertEquals("#000000", read.get(0).getColor());
+
+            assertThrows(IllegalArgumentException.class, () -> xfdfCodec.read(
+                    new ByteArrayInputStream(withEntity.getBytes(StandardCharsets.UTF_8)), document));
+        }
+    }
+}